@@ -21,6 +21,7 @@ package org.jboss.osgi.framework;
  * #L%
  */
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.jboss.msc.service.Service;
@@ -108,6 +109,17 @@ public interface BundleManager extends Service<BundleManager> {
      */
     ServiceName installBundle(Deployment deployment, ServiceListener<XBundle> listener) throws BundleException;
 
+    /**
+     * Install the bundles from the given deployments and resolve them together.
+     * The INSTALLED events are fired in the order of the given deployments.
+     * A deployment that cannot be installed is reported as a framework ERROR event.
+     * A bundle that does not come up within the batch install timeout is not returned and fires its own INSTALLED event.
+     *
+     * @param deployments The bundle deployments
+     * @return The installed bundles in the order of the given deployments
+     */
+    List<XBundle> installBundles(List<Deployment> deployments);
+
     /**
      * Uninstall the given deployment
      */
@@ -48,6 +48,60 @@ public interface Constants extends org.osgi.framework.Constants {
     /** A list of URLs to bundles that get installed and started on framework startup */
     String PROPERTY_AUTO_START_URLS = "org.jboss.osgi.auto.start";
 
+    /** A comma separated list of service property keys that are indexed in addition to objectClass and service.pid */
+    String PROPERTY_SERVICE_INDEX_KEYS = "org.jboss.osgi.framework.service.index.keys";
+
+    /** The maximum number of compiled filters that are cached by the framework */
+    String PROPERTY_FILTER_CACHE_SIZE = "org.jboss.osgi.framework.filter.cache.size";
+
+    /** The number of threads that deliver asynchronous bundle and framework events */
+    String PROPERTY_EVENT_MAX_THREADS = "org.jboss.osgi.framework.event.maxThreads";
+
+    /** The maximum number of pending asynchronous event deliveries */
+    String PROPERTY_EVENT_MAX_PENDING = "org.jboss.osgi.framework.event.maxPending";
+
+    /** The policy when the maximum number of pending event deliveries is reached, either BLOCK or DISCARD */
+    String PROPERTY_EVENT_OVERFLOW_POLICY = "org.jboss.osgi.framework.event.overflowPolicy";
+
+    /** If true, bundle storage state changes are written in batches by a background thread, default is false */
+    String PROPERTY_STORAGE_WRITE_BEHIND = "org.jboss.osgi.framework.storage.writeBehind";
+
+    /** The interval in milliseconds between write-behind flushes of the bundle storage state */
+    String PROPERTY_STORAGE_FLUSH_INTERVAL = "org.jboss.osgi.framework.storage.flushInterval";
+
+    /** The fsync policy for bundle storage state writes, either ALWAYS or NEVER, default is ALWAYS. NEVER is faster but may lose states on power loss */
+    String PROPERTY_STORAGE_FSYNC_POLICY = "org.jboss.osgi.framework.storage.fsyncPolicy";
+
+    /** The maximum number of bundles of the same start level that are started concurrently, default is 1 */
+    String PROPERTY_STARTLEVEL_PARALLELISM = "org.jboss.osgi.framework.startlevel.parallelism";
+
+    /** If true, concurrently started bundles wait for the bundles they are wired to, default is true */
+    String PROPERTY_STARTLEVEL_WIRING_ORDER = "org.jboss.osgi.framework.startlevel.wiringOrder";
+
+    /** If true, bundle classes are loaded from an index of the bundle file in the storage area, default is true */
+    String PROPERTY_JAR_RESOURCE_LOADER = "org.jboss.osgi.framework.resourceLoader.jarIndex";
+
+    /** If true, the JDK paths are persisted next to the framework storage area, default is true */
+    String PROPERTY_JDK_PATHS_CACHE = "org.jboss.osgi.framework.jdkPaths.cache";
+
+    /** If true, the JDK paths are populated on a background thread when the framework starts, default is true */
+    String PROPERTY_JDK_PATHS_PRELOAD = "org.jboss.osgi.framework.jdkPaths.preload";
+
+    /** If true, the bundle storage states are kept in a single journal file and bundle files are stored once by content hash, default is false */
+    String PROPERTY_STORAGE_JOURNAL = "org.jboss.osgi.framework.storage.journal";
+
+    /** The number of threads that restore persistent bundles on framework start, default is the number of processors up to 8 */
+    String PROPERTY_RESTORE_PARALLELISM = "org.jboss.osgi.framework.restore.parallelism";
+
+    /** If true, the manifest headers of persistent bundles are cached in the storage area, default is true */
+    String PROPERTY_METADATA_CACHE = "org.jboss.osgi.framework.metadata.cache";
+
+    /** The maximum number of locales for which the localized headers of a bundle revision are cached */
+    String PROPERTY_HEADERS_CACHE_SIZE = "org.jboss.osgi.framework.headers.cache.size";
+
+    /** The time in milliseconds a batch install waits for its bundles to come up, default is 60sec */
+    String PROPERTY_BATCH_INSTALL_TIMEOUT = "org.jboss.osgi.framework.batch.install.timeout";
+
     /** The default timeout for the framework to initialize is 5sec */
     int DEFAULT_FRAMEWORK_INIT_TIMEOUT = 5000;
 
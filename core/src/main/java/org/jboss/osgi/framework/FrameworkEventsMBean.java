@@ -0,0 +1,87 @@
+package org.jboss.osgi.framework;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Management view of the framework event dispatch.
+ *
+ * The framework events plugin is registered with the platform MBeanServer under an object name with the
+ * {@link #OBJECT_NAME_PREFIX} and as a service in the system bundle context.
+ *
+ * @since 18-Oct-2026
+ */
+public interface FrameworkEventsMBean {
+
+    /** The prefix of the object name the framework events plugin is registered under */
+    String OBJECT_NAME_PREFIX = "jboss.osgi:service=FrameworkEvents";
+
+    /**
+     * Get the number of service events that were dispatched to listeners
+     */
+    long getServiceEventCount();
+
+    /**
+     * Get the number of service listeners whose filter was evaluated for all service events
+     */
+    long getServiceListenersEvaluated();
+
+    /**
+     * Get the number of service listeners that were called for all service events
+     */
+    long getServiceListenersDelivered();
+
+    /**
+     * Get the number of objectClass values under which service listeners are indexed
+     */
+    int getIndexedClassCount();
+
+    /**
+     * Get the number of service listeners whose filter does not constrain the objectClass.
+     * These listeners are evaluated for every service event.
+     */
+    int getResidualListenerCount();
+
+    /**
+     * Get the number of asynchronous bundle and framework event deliveries that are pending
+     */
+    int getAsyncPendingCount();
+
+    /**
+     * Get the number of asynchronous bundle and framework event deliveries
+     */
+    long getAsyncDeliveredCount();
+
+    /**
+     * Get the number of asynchronous bundle and framework event deliveries that were discarded on overflow
+     */
+    long getAsyncDiscardedCount();
+
+    /**
+     * Get the queue depth, number of deliveries, average and maximum delivery time of every asynchronous listener
+     */
+    String[] getListenerStatistics();
+
+    /**
+     * Reset the service event counters
+     */
+    void resetStatistics();
+}
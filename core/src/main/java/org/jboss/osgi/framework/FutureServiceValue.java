@@ -155,7 +155,8 @@ public final class FutureServiceValue<T> implements Future<T> {
                 throw ex;
             }
         } catch (InterruptedException e) {
-            // ignore
+            // Restore the interrupt status for the caller
+            Thread.currentThread().interrupt();
         } finally {
             controller.removeListener(listener);
         }
@@ -0,0 +1,120 @@
+package org.jboss.osgi.framework;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Management view of the framework locks.
+ *
+ * The lock manager is registered with the platform MBeanServer under an object name with the
+ * {@link #OBJECT_NAME_PREFIX} and as a service in the system bundle context.
+ *
+ * All times are in milliseconds. The operation names are one of {@link #getOperations()}.
+ *
+ * @since 18-Oct-2026
+ */
+public interface LockManagerMBean {
+
+    /** The prefix of the object name the lock manager is registered under */
+    String OBJECT_NAME_PREFIX = "jboss.osgi:service=LockManager";
+
+    /**
+     * Get the names of the operations that acquire framework locks
+     */
+    String[] getOperations();
+
+    /**
+     * Get the upper bounds of the hold time histogram buckets. The last bucket is unbounded.
+     */
+    long[] getHoldTimeBuckets();
+
+    /**
+     * Get the number of lock acquisitions for all operations
+     */
+    long getAcquireCount();
+
+    /**
+     * Get the number of lock acquisitions that had to wait for another thread
+     */
+    long getContendedCount();
+
+    /**
+     * Get the number of lock acquisitions that timed out
+     */
+    long getTimeoutCount();
+
+    /**
+     * Get the number of lock acquisitions that failed because of a detected deadlock
+     */
+    long getDeadlockCount();
+
+    /**
+     * Get the total time spent waiting for locks
+     */
+    long getTotalWaitTime();
+
+    /**
+     * Get the longest time spent waiting for a lock
+     */
+    long getMaxWaitTime();
+
+    /**
+     * Get the number of lock acquisitions for the given operation
+     */
+    long getAcquireCount(String operation);
+
+    /**
+     * Get the total time the given operation spent waiting for locks
+     */
+    long getTotalWaitTime(String operation);
+
+    /**
+     * Get the longest time the given operation spent waiting for a lock
+     */
+    long getMaxWaitTime(String operation);
+
+    /**
+     * Get the number of lock holds of the given operation per hold time bucket
+     */
+    long[] getHoldTimeHistogram(String operation);
+
+    /**
+     * Get the thread and operation that currently holds the exclusive framework lock
+     *
+     * @return a description of the holder or null if the exclusive lock is not held
+     */
+    String getExclusiveHolder();
+
+    /**
+     * Get the thread, operation and duration of every lock that is currently held
+     */
+    String[] getCurrentHolders();
+
+    /**
+     * Get the threads that are currently waiting for a lock and what they wait for
+     */
+    String[] getWaitingThreads();
+
+    /**
+     * Reset all counters and histograms
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,61 @@
+package org.jboss.osgi.framework;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Management view of the framework resolver.
+ *
+ * The resolver plugin is registered with the platform MBeanServer under an object name with the
+ * {@link #OBJECT_NAME_PREFIX} and as a service in the system bundle context.
+ *
+ * @since 18-Oct-2026
+ */
+public interface ResolverMBean {
+
+    /** The prefix of the object name the resolver plugin is registered under */
+    String OBJECT_NAME_PREFIX = "jboss.osgi:service=Resolver";
+
+    /**
+     * Get the number of cached resolution results
+     */
+    int getResolutionCacheSize();
+
+    /**
+     * Get the number of resolve requests that were answered with a cached result
+     */
+    long getResolutionCacheHitCount();
+
+    /**
+     * Get the number of resolve requests that were answered with a cached failure
+     */
+    long getResolutionCacheFailureHitCount();
+
+    /**
+     * Get the number of resolve requests that were not answered from the cache
+     */
+    long getResolutionCacheMissCount();
+
+    /**
+     * Reset the resolution cache counters
+     */
+    void resetStatistics();
+}
@@ -380,7 +380,9 @@ abstract class AbstractBundleContext implements BundleContext {
     @Override
     public Filter createFilter(String filter) throws InvalidSyntaxException {
         checkValidBundleContext();
-        return FrameworkUtil.createFilter(filter);
+        if (filter == null)
+            return FrameworkUtil.createFilter(filter);
+        return getBundleManager().getFilterCache().getFilter(filter);
     }
 
     void checkValidBundleContext() {
@@ -216,6 +216,17 @@ abstract class AbstractBundleState implements XBundle {
         }
 
         bundleState.set(state);
+        getBundleManager().getBundleIndex().updateState(this);
+        if (state == Bundle.UNINSTALLED) {
+            getFrameworkState().getServiceManagerPlugin().getAssignabilityCache().invalidate(this);
+        }
+
+        // The visible localization entries may change with the resolved state of this bundle and its fragments
+        if (state == Bundle.INSTALLED || state == Bundle.RESOLVED || state == Bundle.UNINSTALLED) {
+            BundleStateRevision bundleRev = getBundleRevision();
+            if (bundleRev != null)
+                bundleRev.invalidateLocalizedHeaders();
+        }
 
         // Fire the bundle event
         if (frameworkActive && eventType != 0) {
@@ -323,7 +334,8 @@ abstract class AbstractBundleState implements XBundle {
     @SuppressWarnings("unchecked")
     public Dictionary<String, String> getHeaders(String locale) {
         // Get the raw (unlocalized) manifest headers
-        Dictionary<String, String> rawHeaders = getOSGiMetaData().getHeaders();
+        BundleStateRevision bundleRev = getBundleRevision();
+        Dictionary<String, String> rawHeaders = bundleRev.getOSGiMetaData().getHeaders();
 
         // If the specified locale is the empty string, this method will return the
         // raw (unlocalized) manifest headers including any leading "%"
@@ -332,8 +344,18 @@ abstract class AbstractBundleState implements XBundle {
 
         // If the specified locale is null then the locale
         // returned by java.util.Locale.getDefault is used
+        String defaultLocale = Locale.getDefault().toString();
         if (locale == null)
-            locale = Locale.getDefault().toString();
+            locale = defaultLocale;
+
+        // The fallback depends on the default locale, which may change at runtime
+        LocalizedHeadersCache cache = bundleRev.getLocalizedHeadersCache();
+        String localeKey = locale + "|" + defaultLocale;
+        Dictionary<String, String> cachedHeaders = cache.getHeaders(localeKey);
+        if (cachedHeaders != null)
+            return cachedHeaders;
+
+        int generation = cache.getGeneration();
 
         // Get the localization base name
         String baseName = rawHeaders.get(Constants.BUNDLE_LOCALIZATION);
@@ -341,12 +363,11 @@ abstract class AbstractBundleState implements XBundle {
             baseName = Constants.BUNDLE_LOCALIZATION_DEFAULT_BASENAME;
 
         // Get the resource bundle URL for the given base and locale
-        URL entryURL = getLocalizationEntry(baseName, locale);
+        URL entryURL = getLocalizationEntry(bundleRev, generation, baseName, locale);
 
         // If the specified locale entry could not be found fall back to the default locale entry
         if (entryURL == null) {
-            String defaultLocale = Locale.getDefault().toString();
-            entryURL = getLocalizationEntry(baseName, defaultLocale);
+            entryURL = getLocalizationEntry(bundleRev, generation, baseName, defaultLocale);
         }
 
         // Read the resource bundle
@@ -378,7 +399,9 @@ abstract class AbstractBundleState implements XBundle {
             locHeaders.put(key, value);
         }
 
-        return new CaseInsensitiveDictionary(locHeaders);
+        Dictionary<String, String> result = new CaseInsensitiveDictionary(locHeaders);
+        cache.putHeaders(localeKey, result, generation);
+        return result;
     }
 
     OSGiMetaData getOSGiMetaData() {
@@ -394,7 +417,7 @@ abstract class AbstractBundleState implements XBundle {
         return getState() == Bundle.UNINSTALLED;
     }
 
-    private URL getLocalizationEntry(String baseName, String locale) {
+    private URL getLocalizationEntry(BundleStateRevision bundleRev, int generation, String baseName, String locale) {
         // The Framework searches for localization entries by appending suffixes to
         // the localization base name according to a specified locale and finally
         // appending the .properties suffix. If a translation is not found, the locale
@@ -403,7 +426,7 @@ abstract class AbstractBundleState implements XBundle {
 
         String entryPath = baseName + "_" + locale + ".properties";
 
-        URL entryURL = getLocalizationEntry(entryPath);
+        URL entryURL = getLocalizationEntry(bundleRev, generation, entryPath);
         while (entryURL == null) {
             if (entryPath.equals(baseName + ".properties"))
                 break;
@@ -418,7 +441,7 @@ abstract class AbstractBundleState implements XBundle {
 
             // The bundle's class loader is not used to search for localization entries. Only
             // the contents of the bundle and its attached fragments are searched.
-            entryURL = getLocalizationEntry(entryPath);
+            entryURL = getLocalizationEntry(bundleRev, generation, entryPath);
         }
         return entryURL;
     }
@@ -433,8 +456,15 @@ abstract class AbstractBundleState implements XBundle {
      * other bundle - The framework must first search in the bundle’s JAR for the localization entry. If the entry is not found
      * and the bundle has fragments, then the attached fragment JARs must be searched for the localization entry.
      */
-    private URL getLocalizationEntry(String entryPath) {
-        return getBundleRevision().getLocalizationEntry(entryPath);
+    private URL getLocalizationEntry(BundleStateRevision bundleRev, int generation, String entryPath) {
+        LocalizedHeadersCache cache = bundleRev.getLocalizedHeadersCache();
+        LocalizedHeadersCache.CachedEntry cachedEntry = cache.getEntry(entryPath);
+        if (cachedEntry != null)
+            return cachedEntry.getEntryURL();
+
+        URL entryURL = bundleRev.getLocalizationEntry(entryPath);
+        cache.putEntry(entryPath, entryURL, generation);
+        return entryURL;
     }
 
     @Override
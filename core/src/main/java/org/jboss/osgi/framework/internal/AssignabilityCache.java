@@ -0,0 +1,167 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+
+/**
+ * Caches the results of {@link ServiceState#isAssignableTo(org.osgi.framework.Bundle, String)}.
+ *
+ * Assignability only depends on the class spaces of the requesting and the registering revision, which do not
+ * change while both stay resolved. Entries for a bundle are dropped when one of its revisions is refreshed or the
+ * bundle is uninstalled.
+ *
+ * @since 18-Oct-2026
+ */
+final class AssignabilityCache {
+
+    static final int MAX_CACHE_SIZE = 8192;
+
+    private final ConcurrentMap<CacheKey, Boolean> cache = new ConcurrentHashMap<CacheKey, Boolean>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Get the cached result or null
+     */
+    Boolean get(XBundleRevision requester, XBundleRevision owner, String className) {
+        Boolean result = cache.get(new CacheKey(requester, owner, className));
+        if (result != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Get the generation that must be passed to {@link #put(XBundleRevision, XBundleRevision, String, boolean, long)}
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Cache a result that was computed in the given generation
+     */
+    void put(XBundleRevision requester, XBundleRevision owner, String className, boolean assignable, long computedIn) {
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        CacheKey key = new CacheKey(requester, owner, className);
+        cache.put(key, Boolean.valueOf(assignable));
+
+        // Drop the result if an invalidation happened while it was computed
+        if (generation.get() != computedIn) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * Drop all results that involve a revision of the given bundle
+     */
+    void invalidate(XBundle bundle) {
+        generation.incrementAndGet();
+        Iterator<CacheKey> iterator = cache.keySet().iterator();
+        while (iterator.hasNext()) {
+            CacheKey key = iterator.next();
+            if (key.requester.getBundle() == bundle || key.owner.getBundle() == bundle) {
+                iterator.remove();
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    int getSize() {
+        return cache.size();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Get the ratio of cache hits to lookups
+     */
+    double getHitRate() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups > 0 ? (double) hits / lookups : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "AssignabilityCache[size=" + getSize() + ",hits=" + hitCount + ",misses=" + missCount + ",invalidations=" + invalidationCount + "]";
+    }
+
+    private static final class CacheKey {
+
+        private final XBundleRevision requester;
+        private final XBundleRevision owner;
+        private final String className;
+        private final int hashCode;
+
+        CacheKey(XBundleRevision requester, XBundleRevision owner, String className) {
+            this.requester = requester;
+            this.owner = owner;
+            this.className = className;
+            int hash = System.identityHashCode(requester);
+            hash = 31 * hash + System.identityHashCode(owner);
+            this.hashCode = 31 * hash + className.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof CacheKey == false)
+                return false;
+            CacheKey other = (CacheKey) obj;
+            return requester == other.requester && owner == other.owner && className.equals(other.className);
+        }
+    }
+}
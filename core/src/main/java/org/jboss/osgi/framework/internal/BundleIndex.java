@@ -0,0 +1,406 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.metadata.ParameterizedAttribute;
+import org.jboss.osgi.metadata.VersionRange;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XCapability;
+import org.jboss.osgi.resolver.XPackageCapability;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+
+/**
+ * An index of the bundles that have at least one revision installed in the {@link EnvironmentPlugin}.
+ *
+ * Bundles are indexed by id, location, symbolic name (highest version first) and state. Revisions are
+ * indexed by the packages they export. Lookups do not lock, modifications are serialized on the index,
+ * state changes on the individual entry.
+ *
+ * Every modification increments the modification count. The export modification count only changes when
+ * a revision that exports packages is installed, uninstalled, wired or unwired, which allows callers to cache
+ * negative package lookups across unrelated state changes.
+ *
+ * @since 18-Oct-2026
+ */
+final class BundleIndex {
+
+    // The bundle states are single bits from UNINSTALLED (0x01) to ACTIVE (0x20)
+    private static final int STATE_COUNT = Integer.numberOfTrailingZeros(Bundle.ACTIVE) + 1;
+
+    // The states in which a bundle is wired and can provide its exported packages
+    static final int WIRED_STATES = Bundle.RESOLVED | Bundle.STARTING | Bundle.ACTIVE | Bundle.STOPPING;
+
+    private static final Comparator<XBundle> VERSION_COMPARATOR = new Comparator<XBundle>() {
+        @Override
+        public int compare(XBundle b1, XBundle b2) {
+            int result = b2.getVersion().compareTo(b1.getVersion());
+            if (result == 0) {
+                result = b1.getBundleId() < b2.getBundleId() ? -1 : (b1.getBundleId() == b2.getBundleId() ? 0 : 1);
+            }
+            return result;
+        }
+    };
+
+    private final ConcurrentMap<Long, IndexEntry> byId = new ConcurrentHashMap<Long, IndexEntry>();
+    private final ConcurrentMap<String, List<XBundle>> byLocation = new ConcurrentHashMap<String, List<XBundle>>();
+    private final ConcurrentMap<String, List<XBundle>> bySymbolicName = new ConcurrentHashMap<String, List<XBundle>>();
+    private final ConcurrentMap<String, List<XBundleRevision>> byExportedPackage = new ConcurrentHashMap<String, List<XBundleRevision>>();
+    private final ConcurrentMap<String, List<XBundleRevision>> byFragmentHost = new ConcurrentHashMap<String, List<XBundleRevision>>();
+    private final AtomicLong modificationCount = new AtomicLong();
+    private final AtomicLong exportModificationCount = new AtomicLong();
+    private final List<Set<XBundle>> byState = new ArrayList<Set<XBundle>>();
+
+    BundleIndex() {
+        for (int i = 0; i < STATE_COUNT; i++) {
+            byState.add(Collections.newSetFromMap(new ConcurrentHashMap<XBundle, Boolean>()));
+        }
+    }
+
+    /**
+     * Add a revision that was installed in the environment.
+     * The bundle is indexed with its first revision and re-indexed when further revisions are added.
+     */
+    synchronized void addRevision(XBundleRevision brev) {
+        XBundle bundle = brev.getBundle();
+        if (bundle == null)
+            return;
+
+        IndexEntry entry = byId.get(bundle.getBundleId());
+        if (entry == null) {
+            entry = new IndexEntry(bundle);
+            byId.put(bundle.getBundleId(), entry);
+            if (bundle.getLocation() != null) {
+                add(byLocation, bundle.getLocation(), bundle);
+            }
+        }
+        entry.revisions++;
+        indexSymbolicName(entry);
+        List<String> exportedPackages = getExportedPackages(brev);
+        for (String packageName : exportedPackages) {
+            add(byExportedPackage, packageName, brev);
+        }
+        if (exportedPackages.isEmpty() == false) {
+            exportModificationCount.incrementAndGet();
+        }
+        String hostName = getFragmentHost(brev);
+        if (hostName != null) {
+            add(byFragmentHost, hostName, brev);
+        }
+        modificationCount.incrementAndGet();
+        updateState(bundle);
+    }
+
+    /**
+     * Remove a revision that was uninstalled from the environment.
+     * The bundle is removed from the index with its last revision.
+     */
+    synchronized void removeRevision(XBundleRevision brev) {
+        XBundle bundle = brev.getBundle();
+        IndexEntry entry = bundle != null ? byId.get(bundle.getBundleId()) : null;
+        if (entry == null || entry.bundle != bundle)
+            return;
+
+        List<String> exportedPackages = getExportedPackages(brev);
+        for (String packageName : exportedPackages) {
+            remove(byExportedPackage, packageName, brev);
+        }
+        if (exportedPackages.isEmpty() == false) {
+            exportModificationCount.incrementAndGet();
+        }
+        String hostName = getFragmentHost(brev);
+        if (hostName != null) {
+            remove(byFragmentHost, hostName, brev);
+        }
+        modificationCount.incrementAndGet();
+        if (--entry.revisions > 0) {
+            indexSymbolicName(entry);
+            return;
+        }
+
+        byId.remove(bundle.getBundleId());
+        if (bundle.getLocation() != null) {
+            remove(byLocation, bundle.getLocation(), bundle);
+        }
+        if (entry.symbolicName != null) {
+            remove(bySymbolicName, entry.symbolicName, bundle);
+        }
+        synchronized (entry) {
+            if (entry.state != 0) {
+                byState.get(Integer.numberOfTrailingZeros(entry.state)).remove(bundle);
+                entry.state = 0;
+            }
+        }
+    }
+
+    /**
+     * Move the bundle to the state set that corresponds to its current state
+     */
+    void updateState(XBundle bundle) {
+        IndexEntry entry = byId.get(bundle.getBundleId());
+        if (entry == null || entry.bundle != bundle)
+            return;
+
+        synchronized (entry) {
+            // Always use the current state, so that concurrent updates converge
+            int state = bundle.getState();
+            if (state != entry.state && byId.get(bundle.getBundleId()) == entry) {
+                if (entry.state != 0) {
+                    byState.get(Integer.numberOfTrailingZeros(entry.state)).remove(bundle);
+                }
+                byState.get(Integer.numberOfTrailingZeros(state)).add(bundle);
+                // Starting and stopping do not change the packages an exporter provides
+                boolean wiringChanged = ((entry.state & WIRED_STATES) != 0) != ((state & WIRED_STATES) != 0);
+                entry.state = state;
+                modificationCount.incrementAndGet();
+                if (wiringChanged && isExporter(bundle)) {
+                    exportModificationCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    XBundle getBundleById(long bundleId) {
+        IndexEntry entry = byId.get(bundleId);
+        return entry != null ? entry.bundle : null;
+    }
+
+    /**
+     * Get the bundle with the given location that is not UNINSTALLED
+     */
+    XBundle getBundleByLocation(String location) {
+        List<XBundle> bundles = byLocation.get(location);
+        if (bundles != null) {
+            for (XBundle bundle : bundles) {
+                if (bundle.getState() != Bundle.UNINSTALLED) {
+                    return bundle;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the bundles that are in one of the given states, or all bundles if the states are null
+     */
+    Set<XBundle> getBundles(Integer states) {
+        Set<XBundle> result = new HashSet<XBundle>();
+        if (states == null) {
+            for (IndexEntry entry : byId.values()) {
+                result.add(entry.bundle);
+            }
+        } else {
+            int mask = states.intValue();
+            for (int i = 0; i < STATE_COUNT; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    for (XBundle bundle : byState.get(i)) {
+                        // A concurrent state change may not be reflected in the state sets yet
+                        if ((bundle.getState() & mask) != 0) {
+                            result.add(bundle);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the bundles with the given symbolic name and a version in the given range, highest version first.
+     */
+    List<XBundle> getBundles(String symbolicName, VersionRange range) {
+        List<XBundle> bundles = bySymbolicName.get(symbolicName);
+        if (bundles == null)
+            return Collections.emptyList();
+
+        List<XBundle> result = new ArrayList<XBundle>(bundles.size());
+        for (XBundle bundle : bundles) {
+            if (range == null || range.isInRange(bundle.getVersion())) {
+                result.add(bundle);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the installed revisions that export the given package
+     */
+    List<XBundleRevision> getExporters(String packageName) {
+        List<XBundleRevision> revisions = byExportedPackage.get(packageName);
+        return revisions != null ? revisions : Collections.<XBundleRevision> emptyList();
+    }
+
+    /**
+     * Get the installed fragment revisions that name the given symbolic name in their Fragment-Host header
+     */
+    List<XBundleRevision> getFragments(String hostName) {
+        List<XBundleRevision> revisions = byFragmentHost.get(hostName);
+        return revisions != null ? revisions : Collections.<XBundleRevision> emptyList();
+    }
+
+    boolean hasFragments() {
+        return byFragmentHost.isEmpty() == false;
+    }
+
+    /**
+     * Get the number of modifications to the index. The count changes whenever a revision is
+     * installed or uninstalled, or a bundle changes its state.
+     */
+    long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Get the number of modifications to the exported packages. The count changes whenever a revision that
+     * exports packages is installed or uninstalled, or its bundle is resolved, unresolved or refreshed.
+     */
+    long getExportModificationCount() {
+        return exportModificationCount.get();
+    }
+
+    int getSize() {
+        return byId.size();
+    }
+
+    synchronized void clear() {
+        byId.clear();
+        byLocation.clear();
+        bySymbolicName.clear();
+        byExportedPackage.clear();
+        byFragmentHost.clear();
+        modificationCount.incrementAndGet();
+        exportModificationCount.incrementAndGet();
+        for (Set<XBundle> bundles : byState) {
+            bundles.clear();
+        }
+    }
+
+    private void indexSymbolicName(IndexEntry entry) {
+        // An update may change the symbolic name and version of the bundle
+        XBundle bundle = entry.bundle;
+        String symbolicName = bundle.getSymbolicName();
+        Version version = bundle.getVersion();
+        if (equals(symbolicName, entry.symbolicName) && equals(version, entry.version))
+            return;
+
+        if (entry.symbolicName != null) {
+            remove(bySymbolicName, entry.symbolicName, bundle);
+        }
+        if (symbolicName != null) {
+            add(bySymbolicName, symbolicName, bundle);
+            sort(bySymbolicName, symbolicName, VERSION_COMPARATOR);
+        }
+        entry.symbolicName = symbolicName;
+        entry.version = version;
+    }
+
+    private static List<String> getExportedPackages(XBundleRevision brev) {
+        List<String> result = new ArrayList<String>();
+        for (Capability aux : brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+            XPackageCapability packageCap = ((XCapability) aux).adapt(XPackageCapability.class);
+            result.add(packageCap.getPackageName());
+        }
+        return result;
+    }
+
+    private static boolean isExporter(XBundle bundle) {
+        XBundleRevision brev = bundle.getBundleRevision();
+        return brev != null && brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE).isEmpty() == false;
+    }
+
+    private static String getFragmentHost(XBundleRevision brev) {
+        if (brev instanceof FragmentBundleRevision) {
+            ParameterizedAttribute hostAttr = ((FragmentBundleRevision) brev).getOSGiMetaData().getFragmentHost();
+            return hostAttr != null ? hostAttr.getAttribute() : null;
+        }
+        return null;
+    }
+
+    // The lists in the maps are immutable and replaced on every modification
+
+    private static <T> void add(ConcurrentMap<String, List<T>> map, String key, T item) {
+        List<T> items = map.get(key);
+        if (items == null || items.contains(item) == false) {
+            List<T> list = items != null ? new ArrayList<T>(items) : new ArrayList<T>(1);
+            list.add(item);
+            map.put(key, Collections.unmodifiableList(list));
+        }
+    }
+
+    private static <T> void remove(ConcurrentMap<String, List<T>> map, String key, T item) {
+        List<T> items = map.get(key);
+        if (items != null && items.contains(item)) {
+            List<T> list = new ArrayList<T>(items);
+            list.remove(item);
+            if (list.isEmpty()) {
+                map.remove(key);
+            } else {
+                map.put(key, Collections.unmodifiableList(list));
+            }
+        }
+    }
+
+    private static <T> void sort(ConcurrentMap<String, List<T>> map, String key, Comparator<T> comparator) {
+        List<T> items = map.get(key);
+        if (items != null && items.size() > 1) {
+            List<T> list = new ArrayList<T>(items);
+            Collections.sort(list, comparator);
+            map.put(key, Collections.unmodifiableList(list));
+        }
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    @Override
+    public String toString() {
+        return "BundleIndex[bundles=" + byId.size() + ",locations=" + byLocation.size() + ",symbolicNames=" + bySymbolicName.size() + "]";
+    }
+
+    private static final class IndexEntry {
+
+        private final XBundle bundle;
+        private int revisions;
+        private int state;
+        private String symbolicName;
+        private Version version;
+
+        IndexEntry(XBundle bundle) {
+            this.bundle = bundle;
+        }
+    }
+}
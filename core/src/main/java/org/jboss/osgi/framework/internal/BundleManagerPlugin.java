@@ -21,21 +21,30 @@ package org.jboss.osgi.framework.internal;
  * #L%
  */
 
+import static org.jboss.osgi.framework.Constants.PROPERTY_BATCH_INSTALL_TIMEOUT;
+import static org.jboss.osgi.framework.Constants.PROPERTY_FILTER_CACHE_SIZE;
+import static org.jboss.osgi.framework.Constants.PROPERTY_HEADERS_CACHE_SIZE;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.jboss.modules.ModuleIdentifier;
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceContainer;
@@ -50,6 +59,7 @@ import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.framework.BundleManager;
+import org.jboss.osgi.framework.FutureServiceValue;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.StorageState;
 import org.jboss.osgi.framework.internal.AbstractBundleState.BundleLock.Method;
@@ -59,14 +69,13 @@ import org.jboss.osgi.metadata.VersionRange;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.XEnvironment;
-import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.vfs.VFSUtils;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkEvent;
-import org.osgi.resource.Resource;
+import org.osgi.service.resolver.ResolutionException;
 
 /**
  * The BundleManager is the central managing entity for OSGi bundles.
@@ -92,6 +101,9 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
     // The framework version. This is the version of the org.osgi.framework package in r4v42
     private static String OSGi_FRAMEWORK_VERSION = "1.5";
 
+    // The default time a batch install waits for its bundles to come up
+    static final long DEFAULT_BATCH_INSTALL_TIMEOUT = 60000;
+
     private static String implementationVersion;
     static {
         implementationVersion = BundleManagerPlugin.class.getPackage().getImplementationVersion();
@@ -107,6 +119,11 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
     private final Map<String, Object> properties = new HashMap<String, Object>();
     private ServiceContainer serviceContainer;
     private ServiceTarget serviceTarget;
+    private FilterCache filterCache;
+    private int headersCacheSize = LocalizedHeadersCache.DEFAULT_MAX_SIZE;
+    private long batchInstallTimeout = DEFAULT_BATCH_INSTALL_TIMEOUT;
+    // The revision contents by identity, which is the host of bundle URLs
+    private final ConcurrentMap<String, RevisionContent> revisionContents = new ConcurrentHashMap<String, RevisionContent>();
 
     static BundleManagerPlugin addService(ServiceTarget serviceTarget, FrameworkBuilder frameworkBuilder) {
         BundleManagerPlugin service = new BundleManagerPlugin(frameworkBuilder);
@@ -148,6 +165,14 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
         LOGGER.infoFrameworkImplementation(implementationVersion);
         serviceContainer = context.getController().getServiceContainer();
         serviceTarget = context.getChildTarget();
+        Object cacheSize = getProperty(PROPERTY_FILTER_CACHE_SIZE);
+        filterCache = new FilterCache(cacheSize != null ? new Integer("" + cacheSize) : FilterCache.DEFAULT_MAX_SIZE);
+        Object headersSize = getProperty(PROPERTY_HEADERS_CACHE_SIZE);
+        if (headersSize != null)
+            headersCacheSize = new Integer("" + headersSize);
+        Object batchTimeout = getProperty(PROPERTY_BATCH_INSTALL_TIMEOUT);
+        if (batchTimeout != null)
+            batchInstallTimeout = new Long("" + batchTimeout);
         LOGGER.debugf("Framework properties");
         for (Entry<String, Object> entry : properties.entrySet()) {
             LOGGER.debugf(" %s = %s", entry.getKey(), entry.getValue());
@@ -157,6 +182,8 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
     @Override
     public void stop(StopContext context) {
         super.stop(context);
+        LOGGER.debugf("Stopping with %s", filterCache);
+        filterCache.clear();
     }
 
     @Override
@@ -164,6 +191,36 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
         return this;
     }
 
+    /**
+     * Get the cache of compiled filters that is shared by service lookups and service listeners
+     */
+    FilterCache getFilterCache() {
+        return filterCache;
+    }
+
+    /**
+     * Get the maximum number of locales for which the localized headers of a bundle revision are cached
+     */
+    int getHeadersCacheSize() {
+        return headersCacheSize;
+    }
+
+    void registerRevisionContents(List<RevisionContent> contentList) {
+        for (RevisionContent revContent : contentList) {
+            revisionContents.put(revContent.getIdentity(), revContent);
+        }
+    }
+
+    void unregisterRevisionContents(List<RevisionContent> contentList) {
+        for (RevisionContent revContent : contentList) {
+            revisionContents.remove(revContent.getIdentity(), revContent);
+        }
+    }
+
+    RevisionContent getRevisionContent(String identity) {
+        return revisionContents.get(identity);
+    }
+
     FrameworkBuilder getFrameworkBuilder() {
         return frameworkBuilder;
     }
@@ -231,27 +288,19 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
         return ServiceName.of(InternalServices.BUNDLE_BASE_NAME, "" + bundleId, "" + dep.getSymbolicName(), "" + dep.getVersion());
     }
 
+    BundleIndex getBundleIndex() {
+        EnvironmentPlugin env = (EnvironmentPlugin) injectedEnvironment.getValue();
+        return env.getBundleIndex();
+    }
+
     Set<XBundle> getBundles() {
-        Set<XBundle> result = new HashSet<XBundle>();
-        XEnvironment env = injectedEnvironment.getValue();
-        for (Resource aux : env.getResources(XEnvironment.ALL_IDENTITY_TYPES)) {
-            XBundle bundle = ((XBundleRevision) aux).getBundle();
-            if (bundle.getState() != Bundle.UNINSTALLED)
-                result.add(bundle);
-        }
-        return Collections.unmodifiableSet(result);
+        int states = Bundle.INSTALLED | Bundle.RESOLVED | Bundle.STARTING | Bundle.STOPPING | Bundle.ACTIVE;
+        return Collections.unmodifiableSet(getBundleIndex().getBundles(states));
     }
 
     @Override
     public Set<XBundle> getBundles(Integer states) {
-        Set<XBundle> result = new HashSet<XBundle>();
-        XEnvironment env = injectedEnvironment.getValue();
-        for (Resource aux : env.getResources(XEnvironment.ALL_IDENTITY_TYPES)) {
-            XBundle bundle = ((XBundleRevision) aux).getBundle();
-            if (states == null || (bundle.getState() & states.intValue()) != 0)
-                result.add(bundle);
-        }
-        return Collections.unmodifiableSet(result);
+        return Collections.unmodifiableSet(getBundleIndex().getBundles(states));
     }
 
     @Override
@@ -259,37 +308,26 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
         if (bundleId == 0) {
             return getFrameworkState().getSystemBundle();
         }
-        XEnvironment env = injectedEnvironment.getValue();
-        Collection<XResource> resources = env.getResources(XEnvironment.ALL_IDENTITY_TYPES);
-        for (Resource aux : resources) {
-            XBundle bundle = ((XBundleRevision) aux).getBundle();
-            if (bundle.getBundleId() == bundleId) {
-                return bundle;
-            }
-        }
-        return null;
+        return getBundleIndex().getBundleById(bundleId);
     }
 
     @Override
     public XBundle getBundleByLocation(String location) {
         assert location != null : "Null location";
-        for (XBundle aux : getBundles()) {
-            String auxLocation = aux.getLocation();
-            if (location.equals(auxLocation)) {
-                return aux;
-            }
-        }
-        return null;
+        return getBundleIndex().getBundleByLocation(location);
     }
 
     @Override
     public Set<XBundle> getBundles(String symbolicName, String versionRange) {
+        VersionRange range = versionRange != null ? VersionRange.parse(versionRange) : null;
+        if (symbolicName != null) {
+            Set<XBundle> resultSet = new LinkedHashSet<XBundle>(getBundleIndex().getBundles(symbolicName, range));
+            return Collections.unmodifiableSet(resultSet);
+        }
         Set<XBundle> resultSet = new HashSet<XBundle>();
         for (XBundle aux : getBundles(null)) {
-            if (symbolicName == null || symbolicName.equals(aux.getSymbolicName())) {
-                if (versionRange == null || VersionRange.parse(versionRange).isInRange(aux.getVersion())) {
-                    resultSet.add(aux);
-                }
+            if (range == null || range.isInRange(aux.getVersion())) {
+                resultSet.add(aux);
             }
         }
         return Collections.unmodifiableSet(resultSet);
@@ -353,6 +391,93 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
         return serviceName;
     }
 
+    @Override
+    public List<XBundle> installBundles(List<Deployment> deployments) {
+        if (deployments == null)
+            throw MESSAGES.illegalArgumentNull("deployments");
+
+        // Install all bundle services, which come up concurrently
+        Map<Deployment, ServiceName> installed = new LinkedHashMap<Deployment, ServiceName>();
+        Set<String> existing = new HashSet<String>();
+        FrameworkEventsPlugin eventsPlugin = getFrameworkState().getFrameworkEventsPlugin();
+        for (Deployment dep : deployments) {
+            if (getBundleByLocation(dep.getLocation()) != null) {
+                existing.add(dep.getLocation());
+            }
+            dep.addAttachment(BatchInstall.class, new BatchInstall());
+            try {
+                installed.put(dep, installBundle(dep, null));
+            } catch (BundleException ex) {
+                dep.removeAttachment(BatchInstall.class);
+                eventsPlugin.fireFrameworkEvent(getSystemBundle(), FrameworkEvent.ERROR, ex);
+            }
+        }
+
+        // Wait for the bundles in deployment order, up to the batch install timeout
+        List<XBundle> result = new ArrayList<XBundle>();
+        long deadline = System.currentTimeMillis() + batchInstallTimeout;
+        for (Entry<Deployment, ServiceName> entry : installed.entrySet()) {
+            Deployment dep = entry.getKey();
+            XBundle bundle = null;
+            Exception failure = null;
+            boolean pending = false;
+            try {
+                @SuppressWarnings("unchecked")
+                ServiceController<XBundle> controller = (ServiceController<XBundle>) serviceContainer.getRequiredService(entry.getValue());
+                FutureServiceValue<XBundle> future = new FutureServiceValue<XBundle>(controller);
+                bundle = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                pending = true;
+            } catch (Exception ex) {
+                // An interrupted wait does not mean that the install failed
+                if (Thread.currentThread().isInterrupted()) {
+                    pending = true;
+                } else {
+                    failure = ex;
+                }
+            }
+
+            // A bundle that deferred its event to the batch is installed, even if the wait failed.
+            // A bundle that is still pending fires its own INSTALLED event when it comes up.
+            BatchInstall batch = dep.getAttachment(BatchInstall.class);
+            dep.removeAttachment(BatchInstall.class);
+            if (batch.release() && bundle == null) {
+                bundle = (XBundle) dep.getAttachment(Bundle.class);
+            }
+            if (bundle != null) {
+                result.add(bundle);
+            } else if (pending) {
+                LOGGER.warnBatchInstallPending(batchInstallTimeout, dep.getLocation());
+            } else {
+                Throwable cause = failure != null ? failure.getCause() : null;
+                if (cause instanceof BundleException == false) {
+                    cause = MESSAGES.cannotInstallBundleForLocation(failure, dep.getLocation());
+                }
+                eventsPlugin.fireFrameworkEvent(getSystemBundle(), FrameworkEvent.ERROR, cause);
+            }
+        }
+
+        // Fire the INSTALLED events in deployment order and resolve the new bundles together
+        List<XBundleRevision> unresolved = new ArrayList<XBundleRevision>();
+        for (XBundle bundle : result) {
+            if (existing.contains(bundle.getLocation()) == false) {
+                AbstractBundleState.assertBundleState(bundle).fireBundleEvent(BundleEvent.INSTALLED);
+            }
+            if (bundle.getState() == Bundle.INSTALLED) {
+                unresolved.add(bundle.getBundleRevision());
+            }
+        }
+        if (unresolved.isEmpty() == false) {
+            try {
+                ResolverPlugin resolverPlugin = getFrameworkState().getResolverPlugin();
+                resolverPlugin.resolveAndApply(Collections.<XBundleRevision> emptySet(), unresolved);
+            } catch (ResolutionException ex) {
+                eventsPlugin.fireFrameworkEvent(getSystemBundle(), FrameworkEvent.ERROR, new BundleException(ex.getMessage(), ex));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
     @Override
     public void uninstallBundle(Deployment dep) {
         Bundle bundle = dep.getAttachment(Bundle.class);
@@ -559,4 +684,36 @@ final class BundleManagerPlugin extends AbstractPluginService<BundleManager> imp
 
         return osgiVersion.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Attached to the deployments of a batch install while their bundles are installed.
+     *
+     * The bundle service defers the INSTALLED event to the batch unless the batch has stopped waiting for it,
+     * so that the event is fired exactly once.
+     */
+    static final class BatchInstall {
+
+        private boolean released;
+        private boolean deferred;
+
+        /**
+         * Called by the bundle service when the bundle is installed
+         *
+         * @return true if the batch fires the INSTALLED event
+         */
+        synchronized boolean deferInstalledEvent() {
+            deferred = released == false;
+            return deferred;
+        }
+
+        /**
+         * Called by the batch when it stops waiting for the bundle
+         *
+         * @return true if the bundle was installed and deferred its INSTALLED event to the batch
+         */
+        synchronized boolean release() {
+            released = true;
+            return deferred;
+        }
+    }
+}
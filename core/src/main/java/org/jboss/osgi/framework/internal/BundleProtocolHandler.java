@@ -25,6 +25,7 @@ import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLConnection;
 
@@ -58,6 +59,9 @@ public class BundleProtocolHandler extends AbstractURLStreamHandlerService {
         return entry.openConnection();
     }
 
-    // [TODO] overwrite hashCode for to prevent host address resolution
-    // when offline the BundleEntriesTestCase is slow because of this
+    // The host is the content identity, which must not be resolved as a network address
+    @Override
+    public InetAddress getHostAddress(URL url) {
+        return null;
+    }
 }
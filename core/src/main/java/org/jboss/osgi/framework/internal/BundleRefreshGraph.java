@@ -0,0 +1,87 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.osgi.resolver.XBundle;
+
+/**
+ * The reverse wiring of the resolved host bundles, used to compute the bundles affected by a refresh.
+ *
+ * The graph is built in a single pass over the resolved bundles. It maps every providing bundle to the host
+ * bundles that have a wire to one of its revisions, including revisions that were replaced by an update.
+ *
+ * @since 18-Oct-2026
+ */
+final class BundleRefreshGraph {
+
+    private final Map<UserBundleState, Set<HostBundleState>> consumers = new HashMap<UserBundleState, Set<HostBundleState>>();
+
+    BundleRefreshGraph(Collection<XBundle> resolvedBundles) {
+        for (XBundle bundle : resolvedBundles) {
+            if (bundle instanceof HostBundleState) {
+                HostBundleState hostBundle = (HostBundleState) bundle;
+                for (UserBundleState provider : hostBundle.getDependentBundles()) {
+                    if (provider != hostBundle) {
+                        Set<HostBundleState> set = consumers.get(provider);
+                        if (set == null) {
+                            set = new HashSet<HostBundleState>();
+                            consumers.put(provider, set);
+                        }
+                        set.add(hostBundle);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the host bundles that are transitively wired to one of the given bundles, not including the given bundles
+     */
+    Set<HostBundleState> getDependencyClosure(Collection<UserBundleState> providers) {
+        Set<HostBundleState> result = new LinkedHashSet<HostBundleState>();
+        Set<UserBundleState> visited = new HashSet<UserBundleState>(providers);
+        Deque<UserBundleState> queue = new ArrayDeque<UserBundleState>(providers);
+        while (queue.isEmpty() == false) {
+            UserBundleState provider = queue.poll();
+            Set<HostBundleState> set = consumers.get(provider);
+            if (set != null) {
+                for (HostBundleState consumer : set) {
+                    if (visited.add(consumer)) {
+                        result.add(consumer);
+                        queue.add(consumer);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
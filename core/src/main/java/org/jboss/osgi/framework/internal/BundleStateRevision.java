@@ -58,6 +58,7 @@ abstract class BundleStateRevision extends AbstractBundleRevision {
     private final InternalStorageState storageState;
 
     private ModuleClassLoader moduleClassLoader;
+    private final LocalizedHeadersCache localizedHeaders;
 
     BundleStateRevision(FrameworkState frameworkState, OSGiMetaData metadata, InternalStorageState storageState) throws BundleException {
         assert frameworkState != null : "Null frameworkState";
@@ -67,6 +68,7 @@ abstract class BundleStateRevision extends AbstractBundleRevision {
         this.frameworkState = frameworkState;
         this.storageState = storageState;
         this.metadata = metadata;
+        this.localizedHeaders = new LocalizedHeadersCache(frameworkState.getBundleManager().getHeadersCacheSize());
 
         // Initialize the bundle caps/reqs
         try {
@@ -105,6 +107,17 @@ abstract class BundleStateRevision extends AbstractBundleRevision {
         return storageState;
     }
 
+    LocalizedHeadersCache getLocalizedHeadersCache() {
+        return localizedHeaders;
+    }
+
+    /**
+     * Invalidate the localized headers of this revision and of the revisions it shares localization entries with
+     */
+    void invalidateLocalizedHeaders() {
+        localizedHeaders.invalidate();
+    }
+
     abstract String getLocation();
 
     abstract Class<?> loadClass(String className) throws ClassNotFoundException;
@@ -143,10 +156,13 @@ abstract class BundleStateRevision extends AbstractBundleRevision {
     }
 
     synchronized void refreshRevisionInternal() {
+        // The class space of this revision goes away
+        frameworkState.getServiceManagerPlugin().getAssignabilityCache().invalidate(getBundle());
         removeAttachment(Wiring.class);
         removeAttachment(ModuleIdentifier.class);
         removeAttachment(Module.class);
         moduleClassLoader = null;
+        localizedHeaders.invalidate();
     }
 
     void close() {
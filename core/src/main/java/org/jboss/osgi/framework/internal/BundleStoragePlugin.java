@@ -30,21 +30,30 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.framework.internal.StorageStateWriter.FsyncPolicy;
 import org.jboss.osgi.vfs.AbstractVFS;
 import org.jboss.osgi.vfs.VFSUtils;
 import org.jboss.osgi.vfs.VirtualFile;
@@ -58,10 +67,19 @@ import org.osgi.framework.Constants;
  */
 final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugin> {
 
+    static final String BUNDLE_DIR_PREFIX = "bundle-";
+    static final String CONTENT_DIR_NAME = "content";
+
     private final InjectedValue<BundleManagerPlugin> injectedBundleManager = new InjectedValue<BundleManagerPlugin>();
     private final Map<String, InternalStorageState> storageStates = new HashMap<String, InternalStorageState>();
+    private StorageStateWriter storageWriter;
     private File storageArea;
     private boolean firstInit;
+    private final ConcurrentMap<Long, File> storageDirCache = new ConcurrentHashMap<Long, File>();
+    private volatile File canonicalStorageArea;
+    // The restore timings, logged when the storage states are restored
+    private long restoreScanMillis;
+    private long restoreParseMillis;
 
     static void addService(ServiceTarget serviceTarget, boolean firstInit) {
         BundleStoragePlugin service = new BundleStoragePlugin(firstInit);
@@ -79,9 +97,12 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
     public void start(StartContext context) throws StartException {
         super.start(context);
 
+        BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
+        storageWriter = createStorageWriter(bundleManager);
+        LOGGER.debugf("Using storage writer: %s", storageWriter);
+
         try {
             // Cleanup the storage area
-            BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
             String storageClean = (String) bundleManager.getProperty(Constants.FRAMEWORK_STORAGE_CLEAN);
             if (firstInit == true && Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT.equals(storageClean)) {
                 File storage = getStorageArea();
@@ -90,20 +111,164 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
             }
 
             // Initialize storage states
-            File[] storageDirs = getStorageArea().listFiles();
-            if (storageDirs != null) {
-                for (File storageDir : storageDirs) {
-                    InternalStorageState storageState = InternalStorageState.createStorageState(storageDir);
-                    if (storageState.getBundleId() != 0) {
-                        storageStates.put(storageState.getLocation(), storageState);
-                    }
+            Object value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_RESTORE_PARALLELISM);
+            int parallelism = ParallelRestore.getParallelism(value);
+            StorageJournal journal = storageWriter.getJournal();
+            File journalFile = new File(getStorageArea(), StorageJournal.JOURNAL_FILE_NAME);
+            List<InternalStorageState> restoredStates;
+            if (journal != null) {
+                if (journal.exists()) {
+                    restoredStates = restoreFromJournal(journal);
+                } else {
+                    restoredStates = restoreFromStorageDirs(parallelism);
+                    migrateToJournal(journal, restoredStates);
+                }
+                deleteUnusedContent(restoredStates);
+            } else {
+                StorageJournal previousJournal = new StorageJournal(journalFile, storageWriter.getFsyncPolicy(), Integer.MAX_VALUE);
+                if (previousJournal.exists()) {
+                    restoredStates = restoreFromJournal(previousJournal);
+                    migrateFromJournal(previousJournal, restoredStates);
+                } else {
+                    restoredStates = restoreFromStorageDirs(parallelism);
                 }
             }
-        } catch (IOException ex) {
+            for (InternalStorageState storageState : restoredStates) {
+                if (storageState.getBundleId() != 0) {
+                    storageStates.put(storageState.getLocation(), storageState);
+                }
+            }
+            if (storageStates.isEmpty() == false) {
+                LOGGER.infoRestoredStorageStates(storageStates.size(), parallelism, restoreScanMillis, restoreParseMillis);
+            }
+        } catch (Exception ex) {
             throw new StartException(ex);
         }
     }
 
+    private List<InternalStorageState> restoreFromStorageDirs(int parallelism) throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<File> storageDirs = new ArrayList<File>();
+        File[] files = getStorageArea().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // Skip files like the JDK paths cache and the content store
+                if (file.isDirectory() && file.getName().startsWith(BUNDLE_DIR_PREFIX)) {
+                    storageDirs.add(file);
+                }
+            }
+        }
+        restoreScanMillis = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        final StorageStateWriter writer = storageWriter;
+        ParallelRestore.Task<File, InternalStorageState> task = new ParallelRestore.Task<File, InternalStorageState>() {
+            @Override
+            public InternalStorageState call(File storageDir) throws Exception {
+                return InternalStorageState.createStorageState(storageDir, writer);
+            }
+        };
+        List<InternalStorageState> result = ParallelRestore.process(storageDirs, task, parallelism);
+        restoreParseMillis = System.currentTimeMillis() - startTime;
+        return result;
+    }
+
+    private List<InternalStorageState> restoreFromJournal(StorageJournal journal) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Map<Long, Properties> journalStates = journal.open();
+        restoreScanMillis = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        List<InternalStorageState> result = new ArrayList<InternalStorageState>(journalStates.size());
+        for (Map.Entry<Long, Properties> entry : journalStates.entrySet()) {
+            File storageDir = getStorageDir(entry.getKey());
+            result.add(InternalStorageState.createStorageState(storageDir, entry.getValue(), storageWriter));
+        }
+        restoreParseMillis = System.currentTimeMillis() - startTime;
+        return result;
+    }
+
+    private void migrateToJournal(StorageJournal journal, List<InternalStorageState> restoredStates) throws IOException {
+        journal.open();
+        for (InternalStorageState storageState : restoredStates) {
+            journal.put(storageState.getBundleId(), storageState.getProperties());
+        }
+        // The journal is now authoritative
+        for (InternalStorageState storageState : restoredStates) {
+            StorageStateWriter.getPropertiesFile(storageState.getStorageDir()).delete();
+        }
+        LOGGER.debugf("Migrated %d storage states to: %s", restoredStates.size(), journal);
+    }
+
+    private void migrateFromJournal(StorageJournal journal, List<InternalStorageState> restoredStates) throws IOException {
+        for (InternalStorageState storageState : restoredStates) {
+            StorageStateWriter.writeProperties(storageState.getStorageDir(), storageState.getProperties(), storageWriter.getFsyncPolicy());
+        }
+        journal.close();
+        journal.getJournalFile().delete();
+        LOGGER.debugf("Migrated %d storage states from: %s", restoredStates.size(), journal);
+    }
+
+    /**
+     * Delete the bundle files in the content store that are no longer referenced by a storage state
+     */
+    private void deleteUnusedContent(List<InternalStorageState> restoredStates) {
+        File[] files = getContentStore().listFiles();
+        if (files != null) {
+            Set<String> usedFiles = new HashSet<String>();
+            for (InternalStorageState storageState : restoredStates) {
+                String bundleFile = storageState.getProperties().getProperty(StorageState.PROPERTY_BUNDLE_FILE);
+                if (bundleFile != null) {
+                    usedFiles.add(new File(bundleFile).getName());
+                }
+            }
+            for (File file : files) {
+                if (usedFiles.contains(file.getName()) == false) {
+                    LOGGER.debugf("Deleting unused content: %s", file);
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        super.stop(context);
+        storageWriter.shutdown();
+        StorageJournal journal = storageWriter.getJournal();
+        if (journal != null) {
+            journal.close();
+        }
+        LOGGER.debugf("Stopped storage writer: %s", storageWriter);
+    }
+
+    private StorageStateWriter createStorageWriter(BundleManagerPlugin bundleManager) {
+        Object value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STORAGE_WRITE_BEHIND);
+        boolean writeBehind = value != null ? Boolean.parseBoolean("" + value) : false;
+        value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STORAGE_FLUSH_INTERVAL);
+        long flushInterval = value != null ? new Long("" + value) : StorageStateWriter.DEFAULT_FLUSH_INTERVAL;
+        value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STORAGE_FSYNC_POLICY);
+        FsyncPolicy fsyncPolicy = value != null ? FsyncPolicy.valueOf(("" + value).toUpperCase()) : StorageStateWriter.DEFAULT_FSYNC_POLICY;
+        value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STORAGE_JOURNAL);
+        StorageJournal journal = null;
+        if (value != null && Boolean.parseBoolean("" + value)) {
+            File journalFile = new File(getStorageArea(), StorageJournal.JOURNAL_FILE_NAME);
+            journal = new StorageJournal(journalFile, fsyncPolicy, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        }
+        return new StorageStateWriter(writeBehind, flushInterval, fsyncPolicy, journal);
+    }
+
+    /**
+     * Write all pending storage state modifications
+     */
+    void flushStorageStates() {
+        storageWriter.flush();
+    }
+
+    StorageStateWriter getStorageWriter() {
+        return storageWriter;
+    }
+
     @Override
     public BundleStoragePlugin getValue() {
         return this;
@@ -114,7 +279,8 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
 
         // Make the bundle's storage dir
         File bundleDir = getStorageDir(bundleId);
-        Properties props = InternalStorageState.loadProperties(bundleDir);
+        StorageJournal journal = storageWriter.getJournal();
+        Properties props = journal != null ? journal.getProperties(bundleId) : InternalStorageState.loadProperties(bundleDir);
         String previousRev = props.getProperty(StorageState.PROPERTY_BUNDLE_REV);
         int revision = (bundleId != 0 && previousRev != null ? Integer.parseInt(previousRev) + 1 : 0);
 
@@ -125,7 +291,8 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
         props.put(StorageState.PROPERTY_START_LEVEL, new Integer(startlevel).toString());
         props.put(StorageState.PROPERTY_LAST_MODIFIED, new Long(System.currentTimeMillis()).toString());
 
-        InternalStorageState storageState = InternalStorageState.createStorageState(bundleDir, rootFile, props);
+        File contentStore = journal != null ? getContentStore() : null;
+        InternalStorageState storageState = InternalStorageState.createStorageState(bundleDir, rootFile, props, contentStore, storageWriter);
         synchronized (storageStates) {
             if (storageState.getBundleId() != 0) {
                 storageStates.put(storageState.getLocation(), storageState);
@@ -135,8 +302,18 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
     }
 
     void deleteStorageState(InternalStorageState storageState) {
+        storageWriter.cancel(storageState);
+        storageState.markDeleted();
         VFSUtils.safeClose(storageState.getRootFile());
         deleteRecursive(storageState.getStorageDir());
+        StorageJournal journal = storageWriter.getJournal();
+        if (journal != null) {
+            try {
+                journal.delete(storageState.getBundleId());
+            } catch (IOException ex) {
+                LOGGER.errorCannotWritePersistentStorage(ex, journal.getJournalFile());
+            }
+        }
         synchronized (storageStates) {
             storageStates.remove(storageState.getLocation());
         }
@@ -151,17 +328,32 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
     }
 
     File getStorageDir(long bundleId) {
-        File bundleDir = new File(getStorageArea() + "/bundle-" + bundleId);
+        File bundleDir = storageDirCache.get(bundleId);
+        if (bundleDir == null) {
+            bundleDir = new File(getCanonicalStorageArea(), BUNDLE_DIR_PREFIX + bundleId);
+            storageDirCache.put(bundleId, bundleDir);
+        }
         if (bundleDir.exists() == false)
             bundleDir.mkdirs();
 
-        String filePath = bundleDir.getAbsolutePath();
-        try {
-            filePath = bundleDir.getCanonicalPath();
-        } catch (IOException ex) {
-            // ignore
+        return bundleDir;
+    }
+
+    private File getCanonicalStorageArea() {
+        if (canonicalStorageArea == null) {
+            File storageDir = getStorageArea();
+            try {
+                storageDir = storageDir.getCanonicalFile();
+            } catch (IOException ex) {
+                // ignore
+            }
+            canonicalStorageArea = storageDir;
         }
-        return new File(filePath);
+        return canonicalStorageArea;
+    }
+
+    File getContentStore() {
+        return new File(getCanonicalStorageArea(), CONTENT_DIR_NAME);
     }
 
     File getStorageArea() {
@@ -183,9 +375,13 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
 
     File getDataFile(long bundleId, String filename) {
         File bundleDir = getStorageDir(bundleId);
-        File dataFile = new File(bundleDir.getAbsolutePath() + File.separator + filename);
+        File dataFile = new File(bundleDir.getPath() + File.separator + filename);
         dataFile.getParentFile().mkdirs();
 
+        // The bundle dir is already canonical
+        if (filename.indexOf("..") < 0 && filename.indexOf("./") < 0 && filename.indexOf(".\\") < 0)
+            return dataFile;
+
         String filePath = dataFile.getAbsolutePath();
         try {
             filePath = dataFile.getCanonicalPath();
@@ -195,6 +391,24 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
         return new File(filePath);
     }
 
+    /**
+     * Get the stored bundle file of the given storage state, which may be shared in the content store
+     *
+     * @return the bundle file or null if the storage state has no bundle file
+     */
+    static File getBundleFile(StorageState storageState) {
+        return getBundleFile(storageState.getStorageDir(), storageState.getProperties());
+    }
+
+    private static File getBundleFile(File storageDir, Properties props) {
+        String bundleFile = props.getProperty(StorageState.PROPERTY_BUNDLE_FILE);
+        if (bundleFile == null)
+            return null;
+        if (bundleFile.startsWith("../"))
+            return new File(storageDir.getParentFile(), bundleFile.substring(3));
+        return new File(storageDir + "/" + bundleFile);
+    }
+
     private void deleteRecursive(File file) {
         if (file.isDirectory()) {
             for (File aux : file.listFiles())
@@ -205,22 +419,31 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
 
     static class InternalStorageState extends StorageState {
 
-        private static InternalStorageState createStorageState(File storageDir) throws IOException {
-            VirtualFile rootFile = null;
+        private final StorageStateWriter writer;
+        private boolean deleted;
+
+        private static InternalStorageState createStorageState(File storageDir, StorageStateWriter writer) throws IOException {
             Properties props = loadProperties(storageDir);
-            String vfsLocation = props.getProperty(PROPERTY_BUNDLE_FILE);
-            if (vfsLocation != null) {
-                File revFile = new File(storageDir + "/" + vfsLocation);
+            return createStorageState(storageDir, props, writer);
+        }
+
+        private static InternalStorageState createStorageState(File storageDir, Properties props, StorageStateWriter writer) throws IOException {
+            VirtualFile rootFile = null;
+            File revFile = getBundleFile(storageDir, props);
+            if (revFile != null) {
                 rootFile = AbstractVFS.toVirtualFile(revFile.toURI());
             }
-            InternalStorageState storageState = new InternalStorageState(storageDir, rootFile, props);
+            InternalStorageState storageState = new InternalStorageState(storageDir, rootFile, props, writer);
             LOGGER.debugf("Created storage state: %s", storageState);
             return storageState;
         }
 
-        private static InternalStorageState createStorageState(File storageDir, VirtualFile rootFile, Properties props) throws IOException {
-            InternalStorageState storageState = new InternalStorageState(storageDir, rootFile, props);
-            if (rootFile != null) {
+        private static InternalStorageState createStorageState(File storageDir, VirtualFile rootFile, Properties props, File contentStore, StorageStateWriter writer) throws IOException {
+            InternalStorageState storageState = new InternalStorageState(storageDir, rootFile, props, writer);
+            if (rootFile != null && contentStore != null) {
+                File contentFile = copyToContentStore(contentStore, rootFile);
+                props.put(StorageState.PROPERTY_BUNDLE_FILE, "../" + contentStore.getName() + "/" + contentFile.getName());
+            } else if (rootFile != null) {
                 String bundleId = props.getProperty(StorageState.PROPERTY_BUNDLE_ID);
                 String revision = props.getProperty(StorageState.PROPERTY_BUNDLE_REV);
                 File revFile = new File(storageDir + "/bundle-" + bundleId + "-rev-" + revision + ".jar");
@@ -235,13 +458,49 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
                 }
                 props.put(StorageState.PROPERTY_BUNDLE_FILE, revFile.getName());
             }
-            storageState.writeProperties();
+            // The initial properties are always written immediately
+            writer.write(storageState);
             return storageState;
         }
 
+        /**
+         * Copy the given root file to the content store, where it is named by the SHA-1 of its content.
+         * Identical bundle files are only stored once.
+         */
+        private static File copyToContentStore(File contentStore, VirtualFile rootFile) throws IOException {
+            contentStore.mkdirs();
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException(ex.toString());
+            }
+            File tempFile = File.createTempFile("content-", StorageStateWriter.TEMP_FILE_SUFFIX, contentStore);
+            FileOutputStream output = new FileOutputStream(tempFile);
+            InputStream input = new DigestInputStream(rootFile.openStream(), digest);
+            try {
+                VFSUtils.copyStream(input, output);
+            } finally {
+                input.close();
+                output.close();
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hash.append(Character.forDigit(b & 0xF, 16));
+            }
+            File contentFile = new File(contentStore, hash + ".jar");
+            if (contentFile.exists() || tempFile.renameTo(contentFile) == false) {
+                tempFile.delete();
+                if (contentFile.exists() == false)
+                    throw new IOException("Cannot rename " + tempFile + " to " + contentFile);
+            }
+            return contentFile;
+        }
+
         private static Properties loadProperties(File storageDir) throws FileNotFoundException, IOException {
             Properties props = new Properties();
-            File propsFile = new File(storageDir + "/" + BUNDLE_PERSISTENT_PROPERTIES);
+            File propsFile = StorageStateWriter.getPropertiesFile(storageDir);
             if (propsFile.exists()) {
                 FileInputStream input = new FileInputStream(propsFile);
                 try {
@@ -253,42 +512,37 @@ final class BundleStoragePlugin extends AbstractPluginService<BundleStoragePlugi
             return props;
         }
 
-        private InternalStorageState(File storageDir, VirtualFile rootFile, Properties props) {
+        private InternalStorageState(File storageDir, VirtualFile rootFile, Properties props, StorageStateWriter writer) {
             super(storageDir, rootFile, props);
+            this.writer = writer;
+        }
+
+        synchronized boolean isDeleted() {
+            return deleted;
+        }
+
+        private synchronized void markDeleted() {
+            deleted = true;
         }
 
         void updateLastModified() {
             getProperties().setProperty(PROPERTY_LAST_MODIFIED, new Long(System.currentTimeMillis()).toString());
-            writeProperties();
+            writer.markDirty(this);
         }
 
         void setPersistentlyStarted(boolean started) {
             getProperties().setProperty(PROPERTY_PERSISTENTLY_STARTED, new Boolean(started).toString());
-            writeProperties();
+            writer.markDirty(this);
         }
 
         void setBundleActivationPolicyUsed(boolean usePolicy) {
             getProperties().setProperty(PROPERTY_ACTIVATION_POLICY_USED, new Boolean(usePolicy).toString());
-            writeProperties();
+            writer.markDirty(this);
         }
 
         void setStartLevel(int level) {
             getProperties().setProperty(PROPERTY_START_LEVEL, new Integer(level).toString());
-            writeProperties();
-        }
-
-        private void writeProperties() {
-            try {
-                File propsFile = new File(getStorageDir() + "/" + BUNDLE_PERSISTENT_PROPERTIES);
-                FileOutputStream output = new FileOutputStream(propsFile);
-                try {
-                    getProperties().store(output, "Persistent Bundle Properties");
-                } finally {
-                    VFSUtils.safeClose(output);
-                }
-            } catch (IOException ex) {
-                LOGGER.errorCannotWritePersistentStorage(ex, getStorageDir());
-            }
+            writer.markDirty(this);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,586 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.jboss.osgi.framework.internal.ServiceRegistryIndex.IndexTerm;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * A {@link Filter} that is compiled into an expression tree with lower case attribute names.
+ *
+ * Matching a {@link ServiceState} evaluates the tree directly against the service's lower case property map.
+ * Values of types that the tree does not handle (i.e. other than String, Number, Boolean, Character and arrays or
+ * collections thereof) are delegated to the standard filter implementation, as are all other match methods.
+ *
+ * @since 18-Oct-2026
+ */
+final class CompiledFilter implements Filter {
+
+    // Evaluation results
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int UNSUPPORTED = -1;
+
+    private final Filter delegate;
+    private final String filterString;
+    private final Node root;
+    private final List<IndexTerm> indexTerms;
+
+    private CompiledFilter(Filter delegate, Node root) {
+        this.delegate = delegate;
+        this.filterString = delegate.toString();
+        this.root = root;
+        this.indexTerms = ServiceRegistryIndex.parseTerms(filterString);
+    }
+
+    /**
+     * Create a compiled filter. The syntax is validated by {@link FrameworkUtil#createFilter(String)}.
+     */
+    static CompiledFilter compile(String filterStr) throws InvalidSyntaxException {
+        Filter delegate = FrameworkUtil.createFilter(filterStr);
+        Node root;
+        try {
+            root = new Parser(filterStr).parse();
+        } catch (RuntimeException ex) {
+            // Always use the delegate
+            root = null;
+        }
+        return new CompiledFilter(delegate, root);
+    }
+
+    /**
+     * The equality and presence terms that are usable for the {@link ServiceRegistryIndex}
+     */
+    List<IndexTerm> getIndexTerms() {
+        return indexTerms;
+    }
+
+    /**
+     * Get the set of values of which the given property must contain at least one for this filter to match.
+     *
+     * @param lowerCaseKey The lower case property key
+     * @return The set of values or null if the filter does not constrain the property to a finite set of values
+     */
+    Set<String> getRequiredValues(String lowerCaseKey) {
+        if (root == null)
+            return null;
+        Set<String> result = root.getRequiredValues(lowerCaseKey);
+        return result != null ? Collections.unmodifiableSet(result) : null;
+    }
+
+    @Override
+    public boolean match(ServiceReference reference) {
+        if (root != null && (reference instanceof ServiceState || reference instanceof ServiceReferenceWrapper)) {
+            ServiceState serviceState = ServiceState.assertServiceState(reference);
+            int result = root.eval(serviceState);
+            if (result != UNSUPPORTED)
+                return result == TRUE;
+        }
+        return delegate.match(reference);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean match(Dictionary dictionary) {
+        return delegate.match(dictionary);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean matchCase(Dictionary dictionary) {
+        return delegate.matchCase(dictionary);
+    }
+
+    @Override
+    public int hashCode() {
+        return filterString.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj instanceof Filter == false)
+            return false;
+        return filterString.equals(obj.toString());
+    }
+
+    @Override
+    public String toString() {
+        return filterString;
+    }
+
+    private static abstract class Node {
+        abstract int eval(ServiceState serviceState);
+
+        Set<String> getRequiredValues(String key) {
+            return null;
+        }
+    }
+
+    private static final class And extends Node {
+        private final Node[] children;
+
+        And(Node[] children) {
+            this.children = children;
+        }
+
+        int eval(ServiceState serviceState) {
+            for (Node child : children) {
+                int result = child.eval(serviceState);
+                if (result != TRUE)
+                    return result;
+            }
+            return TRUE;
+        }
+
+        @Override
+        Set<String> getRequiredValues(String key) {
+            // Any constrained child constrains the conjunction, use the most selective one
+            Set<String> result = null;
+            for (Node child : children) {
+                Set<String> aux = child.getRequiredValues(key);
+                if (aux != null && (result == null || aux.size() < result.size()))
+                    result = aux;
+            }
+            return result;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node[] children;
+
+        Or(Node[] children) {
+            this.children = children;
+        }
+
+        int eval(ServiceState serviceState) {
+            int result = FALSE;
+            for (Node child : children) {
+                int aux = child.eval(serviceState);
+                if (aux == TRUE)
+                    return TRUE;
+                if (aux == UNSUPPORTED)
+                    result = UNSUPPORTED;
+            }
+            return result;
+        }
+
+        @Override
+        Set<String> getRequiredValues(String key) {
+            // All children must be constrained
+            Set<String> result = new HashSet<String>();
+            for (Node child : children) {
+                Set<String> aux = child.getRequiredValues(key);
+                if (aux == null)
+                    return null;
+                result.addAll(aux);
+            }
+            return result;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        int eval(ServiceState serviceState) {
+            int result = child.eval(serviceState);
+            return result == UNSUPPORTED ? UNSUPPORTED : (result == TRUE ? FALSE : TRUE);
+        }
+    }
+
+    private static final class Present extends Node {
+        private final String key;
+
+        Present(String key) {
+            this.key = key;
+        }
+
+        int eval(ServiceState serviceState) {
+            return serviceState.getPropertyLowerCase(key) != null ? TRUE : FALSE;
+        }
+    }
+
+    private static final class Substring extends Node {
+        private final String key;
+        // null elements represent a wildcard
+        private final String[] substrings;
+
+        Substring(String key, String[] substrings) {
+            this.key = key;
+            this.substrings = substrings;
+        }
+
+        int eval(ServiceState serviceState) {
+            Object value = serviceState.getPropertyLowerCase(key);
+            if (value == null)
+                return FALSE;
+            if (value instanceof String)
+                return matchSubstring((String) value) ? TRUE : FALSE;
+            if (value instanceof Number || value instanceof Boolean || value instanceof Character)
+                return FALSE;
+            if (value instanceof Collection || value.getClass().isArray()) {
+                int result = FALSE;
+                for (Object element : elements(value)) {
+                    if (element instanceof String) {
+                        if (matchSubstring((String) element))
+                            return TRUE;
+                    } else if (!(element instanceof Number || element instanceof Boolean || element instanceof Character)) {
+                        result = UNSUPPORTED;
+                    }
+                }
+                return result;
+            }
+            return UNSUPPORTED;
+        }
+
+        private boolean matchSubstring(String string) {
+            int pos = 0;
+            for (int i = 0, size = substrings.length; i < size; i++) {
+                String substr = substrings[i];
+                if (i + 1 < size) {
+                    if (substr == null) {
+                        String substr2 = substrings[i + 1];
+                        if (substr2 == null)
+                            continue;
+                        int index = string.indexOf(substr2, pos);
+                        if (index == -1)
+                            return false;
+                        pos = index + substr2.length();
+                        if (i + 2 < size)
+                            i++;
+                    } else {
+                        int len = substr.length();
+                        if (string.regionMatches(pos, substr, 0, len) == false)
+                            return false;
+                        pos += len;
+                    }
+                } else {
+                    return substr == null || string.endsWith(substr);
+                }
+            }
+            return true;
+        }
+    }
+
+    private enum Operation {
+        EQUAL, APPROX, GREATER, LESS
+    }
+
+    private static final class Compare extends Node {
+        private final String key;
+        private final Operation operation;
+        private final String value;
+        private final String approxValue;
+
+        Compare(String key, Operation operation, String value) {
+            this.key = key;
+            this.operation = operation;
+            this.value = value;
+            this.approxValue = operation == Operation.APPROX ? approxString(value) : null;
+        }
+
+        @Override
+        Set<String> getRequiredValues(String key) {
+            if (operation != Operation.EQUAL || this.key.equals(key) == false)
+                return null;
+            return Collections.singleton(value);
+        }
+
+        int eval(ServiceState serviceState) {
+            Object propValue = serviceState.getPropertyLowerCase(key);
+            if (propValue == null)
+                return FALSE;
+            if (propValue instanceof Collection || propValue.getClass().isArray()) {
+                int result = FALSE;
+                for (Object element : elements(propValue)) {
+                    if (element == null)
+                        continue;
+                    int aux = compare(element);
+                    if (aux == TRUE)
+                        return TRUE;
+                    if (aux == UNSUPPORTED)
+                        result = UNSUPPORTED;
+                }
+                return result;
+            }
+            return compare(propValue);
+        }
+
+        private int compare(Object propValue) {
+            if (propValue instanceof String)
+                return compareString((String) propValue) ? TRUE : FALSE;
+            try {
+                if (propValue instanceof Integer)
+                    return compareLong(((Integer) propValue).longValue(), Integer.parseInt(value.trim()));
+                if (propValue instanceof Long)
+                    return compareLong(((Long) propValue).longValue(), Long.parseLong(value.trim()));
+                if (propValue instanceof Short)
+                    return compareLong(((Short) propValue).longValue(), Short.parseShort(value.trim()));
+                if (propValue instanceof Byte)
+                    return compareLong(((Byte) propValue).longValue(), Byte.parseByte(value.trim()));
+                if (propValue instanceof Float)
+                    return compareResult(Float.compare(((Float) propValue).floatValue(), Float.parseFloat(value.trim())));
+                if (propValue instanceof Double)
+                    return compareResult(Double.compare(((Double) propValue).doubleValue(), Double.parseDouble(value.trim())));
+            } catch (NumberFormatException ex) {
+                return FALSE;
+            }
+            if (propValue instanceof Boolean)
+                return propValue.equals(Boolean.valueOf(value.trim())) ? TRUE : FALSE;
+            return UNSUPPORTED;
+        }
+
+        private boolean compareString(String string) {
+            switch (operation) {
+                case EQUAL:
+                    return string.equals(value);
+                case APPROX:
+                    return approxString(string).equalsIgnoreCase(approxValue);
+                case GREATER:
+                    return string.compareTo(value) >= 0;
+                case LESS:
+                    return string.compareTo(value) <= 0;
+            }
+            return false;
+        }
+
+        private int compareLong(long propValue, long filterValue) {
+            return compareResult(propValue < filterValue ? -1 : (propValue == filterValue ? 0 : 1));
+        }
+
+        private int compareResult(int comp) {
+            switch (operation) {
+                case EQUAL:
+                case APPROX:
+                    return comp == 0 ? TRUE : FALSE;
+                case GREATER:
+                    return comp >= 0 ? TRUE : FALSE;
+                case LESS:
+                    return comp <= 0 ? TRUE : FALSE;
+            }
+            return FALSE;
+        }
+
+        private static String approxString(String input) {
+            StringBuilder builder = new StringBuilder(input.length());
+            for (int i = 0; i < input.length(); i++) {
+                char ch = input.charAt(i);
+                if (Character.isWhitespace(ch) == false)
+                    builder.append(ch);
+            }
+            return builder.toString();
+        }
+    }
+
+    private static List<Object> elements(Object value) {
+        if (value instanceof Collection)
+            return new ArrayList<Object>((Collection<?>) value);
+
+        int length = Array.getLength(value);
+        List<Object> result = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++)
+            result.add(Array.get(value, i));
+        return result;
+    }
+
+    /**
+     * A parser for the RFC 1960 based filter syntax. The input has already been validated.
+     */
+    private static final class Parser {
+        private final char[] filterChars;
+        private int pos;
+
+        Parser(String filterStr) {
+            this.filterChars = filterStr.toCharArray();
+        }
+
+        Node parse() {
+            skipWhiteSpace();
+            Node result = parseFilter();
+            skipWhiteSpace();
+            if (pos != filterChars.length)
+                throw new IllegalArgumentException("Extraneous trailing characters");
+            return result;
+        }
+
+        private Node parseFilter() {
+            skipWhiteSpace();
+            expect('(');
+            skipWhiteSpace();
+            Node result;
+            switch (filterChars[pos]) {
+                case '&':
+                    pos++;
+                    result = new And(parseFilterList());
+                    break;
+                case '|':
+                    pos++;
+                    result = new Or(parseFilterList());
+                    break;
+                case '!':
+                    pos++;
+                    result = new Not(parseFilter());
+                    break;
+                default:
+                    result = parseItem();
+                    break;
+            }
+            skipWhiteSpace();
+            expect(')');
+            return result;
+        }
+
+        private Node[] parseFilterList() {
+            List<Node> result = new ArrayList<Node>();
+            skipWhiteSpace();
+            while (filterChars[pos] == '(') {
+                result.add(parseFilter());
+                skipWhiteSpace();
+            }
+            return result.toArray(new Node[result.size()]);
+        }
+
+        private Node parseItem() {
+            String key = parseAttr();
+            skipWhiteSpace();
+            switch (filterChars[pos]) {
+                case '~':
+                    pos++;
+                    expect('=');
+                    return new Compare(key, Operation.APPROX, parseValue());
+                case '>':
+                    pos++;
+                    expect('=');
+                    return new Compare(key, Operation.GREATER, parseValue());
+                case '<':
+                    pos++;
+                    expect('=');
+                    return new Compare(key, Operation.LESS, parseValue());
+                case '=':
+                    pos++;
+                    return parseSubstring(key);
+            }
+            throw new IllegalArgumentException("Invalid operator");
+        }
+
+        private String parseAttr() {
+            skipWhiteSpace();
+            int begin = pos;
+            int end = pos;
+            char ch = filterChars[pos];
+            while (ch != '~' && ch != '<' && ch != '>' && ch != '=' && ch != '(' && ch != ')') {
+                pos++;
+                if (Character.isWhitespace(ch) == false)
+                    end = pos;
+                ch = filterChars[pos];
+            }
+            int length = end - begin;
+            if (length == 0)
+                throw new IllegalArgumentException("Missing attr");
+            return new String(filterChars, begin, length).toLowerCase(Locale.ENGLISH);
+        }
+
+        private String parseValue() {
+            StringBuilder builder = new StringBuilder(filterChars.length - pos);
+            while (true) {
+                char ch = filterChars[pos];
+                if (ch == ')')
+                    break;
+                if (ch == '(')
+                    throw new IllegalArgumentException("Invalid value");
+                if (ch == '\\')
+                    ch = filterChars[++pos];
+                builder.append(ch);
+                pos++;
+            }
+            if (builder.length() == 0)
+                throw new IllegalArgumentException("Missing value");
+            return builder.toString();
+        }
+
+        private Node parseSubstring(String key) {
+            StringBuilder builder = new StringBuilder(filterChars.length - pos);
+            List<String> operands = new ArrayList<String>();
+            while (true) {
+                char ch = filterChars[pos];
+                if (ch == ')') {
+                    if (builder.length() > 0)
+                        operands.add(builder.toString());
+                    break;
+                }
+                if (ch == '(')
+                    throw new IllegalArgumentException("Invalid value");
+                if (ch == '*') {
+                    if (builder.length() > 0)
+                        operands.add(builder.toString());
+                    builder.setLength(0);
+                    operands.add(null);
+                    pos++;
+                    continue;
+                }
+                if (ch == '\\')
+                    ch = filterChars[++pos];
+                builder.append(ch);
+                pos++;
+            }
+
+            int size = operands.size();
+            if (size == 0)
+                throw new IllegalArgumentException("Missing value");
+            if (size == 1) {
+                String single = operands.get(0);
+                return single == null ? new Present(key) : new Compare(key, Operation.EQUAL, single);
+            }
+            return new Substring(key, operands.toArray(new String[size]));
+        }
+
+        private void expect(char ch) {
+            if (filterChars[pos] != ch)
+                throw new IllegalArgumentException("Expected: " + ch);
+            pos++;
+        }
+
+        private void skipWhiteSpace() {
+            while (pos < filterChars.length && Character.isWhitespace(filterChars[pos]))
+                pos++;
+        }
+    }
+}
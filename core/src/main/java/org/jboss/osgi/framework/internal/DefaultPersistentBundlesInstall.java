@@ -25,6 +25,8 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -87,17 +89,48 @@ final class DefaultPersistentBundlesInstall extends BootstrapBundlesInstall<Void
             }
         }
 
-        List<Deployment> deployments = new ArrayList<Deployment>();
-        for (StorageState storageState : storageStates) {
-            try {
-                Deployment dep = deploymentPlugin.createDeployment(storageState);
-                deployments.add(dep);
-            } catch (BundleException ex) {
-                LOGGER.errorStateCannotInstallInitialBundle(ex, storageState.getLocation());
+        // Create the deployments concurrently, in bundle id order. The deployment factory
+        // does not share mutable state between deployments, see DeploymentFactoryPlugin
+        long startTime = System.currentTimeMillis();
+        List<StorageState> sortedStates = new ArrayList<StorageState>(storageStates);
+        Collections.sort(sortedStates, new Comparator<StorageState>() {
+            @Override
+            public int compare(StorageState o1, StorageState o2) {
+                long id1 = o1.getBundleId();
+                long id2 = o2.getBundleId();
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
             }
+        });
+        Object value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_RESTORE_PARALLELISM);
+        int parallelism = ParallelRestore.getParallelism(value);
+        ParallelRestore.Task<StorageState, Deployment> task = new ParallelRestore.Task<StorageState, Deployment>() {
+            @Override
+            public Deployment call(StorageState storageState) {
+                try {
+                    return deploymentPlugin.createDeployment(storageState);
+                } catch (BundleException ex) {
+                    LOGGER.errorStateCannotInstallInitialBundle(ex, storageState.getLocation());
+                    return null;
+                }
+            }
+        };
+        List<Deployment> deployments;
+        try {
+            deployments = ParallelRestore.process(sortedStates, task, parallelism);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new StartException(ex);
         }
+        long deploymentMillis = System.currentTimeMillis() - startTime;
 
         // Install the bundles from the given locations
+        startTime = System.currentTimeMillis();
         installBootstrapBundles(serviceTarget, deployments);
+        long installMillis = System.currentTimeMillis() - startTime;
+
+        if (deployments.isEmpty() == false) {
+            LOGGER.infoRestoredPersistentBundles(deployments.size(), parallelism, deploymentMillis, installMillis);
+        }
     }
 }
\ No newline at end of file
@@ -27,9 +27,12 @@ import static org.osgi.framework.Constants.FRAMEWORK_BOOTDELEGATION;
 import static org.osgi.framework.Constants.FRAMEWORK_BUNDLE_PARENT;
 import static org.osgi.framework.Constants.FRAMEWORK_BUNDLE_PARENT_BOOT;
 import static org.osgi.framework.Constants.FRAMEWORK_BUNDLE_PARENT_EXT;
+import static org.osgi.framework.Constants.FRAMEWORK_STORAGE;
 import static org.osgi.framework.Constants.FRAMEWORK_SYSTEMPACKAGES;
 import static org.osgi.framework.Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -47,6 +50,7 @@ import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.IntegrationService;
 import org.jboss.osgi.framework.SystemPathsPlugin;
 
@@ -72,6 +76,7 @@ final class DefaultSystemPathsPlugin extends AbstractPluginService<SystemPathsPl
     private PathFilter cachedFrameworkFilter;
     private Set<String> cachedSystemPaths;
     private PathFilter cachedSystemFilter;
+    private JDKPathsCache jdkPathsCache;
 
     DefaultSystemPathsPlugin(FrameworkBuilder frameworkBuilder) {
         this.frameworkBuilder = frameworkBuilder;
@@ -121,6 +126,27 @@ final class DefaultSystemPathsPlugin extends AbstractPluginService<SystemPathsPl
             bootDelegationPackages.add("sun.*");
             bootDelegationPackages.add("com.sun.*");
         }
+
+        // Initialize the JDK paths from the snapshot next to the storage area
+        Object value = frameworkBuilder.getProperty(Constants.PROPERTY_JDK_PATHS_CACHE);
+        boolean persistent = value != null ? Boolean.parseBoolean("" + value) : true;
+        jdkPathsCache = new JDKPathsCache(persistent ? getJDKPathsCacheFile() : null);
+        value = frameworkBuilder.getProperty(Constants.PROPERTY_JDK_PATHS_PRELOAD);
+        if (value != null ? Boolean.parseBoolean("" + value) : true) {
+            jdkPathsCache.populateInBackground();
+        }
+    }
+
+    private File getJDKPathsCacheFile() {
+        String dirName = (String) frameworkBuilder.getProperty(FRAMEWORK_STORAGE);
+        File storageArea = new File(dirName != null ? dirName : "./osgi-store");
+        try {
+            storageArea = storageArea.getCanonicalFile();
+        } catch (IOException ex) {
+            storageArea = storageArea.getAbsoluteFile();
+        }
+        // A sibling of the storage area survives a storage clean, which may run while the snapshot is written
+        return new File(storageArea.getParentFile(), storageArea.getName() + "." + JDKPathsCache.CACHE_FILE_NAME);
     }
 
     @Override
@@ -173,7 +199,7 @@ final class DefaultSystemPathsPlugin extends AbstractPluginService<SystemPathsPl
             }
             if (hasBootDelegationWildcards == true) {
                 PathFilter bootDelegationFilter = getBootDelegationFilter();
-                for (String path : JDKPaths.JDK) {
+                for (String path : jdkPathsCache.getPaths()) {
                     if (bootDelegationFilter.accept(path)) {
                         result.add(path);
                     }
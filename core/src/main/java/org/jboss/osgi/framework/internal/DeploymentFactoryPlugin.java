@@ -24,6 +24,7 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
 import java.util.jar.Manifest;
@@ -31,8 +32,12 @@ import java.util.jar.Manifest;
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceTarget;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.deployment.deployer.DeploymentFactory;
+import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.StorageState;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.metadata.OSGiMetaDataBuilder;
@@ -50,9 +55,13 @@ import org.osgi.framework.Version;
  */
 final class DeploymentFactoryPlugin extends AbstractPluginService<DeploymentFactoryPlugin> {
 
+    private final InjectedValue<BundleManagerPlugin> injectedBundleManager = new InjectedValue<BundleManagerPlugin>();
+    private boolean metadataCache;
+
     static void addService(ServiceTarget serviceTarget) {
         DeploymentFactoryPlugin service = new DeploymentFactoryPlugin();
         ServiceBuilder<DeploymentFactoryPlugin> builder = serviceTarget.addService(InternalServices.DEPLOYMENT_FACTORY_PLUGIN, service);
+        builder.addDependency(Services.BUNDLE_MANAGER, BundleManagerPlugin.class, service.injectedBundleManager);
         builder.setInitialMode(Mode.ON_DEMAND);
         builder.install();
     }
@@ -60,6 +69,14 @@ final class DeploymentFactoryPlugin extends AbstractPluginService<DeploymentFact
     DeploymentFactoryPlugin() {
     }
 
+    @Override
+    public void start(StartContext context) throws StartException {
+        super.start(context);
+        BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
+        Object value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_METADATA_CACHE);
+        metadataCache = value != null ? Boolean.parseBoolean("" + value) : true;
+    }
+
     @Override
     public DeploymentFactoryPlugin getValue() {
         return this;
@@ -68,6 +85,10 @@ final class DeploymentFactoryPlugin extends AbstractPluginService<DeploymentFact
     /**
      * Create a {@link Deployment} from the given bundle storage.
      *
+     * This method may be called concurrently for different storage states. The plugin state is only written
+     * when the service starts. Every call creates its own {@link BundleInfo} and metadata, and reads or writes
+     * only the metadata cache file of the given storage state.
+     *
      * @param storageState The bundle storage to be associated with the deployment
      * @throws BundleException If the given root file does not
      */
@@ -75,13 +96,59 @@ final class DeploymentFactoryPlugin extends AbstractPluginService<DeploymentFact
         assert storageState != null : "Null storageState";
         String location = storageState.getLocation();
         VirtualFile rootFile = storageState.getRootFile();
-        Deployment dep = createDeployment(location, rootFile);
+        Deployment dep = null;
+        if (metadataCache && rootFile != null) {
+            dep = createCachedDeployment(storageState, location, rootFile);
+        }
+        if (dep == null) {
+            dep = createDeployment(location, rootFile);
+        }
         dep.setAutoStart(storageState.isPersistentlyStarted());
         dep.setStartLevel(storageState.getStartLevel());
         dep.addAttachment(StorageState.class, storageState);
         return dep;
     }
 
+    /**
+     * Create the deployment from the cached manifest of the stored bundle file, or populate the cache.
+     *
+     * @return the deployment or null if there is no valid cache entry
+     */
+    private Deployment createCachedDeployment(StorageState storageState, String location, VirtualFile rootFile) throws BundleException {
+        File bundleFile = BundleStoragePlugin.getBundleFile(storageState);
+        if (bundleFile == null)
+            return null;
+
+        File cacheFile = MetaDataCache.getCacheFile(storageState);
+        Manifest manifest = MetaDataCache.readManifest(cacheFile, bundleFile);
+        if (manifest != null) {
+            try {
+                OSGiMetaData metadata = OSGiMetaDataBuilder.load(manifest);
+                Deployment dep = DeploymentFactory.createDeployment(rootFile, location, metadata.getBundleSymbolicName(), metadata.getBundleVersion());
+                dep.addAttachment(OSGiMetaData.class, metadata);
+                LOGGER.tracef("Created deployment from metadata cache: %s", cacheFile);
+                return dep;
+            } catch (RuntimeException ex) {
+                LOGGER.debugf(ex, "Cannot use metadata cache: %s", cacheFile);
+                cacheFile.delete();
+            }
+        }
+
+        // Only deployments with a valid OSGi manifest are cached
+        Deployment dep = createDeployment(location, rootFile);
+        if (dep.getAttachment(BundleInfo.class) != null) {
+            try {
+                manifest = VFSUtils.getManifest(rootFile);
+                if (manifest != null) {
+                    MetaDataCache.writeManifest(cacheFile, bundleFile, manifest);
+                }
+            } catch (IOException ex) {
+                LOGGER.debugf(ex, "Cannot write metadata cache: %s", cacheFile);
+            }
+        }
+        return dep;
+    }
+
     Deployment createDeployment(String location, VirtualFile rootFile) throws BundleException {
 
         BundleException cause = null;
@@ -24,8 +24,14 @@ package org.jboss.osgi.framework.internal;
 
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jboss.msc.service.Service;
 import org.jboss.msc.service.ServiceBuilder;
@@ -37,22 +43,33 @@ import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.AbstractBundleWiring;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockContext;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockMethod;
 import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.XEnvironment;
 import org.jboss.osgi.resolver.XResource;
 import org.jboss.osgi.resolver.spi.AbstractEnvironment;
+import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
 import org.osgi.resource.Wiring;
 
 /**
  * The default {@link XEnvironment} plugin.
  *
+ * Installs and uninstalls take the bundle locks of the affected resources, so that unrelated bundles can be
+ * installed concurrently. The {@link AbstractEnvironment} itself is not safe for concurrent modification, so every
+ * modification also holds the write side of the environment lock and every resolve holds its read side.
+ * The environment lock is taken last and is never held while waiting for a framework or bundle lock.
+ *
  * @author thomas.diesler@jboss.com
  * @since 15-Feb-2012
  */
 final class EnvironmentPlugin extends AbstractEnvironment implements Service<XEnvironment> {
 
     private final InjectedValue<LockManagerPlugin> injectedLockManager = new InjectedValue<LockManagerPlugin>();
+    private final BundleIndex bundleIndex = new BundleIndex();
+    private final AtomicLong generation = new AtomicLong();
+    private final ReadWriteLock environmentLock = new ReentrantReadWriteLock();
 
     static void addService(ServiceTarget serviceTarget) {
         EnvironmentPlugin service = new EnvironmentPlugin();
@@ -71,6 +88,7 @@ final class EnvironmentPlugin extends AbstractEnvironment implements Service<XEn
 
     @Override
     public void stop(StopContext context) {
+        bundleIndex.clear();
     }
 
     @Override
@@ -78,6 +96,43 @@ final class EnvironmentPlugin extends AbstractEnvironment implements Service<XEn
         return this;
     }
 
+    BundleIndex getBundleIndex() {
+        return bundleIndex;
+    }
+
+    /**
+     * Get the generation of this environment, which changes when resources are installed,
+     * uninstalled or the wiring of a resource changes.
+     *
+     * The generation identifies an environment state for cached resolution results. It changes on
+     * unrelated modifications too, so it cannot tell whether a particular resolution became stale.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get the lock that resolvers hold while they read the environment
+     */
+    Lock getReadLock() {
+        return environmentLock.readLock();
+    }
+
+    /**
+     * Apply the wirings of a resolution to the environment
+     */
+    Map<Resource, Wiring> applyWiring(Map<Resource, List<Wire>> wiremap) {
+        Lock writeLock = environmentLock.writeLock();
+        writeLock.lock();
+        try {
+            Map<Resource, Wiring> wirings = updateWiring(wiremap);
+            generation.incrementAndGet();
+            return wirings;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     @Override
     public void installResources(XResource... resources) {
 
@@ -90,31 +145,53 @@ final class EnvironmentPlugin extends AbstractEnvironment implements Service<XEn
                 throw MESSAGES.cannotObtainBundleFromResource(res);
         }
 
-        aquireFrameworkLock();
+        // Installing unrelated resources can proceed concurrently
+        LockContext lockContext = aquireBundleLock(LockMethod.INSTALL, resources);
+        Lock writeLock = environmentLock.writeLock();
+        writeLock.lock();
         try {
             super.installResources(resources);
+            for (XResource res : resources) {
+                bundleIndex.addRevision((XBundleRevision) res);
+            }
+            generation.incrementAndGet();
         } finally {
-            releaseFrameworkLock();
+            writeLock.unlock();
+            releaseLock(lockContext);
         }
     }
 
     @Override
-    public synchronized void uninstallResources(XResource... resources) {
-        aquireFrameworkLock();
+    public void uninstallResources(XResource... resources) {
+        LockContext lockContext = aquireBundleLock(LockMethod.UNINSTALL, resources);
+        Lock writeLock = environmentLock.writeLock();
+        writeLock.lock();
         try {
             super.uninstallResources(resources);
+            for (XResource res : resources) {
+                if (res instanceof XBundleRevision) {
+                    bundleIndex.removeRevision((XBundleRevision) res);
+                }
+            }
+            generation.incrementAndGet();
         } finally {
-            releaseFrameworkLock();
+            writeLock.unlock();
+            releaseLock(lockContext);
         }
     }
 
     @Override
     public void refreshResources(XResource... resources) {
-        aquireFrameworkLock();
+        // Refresh drops wires to other resources, which requires the exclusive lock
+        LockContext lockContext = aquireFrameworkLock(LockMethod.REFRESH);
+        Lock writeLock = environmentLock.writeLock();
+        writeLock.lock();
         try {
             super.refreshResources(resources);
+            generation.incrementAndGet();
         } finally {
-            releaseFrameworkLock();
+            writeLock.unlock();
+            releaseLock(lockContext);
         }
     }
 
@@ -124,17 +201,26 @@ final class EnvironmentPlugin extends AbstractEnvironment implements Service<XEn
         return new AbstractBundleWiring(brev, required, provided);
     }
 
-    private void aquireFrameworkLock() {
+    private LockContext aquireFrameworkLock(LockMethod method) {
+        try {
+            LockManagerPlugin lockManager = injectedLockManager.getValue();
+            return lockManager.aquireFrameworkLock(method);
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private LockContext aquireBundleLock(LockMethod method, XResource... resources) {
         try {
             LockManagerPlugin lockManager = injectedLockManager.getValue();
-            lockManager.aquireFrameworkLock();
+            return lockManager.aquireBundleLock(method, Arrays.asList(resources));
         } catch (TimeoutException ex) {
             throw new IllegalStateException(ex);
         }
     }
 
-    private void releaseFrameworkLock() {
+    private void releaseLock(LockContext lockContext) {
         LockManagerPlugin lockManager = injectedLockManager.getValue();
-        lockManager.releaseFrameworkLock();
+        lockManager.releaseLock(lockContext);
     }
 }
@@ -0,0 +1,332 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers asynchronous events on a bounded thread pool.
+ *
+ * Every listener has its own queue which is drained by at most one thread at a time, so that events are delivered
+ * to a given listener in the order they were fired. Different listeners are served in parallel. The number of
+ * pending deliveries is bounded, the {@link OverflowPolicy} determines what happens when the bound is reached.
+ *
+ * @since 18-Oct-2026
+ */
+final class EventDeliveryEngine {
+
+    /** The default number of delivery threads */
+    static final int DEFAULT_MAX_THREADS = 4;
+    /** The default maximum number of pending deliveries */
+    static final int DEFAULT_MAX_PENDING = 10000;
+    /** The maximum time a firing thread is blocked by {@link OverflowPolicy#BLOCK} */
+    static final long BLOCK_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * What happens when an event is fired while the maximum number of pending deliveries is reached
+     */
+    enum OverflowPolicy {
+        /** Block the firing thread until there is room, then discard if the timeout is reached */
+        BLOCK,
+        /** Discard the delivery */
+        DISCARD
+    }
+
+    private final String name;
+    private final int maxPending;
+    private final OverflowPolicy overflowPolicy;
+    private final ExecutorService executor;
+    private final Map<Object, ListenerQueue> queues = new IdentityHashMap<Object, ListenerQueue>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final Object capacityMonitor = new Object();
+
+    EventDeliveryEngine(final String name, int maxThreads, int maxPending, OverflowPolicy overflowPolicy) {
+        this.name = name;
+        this.maxPending = maxPending;
+        this.overflowPolicy = overflowPolicy;
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable run) {
+                Thread thread = new DeliveryThread(run, name + " Thread-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor poolExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        poolExecutor.allowCoreThreadTimeOut(true);
+        this.executor = poolExecutor;
+    }
+
+    /**
+     * Schedule the delivery of an event to the given listener.
+     *
+     * @param listener The listener that determines the delivery order
+     * @param delivery The runnable that calls the listener
+     * @param description A description of the event for logging
+     * @return false if the delivery was discarded
+     */
+    boolean deliver(Object listener, Runnable delivery, Object description) {
+        if (reserveCapacity() == false) {
+            discarded.incrementAndGet();
+            LOGGER.warnEventDeliveryDiscarded(name, description, listener);
+            return false;
+        }
+
+        // A drained and retired queue removes itself under the same lock,
+        // so there can never be two queues for the same listener
+        synchronized (queues) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue == null) {
+                queue = new ListenerQueue(listener);
+                queues.put(listener, queue);
+            }
+            queue.tasks.offer(delivery);
+            queue.schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Keep the queue of a listener that is registered again after it was removed
+     */
+    void addListener(Object listener) {
+        synchronized (queues) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue != null) {
+                queue.retired = false;
+            }
+        }
+    }
+
+    /**
+     * Release the queue of a listener that is no longer registered, once it is drained
+     */
+    void removeListener(Object listener) {
+        synchronized (queues) {
+            ListenerQueue queue = queues.get(listener);
+            if (queue != null) {
+                queue.retired = true;
+                if (queue.tasks.isEmpty() && queue.scheduled.get() == false) {
+                    queues.remove(listener);
+                }
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    int getPendingCount() {
+        return pending.get();
+    }
+
+    long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Get a snapshot of the delivery statistics of every known listener
+     */
+    List<ListenerStatistics> getListenerStatistics() {
+        List<ListenerStatistics> result = new ArrayList<ListenerStatistics>();
+        synchronized (queues) {
+            for (ListenerQueue queue : queues.values()) {
+                result.add(new ListenerStatistics(queue));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private boolean reserveCapacity() {
+        if (pending.incrementAndGet() <= maxPending)
+            return true;
+
+        // Threads that deliver events must never block on the queue they drain
+        if (overflowPolicy == OverflowPolicy.BLOCK && Thread.currentThread() instanceof DeliveryThread == false) {
+            long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT_MILLIS;
+            synchronized (capacityMonitor) {
+                while (pending.get() > maxPending) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0)
+                        break;
+                    try {
+                        capacityMonitor.wait(wait);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            if (pending.get() <= maxPending)
+                return true;
+        }
+
+        pending.decrementAndGet();
+        return false;
+    }
+
+    private void releaseCapacity() {
+        if (pending.getAndDecrement() > maxPending) {
+            synchronized (capacityMonitor) {
+                capacityMonitor.notifyAll();
+            }
+        }
+    }
+
+    private final class ListenerQueue implements Runnable {
+
+        private final Object listener;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong deliveries = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        // Written under the queues lock
+        private volatile boolean retired;
+
+        ListenerQueue(Object listener) {
+            this.listener = listener;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Throwable th) {
+                    LOGGER.warnErrorWhileFiringEvent(th, name);
+                } finally {
+                    record(System.nanoTime() - start);
+                    delivered.incrementAndGet();
+                    releaseCapacity();
+                }
+            }
+            scheduled.set(false);
+
+            // Pick up tasks that were offered after the last poll
+            if (tasks.isEmpty() == false) {
+                schedule();
+            } else if (retired) {
+                synchronized (queues) {
+                    if (retired && tasks.isEmpty() && scheduled.get() == false && queues.get(listener) == this) {
+                        queues.remove(listener);
+                    }
+                }
+            }
+        }
+
+        private void record(long nanos) {
+            deliveries.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && maxNanos.compareAndSet(max, nanos) == false) {
+                max = maxNanos.get();
+            }
+        }
+    }
+
+    /**
+     * The delivery statistics of a single listener
+     */
+    static final class ListenerStatistics {
+
+        private final Object listener;
+        private final int queueDepth;
+        private final long deliveries;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private ListenerStatistics(ListenerQueue queue) {
+            this.listener = queue.listener;
+            this.queueDepth = queue.tasks.size();
+            this.deliveries = queue.deliveries.get();
+            this.totalNanos = queue.totalNanos.get();
+            this.maxNanos = queue.maxNanos.get();
+        }
+
+        Object getListener() {
+            return listener;
+        }
+
+        int getQueueDepth() {
+            return queueDepth;
+        }
+
+        long getDeliveries() {
+            return deliveries;
+        }
+
+        long getAverageNanos() {
+            return deliveries > 0 ? totalNanos / deliveries : 0;
+        }
+
+        long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ListenerStatistics[" + listener.getClass().getName() + ",queue=" + queueDepth + ",deliveries=" + deliveries + ",avg="
+                    + TimeUnit.NANOSECONDS.toMicros(getAverageNanos()) + "us,max=" + TimeUnit.NANOSECONDS.toMicros(maxNanos) + "us]";
+        }
+    }
+
+    private static final class DeliveryThread extends Thread {
+        DeliveryThread(Runnable run, String name) {
+            super(run, name);
+        }
+    }
+}
@@ -27,12 +27,13 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.modules.LocalLoader;
 import org.jboss.modules.Module;
@@ -56,13 +57,22 @@ import org.osgi.resource.Requirement;
 /**
  * A fallback loader that takes care of dynamic class/resource loads.
  *
+ * Candidate modules are first looked up through the exported package index of the {@link BundleIndex}.
+ * The resolved modules are only scanned when fragments may contribute exports to their hosts, which the index
+ * does not reflect. Failed lookups are remembered together with the export modification count of the index,
+ * so that repeated misses do not scan the framework again until an exporting bundle is installed, uninstalled,
+ * resolved or refreshed.
+ *
  * @author thomas.diesler@jboss.com
  * @since 24-Feb-2012
  */
 final class FallbackLoader implements LocalLoader {
 
-    private final ReentrantLock fallbackLoaderLock = new ReentrantLock();
-    private final AtomicBoolean enabled = new AtomicBoolean(true);
+    // The maximum number of remembered failed lookups
+    static final int MAX_NEGATIVE_CACHE_SIZE = 1024;
+
+    private final ThreadLocal<Boolean> disabled = new ThreadLocal<Boolean>();
+    private final ConcurrentMap<String, Long> negativeCache = new ConcurrentHashMap<String, Long>();
     private final HostBundleState hostBundle;
     private final HostBundleRevision hostRev;
     private final ModuleIdentifier identifier;
@@ -70,6 +80,8 @@ final class FallbackLoader implements LocalLoader {
     private final FrameworkState frameworkState;
     private final BundleManagerPlugin bundleManager;
     private final ModuleManagerPlugin moduleManager;
+    private volatile List<XPackageRequirement> dynamicRequirements;
+    private volatile Set<String> exportedPaths;
 
     private static ThreadLocal<Map<String, AtomicInteger>> dynamicLoadAttempts;
 
@@ -87,45 +99,48 @@ final class FallbackLoader implements LocalLoader {
         hostRev.setFallbackLoader(this);
     }
 
-    boolean setEnabled(boolean flag) {
-        try {
-            fallbackLoaderLock.lock();
-            return enabled.getAndSet(flag);
-        } finally {
-            fallbackLoaderLock.unlock();
-        }
-    }
-
-    void lock() {
-        fallbackLoaderLock.lock();
+    /**
+     * True if the host revision has dynamic package requirements
+     */
+    boolean hasDynamicRequirements() {
+        return getDynamicPackageRequirements().isEmpty() == false;
     }
 
-    void unlock() {
-        fallbackLoaderLock.unlock();
+    /**
+     * Enable or disable dynamic loads for the current thread
+     *
+     * @return true if dynamic loads were enabled before
+     */
+    boolean setEnabled(boolean flag) {
+        boolean wasEnabled = disabled.get() == null;
+        if (flag) {
+            disabled.remove();
+        } else {
+            disabled.set(Boolean.TRUE);
+        }
+        return wasEnabled;
     }
 
     @Override
     public Class<?> loadClassLocal(String className, boolean resolve) {
+        if (disabled.get() != null)
+            return null;
+
+        List<XPackageRequirement> matchingPatterns = findMatchingPatterns(className);
+        if (matchingPatterns.isEmpty())
+            return null;
+
+        String pathName = className.replace('.', '/') + ".class";
+        Module module = findModuleDynamically(pathName, matchingPatterns);
+        if (module == null)
+            return null;
+
+        ModuleClassLoader moduleClassLoader = module.getClassLoader();
         try {
-            fallbackLoaderLock.lock();
-            List<XPackageRequirement> matchingPatterns = findMatchingPatterns(className);
-            if (!enabled.get() || matchingPatterns.isEmpty())
-                return null;
-
-            String pathName = className.replace('.', '/') + ".class";
-            Module module = findModuleDynamically(pathName, matchingPatterns);
-            if (module == null)
-                return null;
-
-            ModuleClassLoader moduleClassLoader = module.getClassLoader();
-            try {
-                return moduleClassLoader.loadClass(className);
-            } catch (ClassNotFoundException ex) {
-                LOGGER.tracef("Cannot load class [%s] from module: %s", className, module);
-                return null;
-            }
-        } finally {
-            fallbackLoaderLock.unlock();
+            return moduleClassLoader.loadClass(className);
+        } catch (ClassNotFoundException ex) {
+            LOGGER.tracef("Cannot load class [%s] from module: %s", className, module);
+            return null;
         }
     }
 
@@ -136,29 +151,27 @@ final class FallbackLoader implements LocalLoader {
 
     @Override
     public List<Resource> loadResourceLocal(String resName) {
-        try {
-            fallbackLoaderLock.lock();
-            if (resName.startsWith("/"))
-                resName = resName.substring(1);
-
-            List<XPackageRequirement> matchingPatterns = findMatchingPatterns(resName);
-            if (!enabled.get() || matchingPatterns.isEmpty())
-                return Collections.emptyList();
-
-            Module module = findModuleDynamically(resName, matchingPatterns);
-            if (module == null)
-                return Collections.emptyList();
-
-            URL resURL = module.getExportedResource(resName);
-            if (resURL == null) {
-                LOGGER.tracef("Cannot load resource [%s] from module: %s", resName, module);
-                return Collections.emptyList();
-            }
+        if (disabled.get() != null)
+            return Collections.emptyList();
 
-            return Collections.singletonList((Resource) new URLResource(resURL));
-        } finally {
-            fallbackLoaderLock.unlock();
+        if (resName.startsWith("/"))
+            resName = resName.substring(1);
+
+        List<XPackageRequirement> matchingPatterns = findMatchingPatterns(resName);
+        if (matchingPatterns.isEmpty())
+            return Collections.emptyList();
+
+        Module module = findModuleDynamically(resName, matchingPatterns);
+        if (module == null)
+            return Collections.emptyList();
+
+        URL resURL = module.getExportedResource(resName);
+        if (resURL == null) {
+            LOGGER.tracef("Cannot load resource [%s] from module: %s", resName, module);
+            return Collections.emptyList();
         }
+
+        return Collections.singletonList((Resource) new URLResource(resURL));
     }
 
     private Module findModuleDynamically(String resName, List<XPackageRequirement> matchingPatterns) {
@@ -170,6 +183,15 @@ final class FallbackLoader implements LocalLoader {
         if (importedPaths.contains(path))
             return null;
 
+        // A previous lookup failed and nothing changed since
+        BundleIndex bundleIndex = bundleManager.getBundleIndex();
+        long modificationCount = bundleIndex.getExportModificationCount();
+        Long missCount = negativeCache.get(resName);
+        if (missCount != null && missCount.longValue() == modificationCount) {
+            LOGGER.tracef("Cached miss for dynamic load of: %s", resName);
+            return null;
+        }
+
         if (dynamicLoadAttempts == null)
             dynamicLoadAttempts = new ThreadLocal<Map<String, AtomicInteger>>();
 
@@ -187,17 +209,32 @@ final class FallbackLoader implements LocalLoader {
                 mapping.put(resName, recursiveDepth = new AtomicInteger());
 
             if (recursiveDepth.incrementAndGet() == 1) {
-                Module module = findInResolvedModules(resName, matchingPatterns);
+                String packageName = path.replace('/', '.');
+                Module module = findInExportingModules(resName, packageName, matchingPatterns);
                 if (module != null && module.getIdentifier().equals(identifier) == false)
                     return module;
 
-                module = findInUnresolvedModules(resName, matchingPatterns);
+                // Without fragments the exported package index is authoritative for resolved modules
+                if (bundleIndex.hasFragments()) {
+                    module = findInResolvedModules(resName, matchingPatterns);
+                    if (module != null && module.getIdentifier().equals(identifier) == false)
+                        return module;
+                }
+
+                module = findInUnresolvedModules(resName, packageName, matchingPatterns);
                 if (module != null && module.getIdentifier().equals(identifier) == false)
                     return module;
 
                 module = findInFrameworkModule(resName, matchingPatterns);
                 if (module != null && module.getIdentifier().equals(identifier) == false)
                     return module;
+
+                // Remember the miss with the modification count from before the lookup, so that
+                // modifications during the lookup invalidate the entry
+                if (negativeCache.size() >= MAX_NEGATIVE_CACHE_SIZE) {
+                    negativeCache.clear();
+                }
+                negativeCache.put(resName, modificationCount);
             }
         } finally {
             if (removeThreadLocalMapping == true) {
@@ -213,16 +250,14 @@ final class FallbackLoader implements LocalLoader {
 
     private List<XPackageRequirement> findMatchingPatterns(String resName) {
 
-        List<XPackageRequirement> dynamicRequirements = getDynamicPackageRequirements(hostRev);
+        List<XPackageRequirement> dynamicRequirements = getDynamicPackageRequirements();
+        if (dynamicRequirements.isEmpty())
+            return Collections.emptyList();
 
         // Dynamic imports may not be used when the package is exported
         String pathName = VFSUtils.getPathFromClassName(resName);
-        List<XPackageCapability> packageCapabilities = getPackageCapabilities(hostRev);
-        for (XPackageCapability packageCap : packageCapabilities) {
-            String packagePath = packageCap.getPackageName().replace('.', '/');
-            if (pathName.equals(packagePath))
-                return Collections.emptyList();
-        }
+        if (getExportedPaths().contains(pathName))
+            return Collections.emptyList();
 
         List<XPackageRequirement> foundMatch = new ArrayList<XPackageRequirement>();
         for (XPackageRequirement dynreq : dynamicRequirements) {
@@ -248,9 +283,28 @@ final class FallbackLoader implements LocalLoader {
         return foundMatch;
     }
 
+    private Module findInExportingModules(String resName, String packageName, List<XPackageRequirement> matchingPatterns) {
+        LOGGER.tracef("Attempt to find path dynamically in modules that export: %s", packageName);
+        BundleIndex bundleIndex = bundleManager.getBundleIndex();
+        for (XBundleRevision brev : bundleIndex.getExporters(packageName)) {
+            XBundle bundle = brev.getBundle();
+            if (bundle.getBundleId() > 0 && !brev.isFragment() && brev == bundle.getBundleRevision()) {
+                if ((bundle.getState() & BundleIndex.WIRED_STATES) != 0) {
+                    for (XPackageRequirement pkgreq : matchingPatterns) {
+                        ModuleIdentifier identifier = moduleManager.getModuleIdentifier(brev);
+                        Module candidate = moduleManager.getModule(identifier);
+                        if (isValidCandidate(resName, pkgreq, brev, candidate))
+                            return candidate;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     private Module findInResolvedModules(String resName, List<XPackageRequirement> matchingPatterns) {
         LOGGER.tracef("Attempt to find path dynamically in resolved modules ...");
-        Set<XBundle> resolved = bundleManager.getBundles(Bundle.RESOLVED | Bundle.ACTIVE);
+        Set<XBundle> resolved = bundleManager.getBundles(BundleIndex.WIRED_STATES);
         LOGGER.tracef("Resolved modules: %d", resolved.size());
         if (LOGGER.isTraceEnabled()) {
             for (Bundle bundle : resolved)
@@ -272,10 +326,22 @@ final class FallbackLoader implements LocalLoader {
         return null;
     }
 
-    private Module findInUnresolvedModules(String resName, List<XPackageRequirement> matchingPatterns) {
+    private Module findInUnresolvedModules(String resName, String packageName, List<XPackageRequirement> matchingPatterns) {
         LOGGER.tracef("Attempt to find path dynamically in unresolved modules ...");
-        Set<XBundle> unresolved = bundleManager.getBundles(Bundle.INSTALLED);
+
+        // Only unresolved bundles that export the package can provide it
+        Set<XBundle> unresolved = new HashSet<XBundle>();
+        BundleIndex bundleIndex = bundleManager.getBundleIndex();
+        for (XBundleRevision brev : bundleIndex.getExporters(packageName)) {
+            XBundle bundle = brev.getBundle();
+            if (bundle.getState() == Bundle.INSTALLED && brev == bundle.getBundleRevision()) {
+                unresolved.add(bundle);
+            }
+        }
         LOGGER.tracef("Unresolved modules: %d", unresolved.size());
+        if (unresolved.isEmpty())
+            return null;
+
         if (LOGGER.isTraceEnabled()) {
             for (Bundle bundle : unresolved)
                 LOGGER.tracef("   %s", bundle);
@@ -288,7 +354,7 @@ final class FallbackLoader implements LocalLoader {
             LOGGER.tracef("Attempt to resolve: %s", bundle);
             AbstractBundleState.assertBundleState(bundle).ensureResolved(false);
         }
-        return findInResolvedModules(resName, matchingPatterns);
+        return findInExportingModules(resName, packageName, matchingPatterns);
     }
 
     private Module findInFrameworkModule(String resName, List<XPackageRequirement> matchingPatterns) {
@@ -347,14 +413,31 @@ final class FallbackLoader implements LocalLoader {
         return result;
     }
 
-    private List<XPackageRequirement> getDynamicPackageRequirements(BundleRevision brev) {
-        List<XPackageRequirement> result = new ArrayList<XPackageRequirement>();
-        for (Requirement aux : brev.getRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
-            XRequirement xreq = (XRequirement) aux;
-            XPackageRequirement preq = xreq.adapt(XPackageRequirement.class);
-            if (preq.isDynamic()) {
-                result.add(preq);
+    private List<XPackageRequirement> getDynamicPackageRequirements() {
+        // The requirements of a revision do not change, compute them once
+        List<XPackageRequirement> result = dynamicRequirements;
+        if (result == null) {
+            result = new ArrayList<XPackageRequirement>();
+            for (Requirement aux : hostRev.getRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
+                XRequirement xreq = (XRequirement) aux;
+                XPackageRequirement preq = xreq.adapt(XPackageRequirement.class);
+                if (preq.isDynamic()) {
+                    result.add(preq);
+                }
+            }
+            dynamicRequirements = result = Collections.unmodifiableList(result);
+        }
+        return result;
+    }
+
+    private Set<String> getExportedPaths() {
+        Set<String> result = exportedPaths;
+        if (result == null) {
+            result = new HashSet<String>();
+            for (XPackageCapability packageCap : getPackageCapabilities(hostRev)) {
+                result.add(packageCap.getPackageName().replace('.', '/'));
             }
+            exportedPaths = result = Collections.unmodifiableSet(result);
         }
         return result;
     }
@@ -0,0 +1,138 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * A bounded cache of {@link CompiledFilter}s keyed by the filter string.
+ *
+ * Lookups do not lock. When the cache is full, an approximation of the least recently used filter is evicted:
+ * every hit marks its entry, the eviction scan clears the marks and removes the first unmarked entry.
+ *
+ * @since 18-Oct-2026
+ */
+final class FilterCache {
+
+    /** The default maximum number of cached filters */
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+    private final ConcurrentMap<String, CacheEntry> filters = new ConcurrentHashMap<String, CacheEntry>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    FilterCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the compiled filter for the given filter string
+     *
+     * @throws InvalidSyntaxException if the filter string is invalid
+     */
+    CompiledFilter getFilter(String filterStr) throws InvalidSyntaxException {
+        assert filterStr != null : "Null filterStr";
+
+        CacheEntry entry = filters.get(filterStr);
+        if (entry != null) {
+            // Only write the mark if it is not set already
+            if (entry.accessed == false)
+                entry.accessed = true;
+            hits.incrementAndGet();
+            return entry.filter;
+        }
+
+        // Compile outside of the map, invalid filters are not cached
+        misses.incrementAndGet();
+        CompiledFilter filter = CompiledFilter.compile(filterStr);
+        if (maxSize > 0) {
+            CacheEntry other = filters.putIfAbsent(filterStr, new CacheEntry(filter));
+            if (other != null)
+                return other.filter;
+            if (filters.size() > maxSize)
+                evict(filterStr);
+        }
+        return filter;
+    }
+
+    private void evict(String addedKey) {
+        while (filters.size() > maxSize) {
+            boolean removed = false;
+            Iterator<Map.Entry<String, CacheEntry>> iterator = filters.entrySet().iterator();
+            while (removed == false && iterator.hasNext()) {
+                Map.Entry<String, CacheEntry> mapEntry = iterator.next();
+                CacheEntry entry = mapEntry.getValue();
+                if (mapEntry.getKey().equals(addedKey)) {
+                    continue;
+                } else if (entry.accessed) {
+                    // Second chance for recently used filters
+                    entry.accessed = false;
+                } else {
+                    removed = filters.remove(mapEntry.getKey(), entry);
+                }
+            }
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getSize() {
+        return filters.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    void clear() {
+        filters.clear();
+    }
+
+    private static final class CacheEntry {
+
+        private final CompiledFilter filter;
+        private volatile boolean accessed;
+
+        CacheEntry(CompiledFilter filter) {
+            this.filter = filter;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FilterCache[size=" + getSize() + ",max=" + maxSize + ",hits=" + getHitCount() + ",misses=" + getMissCount() + "]";
+    }
+}
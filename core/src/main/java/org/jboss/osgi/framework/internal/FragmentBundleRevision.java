@@ -62,6 +62,7 @@ final class FragmentBundleRevision extends UserBundleRevision {
 
     void refreshRevisionInternal() {
         attachedHosts = null;
+        getLocalizedHeadersCache().invalidate();
     }
 
     Set<HostBundleRevision> getAttachedHosts() {
@@ -93,6 +94,15 @@ final class FragmentBundleRevision extends UserBundleRevision {
 
         hostRev.attachFragment(this);
         attachedHosts.add(hostRev);
+        getLocalizedHeadersCache().invalidate();
+    }
+
+    @Override
+    void invalidateLocalizedHeaders() {
+        super.invalidateLocalizedHeaders();
+        for (HostBundleRevision hostRev : getAttachedHosts()) {
+            hostRev.getLocalizedHeadersCache().invalidate();
+        }
     }
 
     @Override
@@ -30,9 +30,13 @@ import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.BundleInstallPlugin;
 import org.jboss.osgi.framework.IntegrationService;
+import org.jboss.osgi.framework.FrameworkEventsMBean;
+import org.jboss.osgi.framework.LockManagerMBean;
+import org.jboss.osgi.framework.ResolverMBean;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.SystemServicesPlugin;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 /**
@@ -50,6 +54,10 @@ final class FrameworkCoreServices extends AbstractPluginService<FrameworkCoreSer
     private final InjectedValue<StartLevelPlugin> injectedStartLevel = new InjectedValue<StartLevelPlugin>();
     private final InjectedValue<BundleContext> injectedSystemContext = new InjectedValue<BundleContext>();
     private final InjectedValue<SystemServicesPlugin> injectedSystemServices = new InjectedValue<SystemServicesPlugin>();
+    private final InjectedValue<LockManagerPlugin> injectedLockManager = new InjectedValue<LockManagerPlugin>();
+    private ServiceRegistration lockManagerRegistration;
+    private ServiceRegistration frameworkEventsRegistration;
+    private ServiceRegistration resolverRegistration;
 
     static void addService(ServiceTarget serviceTarget) {
         FrameworkCoreServices service = new FrameworkCoreServices();
@@ -61,6 +69,7 @@ final class FrameworkCoreServices extends AbstractPluginService<FrameworkCoreSer
         builder.addDependency(Services.START_LEVEL, StartLevelPlugin.class, service.injectedStartLevel);
         builder.addDependency(InternalServices.SYSTEM_CONTEXT, BundleContext.class, service.injectedSystemContext);
         builder.addDependency(IntegrationService.SYSTEM_SERVICES_PLUGIN, SystemServicesPlugin.class, service.injectedSystemServices);
+        builder.addDependency(InternalServices.LOCK_MANAGER_PLUGIN, LockManagerPlugin.class, service.injectedLockManager);
         builder.addDependencies(InternalServices.URL_HANDLER_PLUGIN);
         builder.setInitialMode(Mode.ON_DEMAND);
         builder.install();
@@ -75,12 +84,21 @@ final class FrameworkCoreServices extends AbstractPluginService<FrameworkCoreSer
         BundleContext systemContext = injectedSystemContext.getValue();
         SystemServicesPlugin systemServices = injectedSystemServices.getValue();
         systemServices.registerSystemServices(systemContext);
+        LockManagerPlugin lockManager = injectedLockManager.getValue();
+        lockManagerRegistration = systemContext.registerService(LockManagerMBean.class.getName(), lockManager, null);
+        FrameworkEventsPlugin eventsPlugin = getFrameworkState().getFrameworkEventsPlugin();
+        frameworkEventsRegistration = systemContext.registerService(FrameworkEventsMBean.class.getName(), eventsPlugin, null);
+        ResolverPlugin resolverPlugin = getFrameworkState().getResolverPlugin();
+        resolverRegistration = systemContext.registerService(ResolverMBean.class.getName(), resolverPlugin, null);
         getFrameworkState().injectedCoreServices.inject(this);
     }
 
     @Override
     public void stop(StopContext context) {
         super.stop(context);
+        lockManagerRegistration.unregister();
+        frameworkEventsRegistration.unregister();
+        resolverRegistration.unregister();
         getFrameworkState().injectedCoreServices.uninject();
     }
 
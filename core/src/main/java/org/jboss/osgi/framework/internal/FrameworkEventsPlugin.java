@@ -21,8 +21,12 @@ package org.jboss.osgi.framework.internal;
  * #L%
  */
 
+import static org.jboss.osgi.framework.Constants.PROPERTY_EVENT_MAX_PENDING;
+import static org.jboss.osgi.framework.Constants.PROPERTY_EVENT_MAX_THREADS;
+import static org.jboss.osgi.framework.Constants.PROPERTY_EVENT_OVERFLOW_POLICY;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 
+import java.lang.management.ManagementFactory;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.util.ArrayList;
@@ -32,14 +36,19 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceTarget;
@@ -47,7 +56,9 @@ import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.FrameworkEventsMBean;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.EventDeliveryEngine.OverflowPolicy;
 import org.jboss.osgi.framework.util.NoFilter;
 import org.jboss.osgi.framework.util.RemoveOnlyCollection;
 import org.jboss.osgi.resolver.XBundle;
@@ -61,7 +72,6 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
@@ -78,7 +88,9 @@ import org.osgi.framework.hooks.service.ListenerHook.ListenerInfo;
  * @author thomas.diesler@jboss.com
  * @since 18-Aug-2009
  */
-final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsPlugin> {
+final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsPlugin> implements FrameworkEventsMBean {
+
+    private static final AtomicInteger instanceCount = new AtomicInteger();
 
     private final InjectedValue<BundleManagerPlugin> injectedBundleManager = new InjectedValue<BundleManagerPlugin>();
     private final InjectedValue<BundleContext> injectedSystemContext = new InjectedValue<BundleContext>();
@@ -90,14 +102,22 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
     private final Map<AbstractBundleState, List<FrameworkListener>> frameworkListeners = new ConcurrentHashMap<AbstractBundleState, List<FrameworkListener>>();
     /** The service listeners */
     private final Map<AbstractBundleState, List<ServiceListenerRegistration>> serviceListeners = new ConcurrentHashMap<AbstractBundleState, List<ServiceListenerRegistration>>();
+    /** The service listeners indexed by objectClass */
+    private final ServiceListenerIndex serviceListenerIndex = new ServiceListenerIndex();
+
+    /** The service event dispatch counters */
+    private final AtomicLong serviceEventCount = new AtomicLong();
+    private final AtomicLong serviceListenersEvaluated = new AtomicLong();
+    private final AtomicLong serviceListenersDelivered = new AtomicLong();
 
     /** The set of bundleState events that are delivered to an (asynchronous) BundleListener */
     private Set<Integer> asyncBundleEvents = new HashSet<Integer>();
     /** The set of events that are logged at INFO level */
     private Set<String> infoEvents = new HashSet<String>();
 
-    private final ExecutorService bundleEventExecutor;
-    private final ExecutorService frameworkEventExecutor;
+    /** The engine that delivers asynchronous bundle and framework events */
+    private EventDeliveryEngine deliveryEngine;
+    private ObjectName objectName;
 
     static void addService(ServiceTarget serviceTarget) {
         FrameworkEventsPlugin service = new FrameworkEventsPlugin();
@@ -125,37 +145,45 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
         infoEvents.add(ConstantsHelper.bundleEvent(BundleEvent.STARTED));
         infoEvents.add(ConstantsHelper.bundleEvent(BundleEvent.STOPPED));
         infoEvents.add(ConstantsHelper.bundleEvent(BundleEvent.UNINSTALLED));
-
-        bundleEventExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable run) {
-                Thread thread = new Thread(run);
-                thread.setName("OSGi BundleEvent Thread");
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
-        frameworkEventExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable run) {
-                Thread thread = new Thread(run);
-                thread.setName("OSGi FrameworkEvent Thread");
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
     }
 
     @Override
     public void start(StartContext context) throws StartException {
         super.start(context);
+        BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
+        Object maxThreads = bundleManager.getProperty(PROPERTY_EVENT_MAX_THREADS);
+        Object maxPending = bundleManager.getProperty(PROPERTY_EVENT_MAX_PENDING);
+        Object policy = bundleManager.getProperty(PROPERTY_EVENT_OVERFLOW_POLICY);
+        int threads = maxThreads != null ? new Integer("" + maxThreads) : EventDeliveryEngine.DEFAULT_MAX_THREADS;
+        int pending = maxPending != null ? new Integer("" + maxPending) : EventDeliveryEngine.DEFAULT_MAX_PENDING;
+        OverflowPolicy overflowPolicy = policy != null ? OverflowPolicy.valueOf(("" + policy).toUpperCase(Locale.ENGLISH)) : OverflowPolicy.BLOCK;
+        deliveryEngine = new EventDeliveryEngine("OSGi Event", threads, pending, overflowPolicy);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME_PREFIX + ",id=" + instanceCount.incrementAndGet());
+            server.registerMBean(new StandardMBean(this, FrameworkEventsMBean.class), objectName);
+        } catch (Exception ex) {
+            LOGGER.warnCannotRegisterMBean(ex, objectName);
+            objectName = null;
+        }
     }
 
     @Override
     public void stop(StopContext context) {
         super.stop(context);
+        if (objectName != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(objectName);
+            } catch (Exception ex) {
+                LOGGER.debugf(ex, "Cannot unregister MBean: %s", objectName);
+            }
+            objectName = null;
+        }
+        deliveryEngine.shutdown();
         bundleListeners.clear();
         serviceListeners.clear();
+        serviceListenerIndex.clear();
         frameworkListeners.clear();
     }
 
@@ -174,6 +202,7 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             }
             if (listeners.contains(listener) == false)
                 listeners.add(listener);
+            deliveryEngine.addListener(listener);
         }
     }
 
@@ -187,12 +216,17 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                 else
                     removeBundleListeners(bundleState);
             }
+            deliveryEngine.removeListener(listener);
         }
     }
 
     void removeBundleListeners(final AbstractBundleState bundleState) {
         synchronized (bundleListeners) {
-            bundleListeners.remove(bundleState);
+            List<BundleListener> listeners = bundleListeners.remove(bundleState);
+            if (listeners != null) {
+                for (BundleListener listener : listeners)
+                    deliveryEngine.removeListener(listener);
+            }
         }
     }
 
@@ -206,6 +240,7 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             }
             if (listeners.contains(listener) == false)
                 listeners.add(listener);
+            deliveryEngine.addListener(listener);
         }
     }
 
@@ -219,12 +254,17 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                 else
                     removeFrameworkListeners(bundleState);
             }
+            deliveryEngine.removeListener(listener);
         }
     }
 
     void removeFrameworkListeners(final AbstractBundleState bundleState) {
         synchronized (frameworkListeners) {
-            frameworkListeners.remove(bundleState);
+            List<FrameworkListener> listeners = frameworkListeners.remove(bundleState);
+            if (listeners != null) {
+                for (FrameworkListener listener : listeners)
+                    deliveryEngine.removeListener(listener);
+            }
         }
     }
 
@@ -242,7 +282,8 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             removeServiceListener(bundleState, listener);
 
             // Create the new listener registration
-            Filter filter = (filterstr != null ? FrameworkUtil.createFilter(filterstr) : NoFilter.INSTANCE);
+            FilterCache filterCache = injectedBundleManager.getValue().getFilterCache();
+            Filter filter = (filterstr != null ? filterCache.getFilter(filterstr) : NoFilter.INSTANCE);
             ServiceListenerRegistration slreg = new ServiceListenerRegistration(bundleState, listener, filter);
 
             // The {@link ListenerHook} added method is called to provide the hook implementation with information on newly
@@ -258,6 +299,7 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
 
             // Add the listener to the list
             listeners.add(slreg);
+            serviceListenerIndex.addListener(slreg);
         }
     }
 
@@ -283,6 +325,7 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                 int index = listeners.indexOf(slreg);
                 if (index >= 0) {
                     slreg = listeners.remove(index);
+                    serviceListenerIndex.removeListener(slreg);
 
                     // The {@link ListenerHook} 'removed' method is called to provide the hook implementation with information
                     // on newly removed service listeners.
@@ -304,7 +347,11 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
     void removeServiceListeners(final AbstractBundleState bundleState) {
         synchronized (serviceListeners) {
             Collection<ListenerInfo> listenerInfos = getServiceListenerInfos(bundleState);
-            serviceListeners.remove(bundleState);
+            List<ServiceListenerRegistration> listeners = serviceListeners.remove(bundleState);
+            if (listeners != null) {
+                for (ServiceListenerRegistration slreg : listeners)
+                    serviceListenerIndex.removeListener(slreg);
+            }
 
             // The {@link ListenerHook} 'removed' method is called to provide the hook implementation with information on newly
             // removed service listeners.
@@ -383,25 +430,27 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             }
         }
 
-        Runnable runnable = new Runnable() {
-            public void run() {
-                // BundleListeners are called with a BundleEvent object when a bundleState has been
-                // installed, resolved, started, stopped, updated, unresolved, or uninstalled
-                if (asyncBundleEvents.contains(type)) {
-                    for (BundleListener listener : listeners) {
-                        try {
-                            if (listener instanceof SynchronousBundleListener == false)
-                                listener.bundleChanged(event);
-                        } catch (Throwable th) {
-                            LOGGER.warnErrorWhileFiringBundleEvent(th, typeName, bundleState);
-                        }
+        // BundleListeners are called with a BundleEvent object when a bundleState has been
+        // installed, resolved, started, stopped, updated, unresolved, or uninstalled
+        if (asyncBundleEvents.contains(type) == false)
+            return;
+
+        // Fire the event in a runnable, which is ordered per listener
+        for (final BundleListener listener : listeners) {
+            if (listener instanceof SynchronousBundleListener)
+                continue;
+
+            Runnable runnable = new Runnable() {
+                public void run() {
+                    try {
+                        listener.bundleChanged(event);
+                    } catch (Throwable th) {
+                        LOGGER.warnErrorWhileFiringBundleEvent(th, typeName, bundleState);
                     }
                 }
-            }
-        };
-
-        // Fire the event in a runnable
-        bundleEventExecutor.execute(runnable);
+            };
+            deliveryEngine.deliver(listener, runnable, event);
+        }
     }
 
     void fireFrameworkEvent(final Bundle bundle, final int type, final Throwable th) {
@@ -443,10 +492,10 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
         if (listeners.isEmpty())
             return;
 
-        Runnable runnable = new Runnable() {
-            public void run() {
-                // Call the listeners
-                for (FrameworkListener listener : listeners) {
+        // Fire the event in a runnable, which is ordered per listener
+        for (final FrameworkListener listener : listeners) {
+            Runnable runnable = new Runnable() {
+                public void run() {
                     try {
                         listener.frameworkEvent(event);
                     } catch (RuntimeException ex) {
@@ -462,11 +511,9 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                         LOGGER.warnErrorWhileFiringEvent(th, typeName);
                     }
                 }
-            }
-        };
-
-        // Fire the event in a runnable
-        frameworkEventExecutor.execute(runnable);
+            };
+            deliveryEngine.deliver(listener, runnable, event);
+        }
     }
 
     void fireServiceEvent(final XBundle bundleState, int type, final ServiceState serviceState) {
@@ -480,17 +527,14 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
         LockManagerPlugin lockManager = injectedLockManager.getValue();
         lockManager.assertNotHeldByCurrentThread();
 
-        // Get a snapshot of the current listeners
-        List<ServiceListenerRegistration> listenerRegs = new ArrayList<ServiceListenerRegistration>();
-        synchronized (serviceListeners) {
-            for (Entry<AbstractBundleState, List<ServiceListenerRegistration>> entry : serviceListeners.entrySet()) {
-                for (ServiceListenerRegistration listener : entry.getValue()) {
-                    BundleContext context = listener.getBundleContext();
-                    if (context != null)
-                        listenerRegs.add(listener);
-                }
-            }
+        // Get the listeners that may be interested in the service's object classes
+        List<ServiceListenerRegistration> listenerRegs = serviceListenerIndex.getCandidates(serviceState.getClassNames());
+        Iterator<ServiceListenerRegistration> itlist = listenerRegs.iterator();
+        while (itlist.hasNext()) {
+            if (itlist.next().getBundleContext() == null)
+                itlist.remove();
         }
+        serviceEventCount.incrementAndGet();
 
         // Expose the wrapper not the state itself
         ServiceEvent event = new ServiceEventImpl(type, serviceState);
@@ -506,6 +550,8 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             return;
 
         // Call the listeners. All service events are synchronously delivered
+        int evaluated = 0;
+        int delivered = 0;
         for (ServiceListenerRegistration listenerReg : listenerRegs) {
 
             // Service events must only be delivered to event listeners which can validly cast the event
@@ -524,8 +570,10 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             }
 
             try {
+                evaluated++;
                 String filterstr = listenerReg.filter.toString();
                 if (listenerReg.filter.match(serviceState)) {
+                    delivered++;
                     listenerReg.listener.serviceChanged(event);
                 }
 
@@ -535,6 +583,7 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                 // not match the modified service properties.
                 else if (filterstr != null && ServiceEvent.MODIFIED == event.getType()) {
                     if (listenerReg.filter.match(serviceState.getPreviousProperties())) {
+                        delivered++;
                         event = new ServiceEventImpl(ServiceEvent.MODIFIED_ENDMATCH, serviceState);
                         listenerReg.listener.serviceChanged(event);
                     }
@@ -543,6 +592,69 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
                 LOGGER.warnErrorWhileFiringServiceEvent(th, typeName, serviceState);
             }
         }
+        serviceListenersEvaluated.addAndGet(evaluated);
+        serviceListenersDelivered.addAndGet(delivered);
+        LOGGER.tracef("Service %s evaluated %d and delivered to %d listeners", typeName, evaluated, delivered);
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getServiceEventCount() {
+        return serviceEventCount.get();
+    }
+
+    @Override
+    public long getServiceListenersEvaluated() {
+        return serviceListenersEvaluated.get();
+    }
+
+    @Override
+    public long getServiceListenersDelivered() {
+        return serviceListenersDelivered.get();
+    }
+
+    @Override
+    public int getIndexedClassCount() {
+        return serviceListenerIndex.getIndexedClassCount();
+    }
+
+    @Override
+    public int getResidualListenerCount() {
+        return serviceListenerIndex.getResidualCount();
+    }
+
+    @Override
+    public int getAsyncPendingCount() {
+        return deliveryEngine.getPendingCount();
+    }
+
+    @Override
+    public long getAsyncDeliveredCount() {
+        return deliveryEngine.getDeliveredCount();
+    }
+
+    @Override
+    public long getAsyncDiscardedCount() {
+        return deliveryEngine.getDiscardedCount();
+    }
+
+    @Override
+    public String[] getListenerStatistics() {
+        List<String> result = new ArrayList<String>();
+        for (EventDeliveryEngine.ListenerStatistics stats : deliveryEngine.getListenerStatistics()) {
+            result.add(stats.toString());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public void resetStatistics() {
+        serviceEventCount.set(0);
+        serviceListenersEvaluated.set(0);
+        serviceListenersDelivered.set(0);
     }
 
     private List<ServiceListenerRegistration> processEventHooks(BundleContext systemContext, List<ServiceListenerRegistration> listeners, final ServiceEvent event) {
@@ -626,6 +738,10 @@ final class FrameworkEventsPlugin extends AbstractPluginService<FrameworkEventsP
             return bundleState;
         }
 
+        Filter getFilter() {
+            return filter;
+        }
+
         BundleContext getBundleContext() {
             return bundleState.getBundleContext();
         }
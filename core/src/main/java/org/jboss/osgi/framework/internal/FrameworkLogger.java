@@ -204,4 +204,32 @@ public interface FrameworkLogger extends BasicLogger {
     @LogMessage(level = ERROR)
     @Message(id = 11037, value = "Cannot install initial bundle: %s")
     void errorStateCannotInstallInitialBundle(@Cause Throwable cause, String source);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11038, value = "%s queue full, discarding %s for: %s")
+    void warnEventDeliveryDiscarded(String engine, Object event, Object listener);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11039, value = "Cannot acquire %s for %s after %d ms, current holders: %s")
+    void warnCannotAquireLock(String lockName, Object operation, long waitMillis, Object holders);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11040, value = "Cannot register MBean: %s")
+    void warnCannotRegisterMBean(@Cause Throwable cause, Object objectName);
+
+    @LogMessage(level = INFO)
+    @Message(id = 11042, value = "Restored %d persistent bundles with parallelism %d (deployments: %d ms, install: %d ms)")
+    void infoRestoredPersistentBundles(int count, int parallelism, long deploymentMillis, long installMillis);
+
+    @LogMessage(level = INFO)
+    @Message(id = 11043, value = "Restored %d storage states with parallelism %d (scan: %d ms, parse: %d ms)")
+    void infoRestoredStorageStates(int count, int parallelism, long scanMillis, long parseMillis);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11044, value = "Discarding %d bytes of incomplete records at the end of storage journal: %s")
+    void warnDiscardingStorageJournalRecords(long length, File journalFile);
+
+    @LogMessage(level = WARN)
+    @Message(id = 11045, value = "Batch install stopped waiting after %d ms, the bundle continues to install: %s")
+    void warnBatchInstallPending(long timeout, String location);
 }
@@ -301,4 +301,16 @@ public interface FrameworkMessages {
 
     @Message(id = 11281, value = "Framework lock held by current thread")
     IllegalStateException frameworkLockHeldByCurrentThread(@Cause Throwable cause);
+
+    @Message(id = 11282, value = "Cannot upgrade a shared framework lock to an exclusive framework lock")
+    IllegalStateException cannotUpgradeFrameworkLock();
+
+    @Message(id = 11283, value = "Deadlock detected while waiting for %s: %s")
+    TimeoutException frameworkLockDeadlockDetected(String lockName, String threads);
+
+    @Message(id = 11284, value = "Cannot obtain URL for %s in: %s")
+    IllegalStateException illegalStateCannotObtainEntryURL(@Cause Throwable cause, String entryName, File jarFile);
+
+    @Message(id = 11285, value = "Cannot read storage journal with unknown format: %s")
+    IOException cannotReadStorageJournal(File journalFile);
 }
@@ -93,6 +93,15 @@ final class HostBundleRevision extends UserBundleRevision {
             attachedFragments = new TreeSet<FragmentBundleRevision>(comp);
         }
         attachedFragments.add(fragRev);
+        getLocalizedHeadersCache().invalidate();
+    }
+
+    @Override
+    void invalidateLocalizedHeaders() {
+        super.invalidateLocalizedHeaders();
+        for (FragmentBundleRevision fragRev : getAttachedFragments()) {
+            fragRev.getLocalizedHeadersCache().invalidate();
+        }
     }
 
     Set<FragmentBundleRevision> getAttachedFragments() {
@@ -23,8 +23,12 @@ package org.jboss.osgi.framework.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -32,56 +36,103 @@ import java.util.zip.ZipFile;
 /**
  * A utility class which maintains the set of JDK paths.
  *
+ * The set is computed once per VM, either by scanning the class path or from a {@link JDKPathsCache}.
+ *
  * @author david.lloyd@redhat.com
  * @author thomas.diesler@jboss.com
  * @since 27-Jul-2011
  */
 final class JDKPaths {
-    static final Set<String> JDK;
 
-    static {
-        final Set<String> pathSet = new HashSet<String>(1024);
-        final Set<String> jarSet = new HashSet<String>(1024);
+    private static volatile Set<String> jdkPaths;
+
+    private JDKPaths() {
+    }
+
+    /**
+     * Get the JDK paths, scanning the class path if they have not been computed yet.
+     */
+    static Set<String> getJDKPaths() {
+        Set<String> result = jdkPaths;
+        if (result == null) {
+            synchronized (JDKPaths.class) {
+                result = jdkPaths;
+                if (result == null) {
+                    result = setJDKPaths(scanClassPathItems(getClassPathItems()));
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean isComputed() {
+        return jdkPaths != null;
+    }
+
+    static synchronized Set<String> setJDKPaths(Set<String> paths) {
+        if (jdkPaths == null) {
+            jdkPaths = Collections.unmodifiableSet(paths);
+        }
+        return jdkPaths;
+    }
+
+    /**
+     * Get the distinct items on the boot class path and the application class path.
+     */
+    static List<File> getClassPathItems() {
+        final Set<String> itemSet = new LinkedHashSet<String>();
         final String sunBootClassPath = SecurityActions.getSystemProperty("sun.boot.class.path", null);
         final String javaClassPath = SecurityActions.getSystemProperty("java.class.path", null);
-        processClassPathItem(sunBootClassPath, jarSet, pathSet);
-        processClassPathItem(javaClassPath, jarSet, pathSet);
-        JDK = pathSet;
+        addClassPathItems(sunBootClassPath, itemSet);
+        addClassPathItems(javaClassPath, itemSet);
+        List<File> result = new ArrayList<File>(itemSet.size());
+        for (String item : itemSet) {
+            result.add(new File(item));
+        }
+        return result;
     }
 
-    private JDKPaths() {
+    static Set<String> scanClassPathItems(final List<File> items) {
+        final Set<String> pathSet = new HashSet<String>(1024);
+        for (File file : items) {
+            processClassPathItem(file, pathSet);
+        }
+        return pathSet;
     }
 
-    private static void processClassPathItem(final String classPath, final Set<String> jarSet, final Set<String> pathSet) {
+    static void processClassPathItem(final File file, final Set<String> pathSet) {
+        if (file.isDirectory()) {
+            processDirectory0(pathSet, file);
+        } else {
+            try {
+                final ZipFile zipFile = new ZipFile(file);
+                try {
+                    final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        final ZipEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        final int lastSlash = name.lastIndexOf('/');
+                        if (lastSlash != -1) {
+                            pathSet.add(name.substring(0, lastSlash));
+                        }
+                    }
+                } finally {
+                    zipFile.close();
+                }
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private static void addClassPathItems(final String classPath, final Set<String> itemSet) {
         if (classPath == null) return;
         int s = 0, e;
         do {
             e = classPath.indexOf(File.pathSeparatorChar, s);
             String item = e == -1 ? classPath.substring(s) : classPath.substring(s, e);
-            if (! jarSet.contains(item)) {
-                final File file = new File(item);
-                if (file.isDirectory()) {
-                    processDirectory0(pathSet, file);
-                } else {
-                    try {
-                        final ZipFile zipFile = new ZipFile(file);
-                        try {
-                            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                            while (entries.hasMoreElements()) {
-                                final ZipEntry entry = entries.nextElement();
-                                final String name = entry.getName();
-                                final int lastSlash = name.lastIndexOf('/');
-                                if (lastSlash != -1) {
-                                    pathSet.add(name.substring(0, lastSlash));
-                                }
-                            }
-                        } finally {
-                            zipFile.close();
-                        }
-                    } catch (IOException ex) {
-                        // ignore
-                    }
-                }
+            if (item.length() > 0) {
+                itemSet.add(item);
             }
             s = e + 1;
         } while (e != -1);
@@ -0,0 +1,292 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent snapshot of the {@link JDKPaths} next to the framework storage area.
+ *
+ * The snapshot is keyed by the archives on the class path together with their sizes and modification times.
+ * Directory class path items are always scanned, because their modification time does not reflect changes
+ * in nested directories.
+ *
+ * The file format is a magic number and version, the key, the path set and a trailing CRC32 of everything before it.
+ * A snapshot that does not match the current class path, or fails the checksum, is ignored and rewritten.
+ *
+ * @since 18-Oct-2026
+ */
+final class JDKPathsCache {
+
+    static final String CACHE_FILE_NAME = "jdk-paths.cache";
+
+    static final int MAGIC = 0x4A444B50;
+    static final int VERSION = 1;
+
+    private final File cacheFile;
+    private final FutureTask<Set<String>> task;
+
+    JDKPathsCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.task = new FutureTask<Set<String>>(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+                return computePaths();
+            }
+        });
+    }
+
+    File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Populate the paths on a background thread.
+     */
+    void populateInBackground() {
+        if (JDKPaths.isComputed() == false) {
+            Thread thread = new Thread(task, "OSGi JDK Paths Thread");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Get the JDK paths. If a background population is in progress this waits for it,
+     * otherwise the paths are populated in the calling thread.
+     */
+    Set<String> getPaths() {
+        if (JDKPaths.isComputed()) {
+            return JDKPaths.getJDKPaths();
+        }
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return JDKPaths.getJDKPaths();
+        } catch (ExecutionException ex) {
+            LOGGER.debugf(ex.getCause(), "Cannot populate JDK paths from: %s", cacheFile);
+            return JDKPaths.getJDKPaths();
+        }
+    }
+
+    private Set<String> computePaths() {
+        if (cacheFile == null || JDKPaths.isComputed()) {
+            return JDKPaths.getJDKPaths();
+        }
+
+        long start = System.currentTimeMillis();
+        List<File> archives = new ArrayList<File>();
+        List<File> directories = new ArrayList<File>();
+        for (File item : JDKPaths.getClassPathItems()) {
+            if (item.isDirectory()) {
+                directories.add(item);
+            } else if (item.isFile()) {
+                archives.add(item);
+            }
+        }
+        List<Entry> key = createKey(archives);
+
+        Set<String> pathSet = readCacheFile(cacheFile, key);
+        boolean cacheHit = pathSet != null;
+        if (cacheHit == false) {
+            pathSet = JDKPaths.scanClassPathItems(archives);
+            try {
+                writeCacheFile(cacheFile, key, pathSet);
+            } catch (IOException ex) {
+                LOGGER.debugf(ex, "Cannot write JDK paths cache: %s", cacheFile);
+            }
+        }
+        pathSet.addAll(JDKPaths.scanClassPathItems(directories));
+
+        Set<String> result = JDKPaths.setJDKPaths(pathSet);
+        long millis = System.currentTimeMillis() - start;
+        LOGGER.debugf("JDK paths %s from %s in %dms: %d paths", cacheHit ? "loaded" : "computed", cacheFile, millis, result.size());
+        return result;
+    }
+
+    static List<Entry> createKey(List<File> archives) {
+        List<Entry> key = new ArrayList<Entry>(archives.size());
+        for (File file : archives) {
+            key.add(new Entry(file.getAbsolutePath(), file.length(), file.lastModified()));
+        }
+        return key;
+    }
+
+    /**
+     * Read the path set from the given cache file.
+     *
+     * @return the path set or null if the file does not exist, is corrupt or was written for a different key
+     */
+    static Set<String> readCacheFile(File file, List<Entry> key) {
+        if (file == null || file.isFile() == false) {
+            return null;
+        }
+        try {
+            byte[] bytes = readFully(file);
+            if (bytes.length < 8) {
+                return null;
+            }
+            int length = bytes.length - 8;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            int entryCount = input.readInt();
+            if (entryCount != key.size()) {
+                return null;
+            }
+            for (int i = 0; i < entryCount; i++) {
+                Entry entry = new Entry(input.readUTF(), input.readLong(), input.readLong());
+                if (entry.equals(key.get(i)) == false) {
+                    return null;
+                }
+            }
+            int pathCount = input.readInt();
+            if (pathCount < 0 || pathCount > length) {
+                return null;
+            }
+            Set<String> pathSet = new HashSet<String>(Math.max(1024, pathCount * 2));
+            for (int i = 0; i < pathCount; i++) {
+                pathSet.add(input.readUTF());
+            }
+            if (input.available() != 8 || input.readLong() != crc.getValue()) {
+                LOGGER.debugf("Checksum mismatch in JDK paths cache: %s", file);
+                return null;
+            }
+            return pathSet;
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read JDK paths cache: %s", file);
+            return null;
+        }
+    }
+
+    /**
+     * Write the path set to the given cache file. The file is written to a temporary file first and then renamed.
+     */
+    static void writeCacheFile(File file, List<Entry> key, Set<String> pathSet) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 * pathSet.size() + 1024);
+        DataOutputStream output = new DataOutputStream(baos);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(key.size());
+        for (Entry entry : key) {
+            output.writeUTF(entry.path);
+            output.writeLong(entry.length);
+            output.writeLong(entry.lastModified);
+        }
+        output.writeInt(pathSet.size());
+        for (String path : pathSet) {
+            output.writeUTF(path);
+        }
+        output.flush();
+        CRC32 crc = new CRC32();
+        crc.update(baos.toByteArray());
+        output.writeLong(crc.getValue());
+        output.close();
+
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            baos.writeTo(fos);
+        } finally {
+            fos.close();
+        }
+        if (tmpFile.renameTo(file) == false) {
+            file.delete();
+            if (tmpFile.renameTo(file) == false) {
+                tmpFile.delete();
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = input.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of file: " + file);
+                }
+                offset += count;
+            }
+        } finally {
+            input.close();
+        }
+        return bytes;
+    }
+
+    static final class Entry {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        Entry(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry))
+                return false;
+            Entry other = (Entry) obj;
+            return path.equals(other.path) && length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() ^ (int) (length ^ lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return path + "[size=" + length + ",mtime=" + lastModified + "]";
+        }
+    }
+}
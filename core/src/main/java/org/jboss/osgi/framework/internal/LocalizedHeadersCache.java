@@ -0,0 +1,137 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.net.URL;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of the localized manifest headers of a bundle revision keyed by locale.
+ *
+ * The resolved localization entry URLs are cached as well, including the entries that do not exist.
+ * The cache must be invalidated when the set of entries that are visible for localization changes,
+ * which is the case on resolve, refresh, fragment attach and uninstall.
+ *
+ * @since 18-Oct-2026
+ */
+final class LocalizedHeadersCache {
+
+    /** The default maximum number of cached locales */
+    static final int DEFAULT_MAX_SIZE = 16;
+
+    private final int maxSize;
+    private final Map<String, Dictionary<String, String>> headers;
+    private final Map<String, CachedEntry> entries;
+    private int generation;
+
+    @SuppressWarnings("serial")
+    LocalizedHeadersCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.headers = new LinkedHashMap<String, Dictionary<String, String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Dictionary<String, String>> eldest) {
+                return size() > LocalizedHeadersCache.this.maxSize;
+            }
+        };
+        // Every locale resolves to at most a handful of entry paths
+        this.entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                return size() > 4 * LocalizedHeadersCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the generation of this cache, which must be passed back when a computed value is added
+     */
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the cached headers for the given locale key or null
+     */
+    synchronized Dictionary<String, String> getHeaders(String localeKey) {
+        return headers.get(localeKey);
+    }
+
+    /**
+     * Add the headers for the given locale key unless the cache was invalidated since they were computed
+     */
+    synchronized void putHeaders(String localeKey, Dictionary<String, String> value, int computedGeneration) {
+        if (maxSize > 0 && computedGeneration == generation) {
+            headers.put(localeKey, value);
+        }
+    }
+
+    /**
+     * Get the cached localization entry for the given path or null if the path was not looked up yet
+     */
+    synchronized CachedEntry getEntry(String entryPath) {
+        return entries.get(entryPath);
+    }
+
+    /**
+     * Add the localization entry for the given path, which may be null for an entry that does not exist
+     */
+    synchronized void putEntry(String entryPath, URL entryURL, int computedGeneration) {
+        if (maxSize > 0 && computedGeneration == generation) {
+            entries.put(entryPath, new CachedEntry(entryURL));
+        }
+    }
+
+    synchronized void invalidate() {
+        headers.clear();
+        entries.clear();
+        generation++;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized int getSize() {
+        return headers.size();
+    }
+
+    static final class CachedEntry {
+
+        private final URL entryURL;
+
+        private CachedEntry(URL entryURL) {
+            this.entryURL = entryURL;
+        }
+
+        URL getEntryURL() {
+            return entryURL;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocalizedHeadersCache[size=" + getSize() + ",max=" + maxSize + "]";
+    }
+}
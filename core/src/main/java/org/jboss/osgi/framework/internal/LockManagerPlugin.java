@@ -25,24 +25,80 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceTarget;
 import org.jboss.msc.service.ServiceController.Mode;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
+import org.jboss.osgi.framework.LockManagerMBean;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
 
 /**
  * The plugin for framework locks.
- * 
+ *
+ * Operations that affect a known set of bundles (install, uninstall, resolve) take the shared side of the global lock
+ * plus a striped lock per bundle. Stripes are always acquired in ascending order so that two such operations cannot
+ * deadlock each other. Operations that affect the framework as a whole (refresh) take the exclusive side of the global lock.
+ *
+ * While waiting for a lock the current thread periodically walks the wait-for graph of the lock owners. If it finds
+ * itself in a cycle the acquisition fails early instead of waiting for the timeout.
+ *
+ * Lock statistics are always collected per {@link LockMethod} and exposed through the {@link LockManagerMBean}.
+ *
  * @author thomas.diesler@jboss.com
  * @since 15-Aug-2012
  */
-final class LockManagerPlugin extends AbstractPluginService<LockManagerPlugin> {
+final class LockManagerPlugin extends AbstractPluginService<LockManagerPlugin> implements LockManagerMBean {
 
-    private final ReentrantLock frameworkLock = new ReentrantLock();
-    private RuntimeException lastLockAquisition;
+    static final int DEFAULT_LOCK_STRIPES = 64;
+    static final long DEFAULT_LOCK_TIMEOUT = 30;
+
+    private static final long DEADLOCK_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+
+    /**
+     * The operations that acquire framework locks
+     */
+    enum LockMethod {
+        INSTALL, UNINSTALL, RESOLVE, REFRESH
+    }
+
+    private final FrameworkLock globalLock = new FrameworkLock();
+    private final BundleLock[] bundleLocks = new BundleLock[DEFAULT_LOCK_STRIPES];
+    private final ConcurrentMap<Thread, Lock> waitingThreads = new ConcurrentHashMap<Thread, Lock>();
+    // The contexts that hold the shared framework lock, including those that still wait for bundle locks
+    private final Set<LockContext> sharedContexts = Collections.newSetFromMap(new ConcurrentHashMap<LockContext, Boolean>());
+    private final Set<LockContext> activeLocks = Collections.newSetFromMap(new ConcurrentHashMap<LockContext, Boolean>());
+    private final LockStatistics[] statistics = new LockStatistics[LockMethod.values().length];
+    private final ThreadLocal<RuntimeException> lastLockAquisition = new ThreadLocal<RuntimeException>();
+    private ObjectName objectName;
 
     static void addService(ServiceTarget serviceTarget) {
         LockManagerPlugin service = new LockManagerPlugin();
@@ -52,6 +108,39 @@ final class LockManagerPlugin extends AbstractPluginService<LockManagerPlugin> {
     }
 
     private LockManagerPlugin() {
+        for (int i = 0; i < bundleLocks.length; i++) {
+            bundleLocks[i] = new BundleLock(i);
+        }
+        for (LockMethod method : LockMethod.values()) {
+            statistics[method.ordinal()] = new LockStatistics(method.name());
+        }
+    }
+
+    @Override
+    public void start(StartContext context) throws StartException {
+        super.start(context);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME_PREFIX + ",id=" + instanceCount.incrementAndGet());
+            server.registerMBean(new StandardMBean(this, LockManagerMBean.class), objectName);
+        } catch (Exception ex) {
+            LOGGER.warnCannotRegisterMBean(ex, objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        super.stop(context);
+        if (objectName != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(objectName);
+            } catch (Exception ex) {
+                LOGGER.debugf(ex, "Cannot unregister MBean: %s", objectName);
+            }
+            objectName = null;
+        }
     }
 
     @Override
@@ -59,37 +148,442 @@ final class LockManagerPlugin extends AbstractPluginService<LockManagerPlugin> {
         return this;
     }
 
-    ReentrantLock getFrameworkLock() {
-        return frameworkLock;
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Aquire the exclusive framework lock
+     */
+    LockContext aquireFrameworkLock(LockMethod method) throws TimeoutException {
+        return aquireFrameworkLock(method, DEFAULT_LOCK_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Aquire the exclusive framework lock
+     */
+    LockContext aquireFrameworkLock(LockMethod method, long timeout, TimeUnit unit) throws TimeoutException {
+        // A shared hold cannot be upgraded, the thread would wait for itself
+        if (globalLock.getReadHoldCount() > 0 && !globalLock.isWriteLockedByCurrentThread())
+            throw MESSAGES.cannotUpgradeFrameworkLock();
+
+        LOGGER.tracef("Aquire framework lock for: %s", method);
+        LockStatistics stats = statistics[method.ordinal()];
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        stats.acquired();
+        if (lock(globalLock.writeLock(), stats, deadline))
+            stats.contended();
+        if (LOGGER.isDebugEnabled()) {
+            lastLockAquisition.set(new RuntimeException());
+        }
+        LockContext context = new LockContext(method, true);
+        context.aquireTime = System.nanoTime();
+        activeLocks.add(context);
+        return context;
     }
 
-    void aquireFrameworkLock() throws TimeoutException {
-        aquireFrameworkLock(30, TimeUnit.SECONDS);
+    /**
+     * Aquire the locks for the bundles associated with the given resources or bundles
+     */
+    LockContext aquireBundleLock(LockMethod method, Collection<?> items) throws TimeoutException {
+        return aquireBundleLock(method, items, DEFAULT_LOCK_TIMEOUT, TimeUnit.SECONDS);
     }
 
-    void aquireFrameworkLock(long timeout, TimeUnit unit) throws TimeoutException {
+    /**
+     * Aquire the locks for the bundles associated with the given resources or bundles
+     */
+    LockContext aquireBundleLock(LockMethod method, Collection<?> items, long timeout, TimeUnit unit) throws TimeoutException {
+        LOGGER.tracef("Aquire bundle lock for %s: %s", method, items);
+        LockStatistics stats = statistics[method.ordinal()];
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        LockContext context = new LockContext(method, false);
+        boolean success = false;
+        boolean contended = false;
+        stats.acquired();
         try {
-            LOGGER.tracef("Aquire framework lock");
-            if (!frameworkLock.tryLock(timeout, unit)) {
-                throw MESSAGES.cannotAquireFrameworkLock();
+            contended |= lock(globalLock.readLock(), stats, deadline);
+            context.shared = true;
+            sharedContexts.add(context);
+            for (Integer stripe : getStripes(items)) {
+                contended |= lock(bundleLocks[stripe], stats, deadline);
+                context.stripes.add(stripe);
+            }
+            if (LOGGER.isDebugEnabled() && lastLockAquisition.get() == null) {
+                lastLockAquisition.set(new RuntimeException());
+            }
+            context.aquireTime = System.nanoTime();
+            activeLocks.add(context);
+            success = true;
+        } finally {
+            // The context is one acquisition, no matter how many of its locks had to wait
+            if (contended) {
+                stats.contended();
+            }
+            if (success == false) {
+                releaseLock(context);
             }
-            if (LOGGER.isDebugEnabled()) {
-                lastLockAquisition = new RuntimeException();
+        }
+        return context;
+    }
+
+    /**
+     * Extend the given lock context with the locks for the given resources or bundles without waiting.
+     *
+     * @return false if one of the additional locks is currently held by another thread
+     */
+    boolean tryExtendBundleLock(LockContext context, Collection<?> items) {
+        if (context.exclusive)
+            return true;
+        for (Integer stripe : getStripes(items)) {
+            if (context.stripes.contains(stripe) == false) {
+                if (bundleLocks[stripe].tryLock() == false) {
+                    return false;
+                }
+                context.stripes.add(stripe);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release all locks held by the given context
+     */
+    void releaseLock(LockContext context) {
+        LOGGER.tracef("Release %s", context);
+        if (activeLocks.remove(context)) {
+            statistics[context.method.ordinal()].held(System.nanoTime() - context.aquireTime);
+        }
+        for (Integer stripe : context.stripes) {
+            bundleLocks[stripe].unlock();
+        }
+        context.stripes.clear();
+        if (context.shared) {
+            context.shared = false;
+            sharedContexts.remove(context);
+            globalLock.readLock().unlock();
+        }
+        if (context.exclusive) {
+            context.exclusive = false;
+            globalLock.writeLock().unlock();
+        }
+        if (globalLock.getReadHoldCount() == 0 && !globalLock.isWriteLockedByCurrentThread()) {
+            lastLockAquisition.remove();
+        }
+    }
+
+    void assertNotHeldByCurrentThread() {
+        if (globalLock.isWriteLockedByCurrentThread() || globalLock.getReadHoldCount() > 0) {
+            throw MESSAGES.frameworkLockHeldByCurrentThread(lastLockAquisition.get());
+        }
+    }
+
+    @Override
+    public String[] getOperations() {
+        String[] result = new String[statistics.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = statistics[i].getOperation();
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getHoldTimeBuckets() {
+        return LockStatistics.HOLD_TIME_BUCKETS.clone();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result += stats.getAcquireCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long getContendedCount() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result += stats.getContendedCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result += stats.getTimeoutCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long getDeadlockCount() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result += stats.getDeadlockCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long getTotalWaitTime() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result += stats.getTotalWaitTime();
+        }
+        return result;
+    }
+
+    @Override
+    public long getMaxWaitTime() {
+        long result = 0;
+        for (LockStatistics stats : statistics) {
+            result = Math.max(result, stats.getMaxWaitTime());
+        }
+        return result;
+    }
+
+    @Override
+    public long getAcquireCount(String operation) {
+        return getStatistics(operation).getAcquireCount();
+    }
+
+    @Override
+    public long getTotalWaitTime(String operation) {
+        return getStatistics(operation).getTotalWaitTime();
+    }
+
+    @Override
+    public long getMaxWaitTime(String operation) {
+        return getStatistics(operation).getMaxWaitTime();
+    }
+
+    @Override
+    public long[] getHoldTimeHistogram(String operation) {
+        return getStatistics(operation).getHoldTimeHistogram();
+    }
+
+    @Override
+    public String getExclusiveHolder() {
+        for (LockContext context : activeLocks) {
+            if (context.exclusive) {
+                return context.getHolderInfo();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String[] getCurrentHolders() {
+        List<String> result = new ArrayList<String>();
+        for (LockContext context : activeLocks) {
+            result.add(context.getHolderInfo());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String[] getWaitingThreads() {
+        List<String> result = new ArrayList<String>();
+        for (Entry<Thread, Lock> entry : waitingThreads.entrySet()) {
+            result.add("[" + entry.getKey().getName() + "] waits for " + getLockName(entry.getValue()));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (LockStatistics stats : statistics) {
+            stats.reset();
+        }
+    }
+
+    private LockStatistics getStatistics(String operation) {
+        return statistics[LockMethod.valueOf(operation.toUpperCase()).ordinal()];
+    }
+
+    /**
+     * Lock the given lock before the deadline
+     *
+     * @return true if the thread had to wait for the lock
+     */
+    private boolean lock(Lock lock, LockStatistics stats, long deadline) throws TimeoutException {
+        if (lock.tryLock())
+            return false;
+
+        long start = System.nanoTime();
+        waitingThreads.put(Thread.currentThread(), lock);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    stats.timedOut();
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    LOGGER.warnCannotAquireLock(getLockName(lock), stats.getOperation(), waitMillis, Arrays.asList(getCurrentHolders()));
+                    throw MESSAGES.cannotAquireFrameworkLock();
+                }
+                if (lock.tryLock(Math.min(remaining, DEADLOCK_CHECK_INTERVAL), TimeUnit.NANOSECONDS))
+                    return true;
+
+                String deadlock = detectDeadlock(lock);
+                if (deadlock != null) {
+                    stats.deadlocked();
+                    throw MESSAGES.frameworkLockDeadlockDetected(getLockName(lock), deadlock);
+                }
             }
         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw MESSAGES.cannotAquireFrameworkLock();
+        } finally {
+            waitingThreads.remove(Thread.currentThread());
+            stats.waited(System.nanoTime() - start);
         }
     }
 
-    void releaseFrameworkLock() {
-        LOGGER.tracef("Release framework lock");
-        lastLockAquisition = null;
-        frameworkLock.unlock();
+    /**
+     * Follow the chain of owner -> lock the owner waits for, starting at the given lock.
+     *
+     * @return a description of the cycle if the chain leads back to the current thread, otherwise null
+     */
+    private String detectDeadlock(Lock lock) {
+        return detectDeadlock(lock, new HashSet<Thread>(), "");
     }
 
-    void assertNotHeldByCurrentThread() {
-        if (frameworkLock.isHeldByCurrentThread()) {
-            throw MESSAGES.frameworkLockHeldByCurrentThread(lastLockAquisition);
+    private String detectDeadlock(Lock lock, Set<Thread> visited, String path) {
+        for (Thread owner : getOwners(lock)) {
+            String step = (path.length() > 0 ? path + ", " : "") + "[" + owner.getName() + "] holds " + getLockName(lock);
+            if (owner == Thread.currentThread())
+                return step;
+
+            if (visited.add(owner) == false)
+                continue;
+
+            Lock next = waitingThreads.get(owner);
+            if (next != null) {
+                String result = detectDeadlock(next, visited, step);
+                if (result != null)
+                    return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the threads that hold the given lock. An exclusive request is blocked by the exclusive owner and all shared holders,
+     * a shared request only by the exclusive owner.
+     */
+    private Set<Thread> getOwners(Lock lock) {
+        Set<Thread> result = new LinkedHashSet<Thread>();
+        if (lock instanceof BundleLock) {
+            Thread owner = ((BundleLock) lock).getOwnerThread();
+            if (owner != null)
+                result.add(owner);
+        } else {
+            Thread owner = globalLock.getOwnerThread();
+            if (owner != null)
+                result.add(owner);
+            if (lock == globalLock.writeLock()) {
+                for (LockContext context : sharedContexts) {
+                    result.add(context.thread);
+                }
+            }
+        }
+        return result;
+    }
+
+    private String getLockName(Lock lock) {
+        return lock instanceof BundleLock ? lock.toString() : "framework lock";
+    }
+
+    private SortedSet<Integer> getStripes(Collection<?> items) {
+        SortedSet<Integer> stripes = new TreeSet<Integer>();
+        if (items != null) {
+            for (Object item : items) {
+                stripes.add(getStripe(item));
+            }
+        }
+        return stripes;
+    }
+
+    private int getStripe(Object item) {
+        XBundle bundle = null;
+        if (item instanceof XBundle) {
+            bundle = (XBundle) item;
+        } else if (item instanceof XBundleRevision) {
+            bundle = ((XBundleRevision) item).getBundle();
+        }
+        long hash = bundle != null ? bundle.getBundleId() : System.identityHashCode(item) & 0x7fffffff;
+        return (int) (hash % bundleLocks.length);
+    }
+
+    @Override
+    public String toString() {
+        return "LockManager" + Arrays.toString(statistics);
+    }
+
+    @SuppressWarnings("serial")
+    static final class FrameworkLock extends ReentrantReadWriteLock {
+
+        Thread getOwnerThread() {
+            return getOwner();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class BundleLock extends ReentrantLock {
+
+        private final int stripe;
+
+        BundleLock(int stripe) {
+            this.stripe = stripe;
+        }
+
+        Thread getOwnerThread() {
+            return getOwner();
+        }
+
+        @Override
+        public String toString() {
+            return "bundle lock " + stripe;
+        }
+    }
+
+    /**
+     * The locks held by an operation
+     */
+    static final class LockContext {
+
+        private final SortedSet<Integer> stripes = new TreeSet<Integer>();
+        private final LockMethod method;
+        private final Thread thread;
+        private long aquireTime;
+        private boolean exclusive;
+        private boolean shared;
+
+        private LockContext(LockMethod method, boolean exclusive) {
+            this.method = method;
+            this.exclusive = exclusive;
+            this.thread = Thread.currentThread();
+        }
+
+        LockMethod getMethod() {
+            return method;
+        }
+
+        boolean isExclusive() {
+            return exclusive;
+        }
+
+        String getHolderInfo() {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - aquireTime);
+            return "[" + thread.getName() + "] " + method + " holds " + this + " for " + heldMillis + "ms";
+        }
+
+        @Override
+        public String toString() {
+            return exclusive ? "framework lock" : "bundle lock " + stripes;
         }
     }
 }
@@ -0,0 +1,140 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock statistics for one kind of framework operation.
+ *
+ * The counters are plain atomics so that they can stay enabled in production.
+ *
+ * @since 18-Oct-2026
+ */
+final class LockStatistics {
+
+    // Upper bounds of the hold time buckets in milliseconds, the last bucket is unbounded
+    static final long[] HOLD_TIME_BUCKETS = new long[] { 1, 10, 100, 1000, 10000 };
+
+    private final String operation;
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong contendedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong deadlockCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLongArray holdTimes = new AtomicLongArray(HOLD_TIME_BUCKETS.length + 1);
+
+    LockStatistics(String operation) {
+        this.operation = operation;
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    void acquired() {
+        acquireCount.incrementAndGet();
+    }
+
+    void contended() {
+        contendedCount.incrementAndGet();
+    }
+
+    void timedOut() {
+        timeoutCount.incrementAndGet();
+    }
+
+    void deadlocked() {
+        deadlockCount.incrementAndGet();
+    }
+
+    void waited(long nanos) {
+        totalWaitTime.addAndGet(nanos);
+        long max = maxWaitTime.get();
+        while (nanos > max && !maxWaitTime.compareAndSet(max, nanos)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    void held(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < HOLD_TIME_BUCKETS.length && millis >= HOLD_TIME_BUCKETS[bucket]) {
+            bucket++;
+        }
+        holdTimes.incrementAndGet(bucket);
+    }
+
+    long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    long getContendedCount() {
+        return contendedCount.get();
+    }
+
+    long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    long getDeadlockCount() {
+        return deadlockCount.get();
+    }
+
+    long getTotalWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get());
+    }
+
+    long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+    }
+
+    long[] getHoldTimeHistogram() {
+        long[] result = new long[holdTimes.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = holdTimes.get(i);
+        }
+        return result;
+    }
+
+    void reset() {
+        acquireCount.set(0);
+        contendedCount.set(0);
+        timeoutCount.set(0);
+        deadlockCount.set(0);
+        totalWaitTime.set(0);
+        maxWaitTime.set(0);
+        for (int i = 0; i < holdTimes.length(); i++) {
+            holdTimes.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return operation + "[acquired=" + acquireCount + ",contended=" + contendedCount + ",wait=" + getTotalWaitTime() + "ms,maxWait="
+                + getMaxWaitTime() + "ms,timeouts=" + timeoutCount + ",deadlocks=" + deadlockCount + "]";
+    }
+}
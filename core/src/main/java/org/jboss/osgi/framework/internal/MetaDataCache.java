@@ -0,0 +1,173 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * A persistent cache of the bundle manifest headers next to each revision in the bundle storage dir.
+ *
+ * The cache file holds the size and modification time of the stored bundle file, the main attributes of its
+ * manifest and a trailing CRC32. On restart the manifest is rebuilt from the cache file, so that the bundle
+ * file need not be opened to create its deployment.
+ *
+ * @since 18-Oct-2026
+ */
+final class MetaDataCache {
+
+    static final int MAGIC = 0x4F534D44;
+    static final int VERSION = 1;
+
+    private static final String UTF8 = "UTF-8";
+
+    private MetaDataCache() {
+    }
+
+    /**
+     * Get the cache file for the current revision of the given storage state.
+     */
+    static File getCacheFile(StorageState storageState) {
+        return new File(storageState.getStorageDir(), "bundle-metadata-rev-" + storageState.getRevisionId() + ".cache");
+    }
+
+    /**
+     * Read the manifest from the given cache file.
+     *
+     * @return the manifest or null if the cache file does not exist, is corrupt or does not match the bundle file
+     */
+    static Manifest readManifest(File cacheFile, File bundleFile) {
+        if (cacheFile.isFile() == false || bundleFile == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = readFully(cacheFile);
+            if (bytes.length < 8) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            if (input.readLong() != bundleFile.length() || input.readLong() != bundleFile.lastModified()) {
+                return null;
+            }
+            Manifest manifest = new Manifest();
+            Attributes attributes = manifest.getMainAttributes();
+            int count = input.readInt();
+            if (count < 0 || count > bytes.length) {
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                String name = readString(input);
+                attributes.putValue(name, readString(input));
+            }
+            if (input.available() != 8 || input.readLong() != crc.getValue()) {
+                LOGGER.debugf("Checksum mismatch in metadata cache: %s", cacheFile);
+                return null;
+            }
+            return manifest;
+        } catch (IOException ex) {
+            LOGGER.debugf(ex, "Cannot read metadata cache: %s", cacheFile);
+            return null;
+        } catch (IllegalArgumentException ex) {
+            LOGGER.debugf(ex, "Invalid metadata cache: %s", cacheFile);
+            return null;
+        }
+    }
+
+    /**
+     * Write the main attributes of the given manifest to the cache file.
+     */
+    static void writeManifest(File cacheFile, File bundleFile, Manifest manifest) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(2048);
+        DataOutputStream output = new DataOutputStream(baos);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(bundleFile.length());
+        output.writeLong(bundleFile.lastModified());
+        Attributes attributes = manifest.getMainAttributes();
+        output.writeInt(attributes.size());
+        for (Map.Entry<Object, Object> entry : attributes.entrySet()) {
+            writeString(output, entry.getKey().toString());
+            writeString(output, (String) entry.getValue());
+        }
+        output.flush();
+        CRC32 crc = new CRC32();
+        crc.update(baos.toByteArray());
+        output.writeLong(crc.getValue());
+        output.close();
+
+        FileOutputStream fos = new FileOutputStream(cacheFile);
+        try {
+            baos.writeTo(fos);
+        } finally {
+            VFSUtils.safeClose(fos);
+        }
+    }
+
+    // Header values like Export-Package may exceed the 64k limit of writeUTF
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > input.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+}
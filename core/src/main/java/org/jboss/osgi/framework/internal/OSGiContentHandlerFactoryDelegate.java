@@ -24,12 +24,6 @@ package org.jboss.osgi.framework.internal;
 import java.net.ContentHandler;
 import java.net.ContentHandlerFactory;
 import java.net.URLConnection;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.ServiceReference;
 
@@ -45,48 +39,26 @@ import org.osgi.framework.ServiceReference;
 final class OSGiContentHandlerFactoryDelegate implements ContentHandlerFactory {
 
     private ContentHandlerFactory delegate;
-    private ConcurrentMap<String, List<ServiceReference>> contentHandlers = new ConcurrentHashMap<String, List<ServiceReference>>();
+    private final URLHandlerRegistry<ContentHandler> contentHandlers = new URLHandlerRegistry<ContentHandler>();
 
     void setDelegateFactory(OSGiContentHandlerFactory factory) {
         delegate = factory;
     }
 
-    void addHandler(String mimeType, ServiceReference reference) {
-        synchronized (contentHandlers) {
-            contentHandlers.putIfAbsent(mimeType, new ArrayList<ServiceReference>());
-            List<ServiceReference> list = contentHandlers.get(mimeType);
-            synchronized (list) {
-                list.add(reference);
-                Collections.sort(list, Collections.reverseOrder(ServiceReferenceComparator.getInstance()));
-            }
-        }
+    void addHandler(String mimeType, ServiceReference reference, ContentHandler service) {
+        contentHandlers.addHandler(mimeType, reference, service);
     }
 
-    List<ServiceReference> getContentHandlers(String mimetype) {
-        synchronized (contentHandlers) {
-            return contentHandlers.get(mimetype);
-        }
+    URLHandlerRegistry<ContentHandler> getContentHandlers() {
+        return contentHandlers;
     }
 
     void removeHandler(ServiceReference reference) {
-        synchronized (contentHandlers) {
-            for (List<ServiceReference> list : contentHandlers.values()) {
-                for (Iterator<ServiceReference> it = list.iterator(); it.hasNext();) {
-                    if (it.next().equals(reference)) {
-                        it.remove();
-                        break;
-                    }
-                }
-            }
-        }
+        contentHandlers.removeHandler(reference);
     }
 
     void clearHandlers() {
-        synchronized (contentHandlers) {
-            for (List<ServiceReference> list : contentHandlers.values()) {
-                list.clear();
-            }
-        }
+        contentHandlers.clearHandlers();
     }
 
     @Override
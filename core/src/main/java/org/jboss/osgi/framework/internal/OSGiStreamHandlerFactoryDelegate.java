@@ -24,14 +24,9 @@ package org.jboss.osgi.framework.internal;
 import java.net.URL;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.url.URLStreamHandlerService;
 
 /**
  * There can only ever be one URLStreamHandlerFactory active in the system and it can only be set once, using
@@ -43,48 +38,26 @@ import org.osgi.framework.ServiceReference;
 final class OSGiStreamHandlerFactoryDelegate implements URLStreamHandlerFactory {
 
     private URLStreamHandlerFactory delegate;
-    private ConcurrentMap<String, List<ServiceReference>> streamHandlers = new ConcurrentHashMap<String, List<ServiceReference>>();
+    private final URLHandlerRegistry<URLStreamHandlerService> streamHandlers = new URLHandlerRegistry<URLStreamHandlerService>();
 
     void setDelegateFactory(URLStreamHandlerFactory factory) {
         delegate = factory;
     }
 
-    void addHandler(String protocol, ServiceReference reference) {
-        synchronized (streamHandlers) {
-            streamHandlers.putIfAbsent(protocol, new ArrayList<ServiceReference>());
-            List<ServiceReference> list = streamHandlers.get(protocol);
-            synchronized (list) {
-                list.add(reference);
-                Collections.sort(list, Collections.reverseOrder(ServiceReferenceComparator.getInstance()));
-            }
-        }
+    void addHandler(String protocol, ServiceReference reference, URLStreamHandlerService service) {
+        streamHandlers.addHandler(protocol, reference, service);
     }
 
-    List<ServiceReference> getStreamHandlers(String protocol) {
-        synchronized (streamHandlers) {
-            return streamHandlers.get(protocol);
-        }
+    URLHandlerRegistry<URLStreamHandlerService> getStreamHandlers() {
+        return streamHandlers;
     }
 
     void removeHandler(ServiceReference reference) {
-        synchronized (streamHandlers) {
-            for (List<ServiceReference> list : streamHandlers.values()) {
-                for (Iterator<ServiceReference> it = list.iterator(); it.hasNext();) {
-                    if (it.next().equals(reference)) {
-                        it.remove();
-                        break;
-                    }
-                }
-            }
-        }
+        streamHandlers.removeHandler(reference);
     }
 
     void clearHandlers() {
-        synchronized (streamHandlers) {
-            for (List<ServiceReference> list : streamHandlers.values()) {
-                list.clear();
-            }
-        }
+        streamHandlers.clearHandlers();
     }
 
     @Override
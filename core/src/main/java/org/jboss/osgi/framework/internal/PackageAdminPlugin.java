@@ -38,6 +38,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
@@ -47,6 +48,8 @@ import org.jboss.msc.service.StartException;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockContext;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockMethod;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.XBundleRevision;
 import org.jboss.osgi.resolver.XCapability;
@@ -85,6 +88,7 @@ public final class PackageAdminPlugin extends AbstractExecutorService<PackageAdm
     private final InjectedValue<BundleContext> injectedSystemContext = new InjectedValue<BundleContext>();
     private final InjectedValue<ModuleManagerPlugin> injectedModuleManager = new InjectedValue<ModuleManagerPlugin>();
     private final InjectedValue<ResolverPlugin> injectedResolver = new InjectedValue<ResolverPlugin>();
+    private final InjectedValue<LockManagerPlugin> injectedLockManager = new InjectedValue<LockManagerPlugin>();
     private ServiceRegistration registration;
 
     static void addService(ServiceTarget serviceTarget) {
@@ -96,6 +100,7 @@ public final class PackageAdminPlugin extends AbstractExecutorService<PackageAdm
         builder.addDependency(InternalServices.MODULE_MANGER_PLUGIN, ModuleManagerPlugin.class, service.injectedModuleManager);
         builder.addDependency(Services.FRAMEWORK_CREATE, BundleContext.class, service.injectedSystemContext);
         builder.addDependency(Services.RESOLVER, ResolverPlugin.class, service.injectedResolver);
+        builder.addDependency(InternalServices.LOCK_MANAGER_PLUGIN, LockManagerPlugin.class, service.injectedLockManager);
         builder.setInitialMode(Mode.ON_DEMAND);
         builder.install();
     }
@@ -255,6 +260,7 @@ public final class PackageAdminPlugin extends AbstractExecutorService<PackageAdm
 
         final BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
         final FrameworkEventsPlugin eventsPlugin = injectedFrameworkEvents.getValue();
+        final LockManagerPlugin lockManager = injectedLockManager.getValue();
         Runnable runner = new Runnable() {
 
             @Override
@@ -290,38 +296,41 @@ public final class PackageAdminPlugin extends AbstractExecutorService<PackageAdm
                 Set<UserBundleState> refreshBundles = new HashSet<UserBundleState>();
                 Set<UserBundleState> uninstallBundles = new HashSet<UserBundleState>();
 
-                for (UserBundleState userBundle : providedBundles) {
-                    if (userBundle.getState() == Bundle.UNINSTALLED)
-                        uninstallBundles.add(userBundle);
-                    else if (userBundle.isResolved() == true)
-                        refreshBundles.add(userBundle);
+                // Walk the wiring graph under the exclusive lock, so that concurrent
+                // resolve operations cannot change it while the dependents are collected
+                LockContext lockContext;
+                try {
+                    lockContext = lockManager.aquireFrameworkLock(LockMethod.REFRESH);
+                } catch (TimeoutException ex) {
+                    eventsPlugin.fireFrameworkEvent(bundleManager.getSystemBundle(), FrameworkEvent.ERROR, ex);
+                    return;
                 }
-
-                // Compute all depending bundles that need to be stopped and unresolved.
-                for (XBundle bundle : bundleManager.getBundles(Bundle.RESOLVED | Bundle.ACTIVE)) {
-                    if (bundle instanceof HostBundleState) {
-                        HostBundleState hostBundle = HostBundleState.assertBundleState(bundle);
-                        for (UserBundleState depBundle : hostBundle.getDependentBundles()) {
-                            if (providedBundles.contains(depBundle)) {
-                                int state = hostBundle.getState();
-                                if (state == Bundle.ACTIVE || state == Bundle.STARTING) {
-                                    stopBundles.add(hostBundle);
-                                }
-                                refreshBundles.add(hostBundle);
-                                break;
-                            }
-                        }
+                try {
+                    for (UserBundleState userBundle : providedBundles) {
+                        if (userBundle.getState() == Bundle.UNINSTALLED)
+                            uninstallBundles.add(userBundle);
+                        else if (userBundle.isResolved() == true)
+                            refreshBundles.add(userBundle);
                     }
-                }
 
-                // Add relevant bundles to be refreshed also to the stop list.
-                for (UserBundleState aux : refreshBundles) {
-                    if (aux instanceof HostBundleState) {
-                        int state = aux.getState();
-                        if (state == Bundle.ACTIVE || state == Bundle.STARTING) {
-                            stopBundles.add((HostBundleState) aux);
+                    // Compute the transitive closure of depending bundles that need to be stopped and unresolved.
+                    int resolvedStates = Bundle.RESOLVED | Bundle.STARTING | Bundle.ACTIVE | Bundle.STOPPING;
+                    BundleRefreshGraph refreshGraph = new BundleRefreshGraph(bundleManager.getBundles(resolvedStates));
+                    Set<HostBundleState> dependents = refreshGraph.getDependencyClosure(providedBundles);
+                    LOGGER.debugf("Refresh %s affects %d dependent bundles", providedBundles, dependents.size());
+                    refreshBundles.addAll(dependents);
+
+                    // Add relevant bundles to be refreshed also to the stop list.
+                    for (UserBundleState aux : refreshBundles) {
+                        if (aux instanceof HostBundleState) {
+                            int state = aux.getState();
+                            if (state == Bundle.ACTIVE || state == Bundle.STARTING) {
+                                stopBundles.add((HostBundleState) aux);
+                            }
                         }
                     }
+                } finally {
+                    lockManager.releaseLock(lockContext);
                 }
 
                 List<HostBundleState> stopList = new ArrayList<HostBundleState>(stopBundles);
@@ -343,14 +352,26 @@ public final class PackageAdminPlugin extends AbstractExecutorService<PackageAdm
                     bundleManager.removeBundle(userBundle, 0);
                 }
 
+                Set<XBundleRevision> resolveRevisions = new LinkedHashSet<XBundleRevision>();
                 for (UserBundleState userBundle : refreshList) {
                     try {
                         userBundle.refresh();
+                        resolveRevisions.add(userBundle.getBundleRevision());
                     } catch (Exception th) {
                         eventsPlugin.fireFrameworkEvent(userBundle, FrameworkEvent.ERROR, th);
                     }
                 }
 
+                // Re-resolve the refreshed bundles in one go, bundles that cannot be resolved fail when restarted
+                if (resolveRevisions.isEmpty() == false) {
+                    try {
+                        ResolverPlugin resolverPlugin = injectedResolver.getValue();
+                        resolverPlugin.resolveAndApply(Collections.<XBundleRevision> emptySet(), resolveRevisions);
+                    } catch (ResolutionException ex) {
+                        LOGGER.debugf(ex, "Cannot resolve refreshed bundles: %s", resolveRevisions);
+                    }
+                }
+
                 for (HostBundleState hostBundle : stopList) {
                     try {
                         hostBundle.start(Bundle.START_TRANSIENT);
@@ -0,0 +1,124 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs one phase of the persistent bundle restore concurrently.
+ *
+ * The items of a phase are processed on a bounded pool of worker threads and the results are returned in the
+ * order of the given items. With a parallelism of one the items are processed in the calling thread.
+ *
+ * @since 18-Oct-2026
+ */
+final class ParallelRestore {
+
+    static final int DEFAULT_PARALLELISM = Math.min(8, Runtime.getRuntime().availableProcessors());
+
+    interface Task<T, R> {
+
+        /**
+         * Process the given item.
+         *
+         * @return the result or null if the item should be skipped
+         */
+        R call(T item) throws Exception;
+    }
+
+    private ParallelRestore() {
+    }
+
+    static int getParallelism(Object value) {
+        int parallelism = value != null ? new Integer("" + value) : DEFAULT_PARALLELISM;
+        return Math.max(1, parallelism);
+    }
+
+    /**
+     * Process the given items and return the non-null results in item order.
+     *
+     * @throws Exception the first exception thrown by a task, after all tasks have completed
+     */
+    static <T, R> List<R> process(final List<T> items, final Task<T, R> task, int parallelism) throws Exception {
+        List<R> result = new ArrayList<R>(items.size());
+        if (parallelism <= 1 || items.size() <= 1) {
+            for (T item : items) {
+                R value = task.call(item);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()), new ThreadFactory() {
+            private int count;
+            @Override
+            public synchronized Thread newThread(Runnable run) {
+                Thread thread = new Thread(run);
+                thread.setName("OSGi Restore Thread-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<R>> futures = new ArrayList<Future<R>>(items.size());
+            for (final T item : items) {
+                futures.add(executor.submit(new Callable<R>() {
+                    @Override
+                    public R call() throws Exception {
+                        return task.call(item);
+                    }
+                }));
+            }
+            Throwable failure = null;
+            for (Future<R> future : futures) {
+                try {
+                    R value = future.get();
+                    if (value != null) {
+                        result.add(value);
+                    }
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw (Exception) failure;
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Caches the outcome of resolve requests.
+ *
+ * An entry is keyed by the mandatory and optional resources of a request and is only valid for the environment
+ * generation it was computed in. The generation changes whenever a resource is installed, uninstalled or its
+ * wiring changes, after which the resolver may come to a different result for the same request.
+ *
+ * @since 18-Oct-2026
+ */
+final class ResolutionCache {
+
+    static final int MAX_CACHE_SIZE = 1024;
+
+    private final ConcurrentMap<CacheKey, CacheEntry> cache = new ConcurrentHashMap<CacheKey, CacheEntry>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong failureHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Get the wirings of a previous successful request in the given generation
+     *
+     * @return the wirings or null
+     * @throws ResolutionException if the same request failed in the given generation, caused by the original failure
+     */
+    Map<Resource, Wiring> get(ResolveContext context, long generation) throws ResolutionException {
+        CacheEntry entry = cache.get(new CacheKey(context));
+        if (entry == null || entry.generation != generation) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (entry.failure != null) {
+            // Every hit gets its own exception, so that callers cannot see each others stack traces or modifications
+            failureHitCount.incrementAndGet();
+            throw new ResolutionException(entry.failureMessage, entry.failure, entry.unresolved);
+        }
+        hitCount.incrementAndGet();
+        return entry.wirings;
+    }
+
+    void putResult(ResolveContext context, long generation, Map<Resource, Wiring> wirings) {
+        put(new CacheKey(context), new CacheEntry(generation, Collections.unmodifiableMap(wirings), null));
+    }
+
+    void putFailure(ResolveContext context, long generation, ResolutionException failure) {
+        put(new CacheKey(context), new CacheEntry(generation, null, failure));
+    }
+
+    private void put(CacheKey key, CacheEntry entry) {
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(key, entry);
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    int getSize() {
+        return cache.size();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getFailureHitCount() {
+        return failureHitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    void resetStatistics() {
+        hitCount.set(0);
+        failureHitCount.set(0);
+        missCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "ResolutionCache[size=" + getSize() + ",hits=" + hitCount + ",failureHits=" + failureHitCount + ",misses=" + missCount + "]";
+    }
+
+    private static final class CacheKey {
+
+        private final Set<Resource> mandatory;
+        private final Set<Resource> optional;
+        private final int hashCode;
+
+        CacheKey(ResolveContext context) {
+            mandatory = toSet(context.getMandatoryResources());
+            optional = toSet(context.getOptionalResources());
+            hashCode = 31 * mandatory.hashCode() + optional.hashCode();
+        }
+
+        private static Set<Resource> toSet(Collection<Resource> resources) {
+            return resources != null ? new HashSet<Resource>(resources) : Collections.<Resource> emptySet();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof CacheKey == false)
+                return false;
+            CacheKey other = (CacheKey) obj;
+            return mandatory.equals(other.mandatory) && optional.equals(other.optional);
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final long generation;
+        private final Map<Resource, Wiring> wirings;
+        private final ResolutionException failure;
+        private final String failureMessage;
+        private final Collection<Requirement> unresolved;
+
+        CacheEntry(long generation, Map<Resource, Wiring> wirings, ResolutionException failure) {
+            this.generation = generation;
+            this.wirings = wirings;
+            this.failure = failure;
+            if (failure != null) {
+                failureMessage = failure.getMessage();
+                unresolved = Collections.unmodifiableList(new ArrayList<Requirement>(failure.getUnresolvedRequirements()));
+            } else {
+                failureMessage = null;
+                unresolved = null;
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ package org.jboss.osgi.framework.internal;
 
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -35,6 +36,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.jboss.modules.ModuleIdentifier;
 import org.jboss.msc.service.ServiceBuilder;
@@ -48,7 +55,10 @@ import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.deployment.deployer.Deployment;
 import org.jboss.osgi.framework.IntegrationService;
 import org.jboss.osgi.framework.ModuleLoaderPlugin;
+import org.jboss.osgi.framework.ResolverMBean;
 import org.jboss.osgi.framework.Services;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockContext;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockMethod;
 import org.jboss.osgi.metadata.NativeLibraryMetaData;
 import org.jboss.osgi.resolver.XBundle;
 import org.jboss.osgi.resolver.XBundleRevision;
@@ -62,13 +72,12 @@ import org.jboss.osgi.resolver.felix.StatelessResolver;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
 import org.osgi.framework.namespace.HostNamespace;
-import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.resource.Capability;
-import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
 import org.osgi.resource.Wiring;
@@ -78,10 +87,14 @@ import org.osgi.service.resolver.ResolveContext;
 /**
  * The resolver plugin.
  *
+ * The resolution cache statistics are exposed through the {@link ResolverMBean}.
+ *
  * @author thomas.diesler@jboss.com
  * @since 15-Feb-2012
  */
-final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> implements XResolver {
+final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> implements XResolver, ResolverMBean {
+
+    private static final AtomicInteger instanceCount = new AtomicInteger();
 
     private final InjectedValue<BundleManagerPlugin> injectedBundleManager = new InjectedValue<BundleManagerPlugin>();
     private final InjectedValue<NativeCodePlugin> injectedNativeCode = new InjectedValue<NativeCodePlugin>();
@@ -89,7 +102,9 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
     private final InjectedValue<ModuleLoaderPlugin> injectedModuleLoader = new InjectedValue<ModuleLoaderPlugin>();
     private final InjectedValue<XEnvironment> injectedEnvironment = new InjectedValue<XEnvironment>();
     private final InjectedValue<LockManagerPlugin> injectedLockManager = new InjectedValue<LockManagerPlugin>();
+    private final ResolutionCache resolutionCache = new ResolutionCache();
     private XResolver resolver;
+    private ObjectName objectName;
 
     static void addService(ServiceTarget serviceTarget) {
         ResolverPlugin service = new ResolverPlugin();
@@ -111,11 +126,30 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
     public void start(StartContext context) throws StartException {
         super.start(context);
         resolver = new StatelessResolver();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME_PREFIX + ",id=" + instanceCount.incrementAndGet());
+            server.registerMBean(new StandardMBean(this, ResolverMBean.class), objectName);
+        } catch (Exception ex) {
+            LOGGER.warnCannotRegisterMBean(ex, objectName);
+            objectName = null;
+        }
     }
 
     @Override
     public void stop(StopContext context) {
         super.stop(context);
+        if (objectName != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(objectName);
+            } catch (Exception ex) {
+                LOGGER.debugf(ex, "Cannot unregister MBean: %s", objectName);
+            }
+            objectName = null;
+        }
+        LOGGER.debugf("Stopped resolver with: %s", resolutionCache);
+        resolutionCache.clear();
         resolver = null;
     }
 
@@ -134,26 +168,58 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
 
     @Override
     public Map<Resource, List<Wire>> resolve(ResolveContext context) throws ResolutionException {
-        aquireFrameworkLock();
+        LockContext lockContext = aquireBundleLock(LockMethod.RESOLVE, getContextResources(context));
+        EnvironmentPlugin env = (EnvironmentPlugin) injectedEnvironment.getValue();
+        Lock readLock = env.getReadLock();
+        readLock.lock();
         try {
             return resolver.resolve(context);
         } finally {
-            releaseFrameworkLock();
+            readLock.unlock();
+            releaseLock(lockContext);
         }
     }
 
     @Override
     public Map<Resource, Wiring> resolveAndApply(XResolveContext context) throws ResolutionException {
 
+        // The same request in an unchanged environment has the same outcome
+        EnvironmentPlugin env = (EnvironmentPlugin) injectedEnvironment.getValue();
+        long generation = env.getGeneration();
+        Map<Resource, Wiring> cached = resolutionCache.get(context, generation);
+        if (cached != null) {
+            LOGGER.tracef("Cached resolution result for: %s", context.getMandatoryResources());
+            return cached;
+        }
+
         Map<Resource, List<Wire>> wiremap;
         Map<Resource, Wiring> wirings;
 
-        aquireFrameworkLock();
+        // Independent subgraphs can be resolved concurrently
+        LockContext lockContext = aquireBundleLock(LockMethod.RESOLVE, getContextResources(context));
         try {
-            wiremap = resolver.resolve(context);
+            wiremap = resolveInternal(context, generation);
+
+            // Applying the results also modifies the wiring of the providers. If any of them
+            // is locked by another thread, fall back to the exclusive lock and resolve again.
+            // Another thread may also have resolved or uninstalled one of the affected resources
+            // and released its lock before the extension, in which case the wire map is stale.
+            // Refresh takes the exclusive lock and cannot happen while the bundle lock is held
+            LockManagerPlugin lockManager = injectedLockManager.getValue();
+            boolean extended = lockManager.tryExtendBundleLock(lockContext, getAffectedResources(wiremap));
+            if (extended == false || isStale(wiremap)) {
+                releaseLock(lockContext);
+                lockContext = null;
+                lockContext = aquireFrameworkLock(LockMethod.RESOLVE);
+                wiremap = resolveInternal(context, env.getGeneration());
+            }
+
             wirings = applyResolverResults(wiremap);
+            resolutionCache.putResult(context, env.getGeneration(), wirings);
         } finally {
-            releaseFrameworkLock();
+            if (lockContext != null) {
+                releaseLock(lockContext);
+            }
         }
 
         // Send the {@link BundleEvent.RESOLVED} event outside the lock
@@ -162,6 +228,78 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
         return wirings;
     }
 
+    private Map<Resource, List<Wire>> resolveInternal(XResolveContext context, long generation) throws ResolutionException {
+        // Concurrent installs must not modify the environment while it is read
+        EnvironmentPlugin env = (EnvironmentPlugin) injectedEnvironment.getValue();
+        Lock readLock = env.getReadLock();
+        readLock.lock();
+        try {
+            return resolver.resolve(context);
+        } catch (ResolutionException ex) {
+            // Lock timeouts are not cached, only failures of the resolver itself
+            resolutionCache.putFailure(context, generation, ex);
+            throw ex;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * True if a resource of the wire map was resolved or uninstalled since the wire map was computed
+     */
+    private boolean isStale(Map<Resource, List<Wire>> wiremap) {
+        for (Entry<Resource, List<Wire>> entry : wiremap.entrySet()) {
+            XBundleRevision brev = (XBundleRevision) entry.getKey();
+            if (brev.getWiring() != null || isUninstalled(brev))
+                return true;
+            for (Wire wire : entry.getValue()) {
+                XBundleRevision provider = (XBundleRevision) wire.getProvider();
+                boolean resolvedBefore = wiremap.containsKey(provider) == false;
+                if (isUninstalled(provider) || (resolvedBefore && provider.getWiring() == null))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isUninstalled(XBundleRevision brev) {
+        XBundle bundle = brev.getBundle();
+        return bundle != null && bundle.getState() == Bundle.UNINSTALLED;
+    }
+
+    ResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
+    ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public int getResolutionCacheSize() {
+        return resolutionCache.getSize();
+    }
+
+    @Override
+    public long getResolutionCacheHitCount() {
+        return resolutionCache.getHitCount();
+    }
+
+    @Override
+    public long getResolutionCacheFailureHitCount() {
+        return resolutionCache.getFailureHitCount();
+    }
+
+    @Override
+    public long getResolutionCacheMissCount() {
+        return resolutionCache.getMissCount();
+    }
+
+    @Override
+    public void resetStatistics() {
+        resolutionCache.resetStatistics();
+    }
+
     Map<Resource, Wiring> resolveAndApply(Collection<? extends Resource> mandatory, Collection<? extends Resource> optional) throws ResolutionException {
         XEnvironment env = injectedEnvironment.getValue();
         XResolveContext context = createResolveContext(env, mandatory, optional);
@@ -208,13 +346,21 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
 
     private Collection<? extends Resource> findAttachableFragments(Collection<? extends Capability> hostcaps) {
         Set<Resource> result = new HashSet<Resource>();
-        XEnvironment env = injectedEnvironment.getValue();
-        for (Resource res : env.getResources(IdentityNamespace.TYPE_FRAGMENT)) {
-            Requirement req = res.getRequirements(HostNamespace.HOST_NAMESPACE).get(0);
-            XRequirement xreq = (XRequirement) req;
-            for (Capability cap : hostcaps) {
+        BundleIndex bundleIndex = ((EnvironmentPlugin) injectedEnvironment.getValue()).getBundleIndex();
+        if (bundleIndex.hasFragments() == false)
+            return result;
+
+        // Only the fragments that name the host in their Fragment-Host header can match
+        for (Capability cap : hostcaps) {
+            XResource host = (XResource) cap.getResource();
+            List<XBundleRevision> candidates = new ArrayList<XBundleRevision>(bundleIndex.getFragments(host.getIdentityCapability().getSymbolicName()));
+            if (host instanceof SystemBundleRevision) {
+                candidates.addAll(bundleIndex.getFragments(Constants.SYSTEM_BUNDLE_SYMBOLICNAME));
+            }
+            for (XBundleRevision fragRev : candidates) {
+                XRequirement xreq = (XRequirement) fragRev.getRequirements(HostNamespace.HOST_NAMESPACE).get(0);
                 if (xreq.matches(cap)) {
-                    result.add(res);
+                    result.add(fragRev);
                 }
             }
         }
@@ -261,8 +407,8 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
         createModuleServices(brevmap);
 
         // Construct and apply the resource wiring map
-        XEnvironment env = injectedEnvironment.getValue();
-        Map<Resource, Wiring> wirings = env.updateWiring(wiremap);
+        EnvironmentPlugin env = (EnvironmentPlugin) injectedEnvironment.getValue();
+        Map<Resource, Wiring> wirings = env.applyWiring(wiremap);
         for (Entry<Resource, Wiring> entry : wirings.entrySet()) {
             XBundleRevision res = (XBundleRevision) entry.getKey();
             res.addAttachment(Wiring.class, entry.getValue());
@@ -359,17 +505,44 @@ final class ResolverPlugin extends AbstractPluginService<ResolverPlugin> impleme
         }
     }
 
-    private void aquireFrameworkLock() throws ResolutionException {
+    private Collection<Resource> getContextResources(ResolveContext context) {
+        Collection<Resource> result = new HashSet<Resource>();
+        result.addAll(context.getMandatoryResources());
+        result.addAll(context.getOptionalResources());
+        return result;
+    }
+
+    private Collection<Resource> getAffectedResources(Map<Resource, List<Wire>> wiremap) {
+        Collection<Resource> result = new HashSet<Resource>();
+        for (Entry<Resource, List<Wire>> entry : wiremap.entrySet()) {
+            result.add(entry.getKey());
+            for (Wire wire : entry.getValue()) {
+                result.add(wire.getProvider());
+            }
+        }
+        return result;
+    }
+
+    private LockContext aquireFrameworkLock(LockMethod method) throws ResolutionException {
+        try {
+            LockManagerPlugin lockManager = injectedLockManager.getValue();
+            return lockManager.aquireFrameworkLock(method);
+        } catch (TimeoutException ex) {
+            throw new ResolutionException(ex);
+        }
+    }
+
+    private LockContext aquireBundleLock(LockMethod method, Collection<Resource> resources) throws ResolutionException {
         try {
             LockManagerPlugin lockManager = injectedLockManager.getValue();
-            lockManager.aquireFrameworkLock();
+            return lockManager.aquireBundleLock(method, resources);
         } catch (TimeoutException ex) {
             throw new ResolutionException(ex);
         }
     }
 
-    private void releaseFrameworkLock() {
+    private void releaseLock(LockContext lockContext) {
         LockManagerPlugin lockManager = injectedLockManager.getValue();
-        lockManager.releaseFrameworkLock();
+        lockManager.releaseLock(lockContext);
     }
 }
@@ -22,19 +22,24 @@ package org.jboss.osgi.framework.internal;
  */
 
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import org.jboss.osgi.framework.Constants;
+import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.framework.util.JarFileResourceLoader;
 import org.jboss.osgi.metadata.OSGiMetaData;
 import org.jboss.osgi.vfs.AbstractVFS;
 import org.jboss.osgi.vfs.VFSUtils;
 import org.jboss.osgi.vfs.VirtualFile;
-import org.osgi.framework.Bundle;
 
 /**
  * An abstraction for the revision content
@@ -49,6 +54,9 @@ final class RevisionContent implements EntriesProvider {
     private final VirtualFile virtualFile;
     private final String identity;
     private final int contentId;
+    private final URLStreamHandler streamHandler = new RevisionContentStreamHandler();
+    private JarFileResourceLoader jarLoader;
+    private boolean jarLoaderCreated;
 
     RevisionContent(UserBundleRevision brev, OSGiMetaData metadata, long bundleId, int contentId, VirtualFile rootFile) {
         assert brev != null : "Null userRev";
@@ -69,22 +77,13 @@ final class RevisionContent implements EntriesProvider {
         LOGGER.tracef("new RevisionContent: %s", identity);
     }
 
+    /**
+     * Find the revision content for the given identity, which is registered
+     * with the bundle manager until its revision is closed
+     */
     static RevisionContent findRevisionContent(BundleManagerPlugin bundleManager, String identity) {
         assert identity != null : "Null identity";
-        String[] parts = identity.split("-");
-        assert parts.length == 4 : "Invalid identity: " + identity;
-        long bundleId = Long.parseLong(parts[1]);
-        int revisionId = Integer.parseInt(parts[2]);
-        int contentId = Integer.parseInt(parts[3]);
-        Bundle bundle = bundleManager.getBundleById(bundleId);
-        if (bundle == null)
-            return null;
-        AbstractBundleState bundleState = AbstractBundleState.assertBundleState(bundle);
-        BundleStateRevision bundleRev = bundleState.getBundleRevisionById(revisionId);
-        if (bundleRev == null)
-            return null;
-        UserBundleRevision userRev = (UserBundleRevision) bundleRev;
-        RevisionContent revContent = userRev.getContentById(contentId);
+        RevisionContent revContent = bundleManager.getRevisionContent(identity);
         LOGGER.tracef("findRevisionContent: %s => %s", identity, revContent);
         return revContent;
     }
@@ -140,7 +139,36 @@ final class RevisionContent implements EntriesProvider {
         }
     }
 
-    void close() {
+    /**
+     * Get a resource loader over the bundle file in the storage area, which has the same content
+     * as the revision root. Returns null for content that is not the revision root.
+     */
+    synchronized JarFileResourceLoader getJarFileLoader() {
+        if (jarLoaderCreated == false) {
+            jarLoaderCreated = true;
+            Object value = userRev.getFrameworkState().getBundleManager().getProperty(Constants.PROPERTY_JAR_RESOURCE_LOADER);
+            boolean enabled = value != null ? Boolean.parseBoolean("" + value) : true;
+            if (enabled && virtualFile == userRev.getDeployment().getRoot()) {
+                StorageState storageState = userRev.getStorageState();
+                String bundleFile = storageState.getProperties().getProperty(StorageState.PROPERTY_BUNDLE_FILE);
+                if (bundleFile != null) {
+                    File file = new File(storageState.getStorageDir(), bundleFile);
+                    try {
+                        jarLoader = new JarFileResourceLoader(file);
+                    } catch (IOException ex) {
+                        LOGGER.debugf(ex, "Cannot index bundle file: %s", file);
+                    }
+                }
+            }
+        }
+        return jarLoader;
+    }
+
+    synchronized void close() {
+        if (jarLoader != null) {
+            jarLoader.close();
+            jarLoader = null;
+        }
         VFSUtils.safeClose(virtualFile);
     }
 
@@ -160,19 +188,7 @@ final class RevisionContent implements EntriesProvider {
         return result.elements();
     }
 
-    URL getBundleURL(final VirtualFile child) throws IOException {
-        final String orgPath = child.getPathName();
-        URLStreamHandler streamHandler = new URLStreamHandler() {
-            protected URLConnection openConnection(URL url) throws IOException {
-                String path = url.getPath();
-                VirtualFile real = (orgPath.equals(path) ? child : virtualFile.getChild(path));
-                return real.getStreamURL().openConnection();
-            }
-
-            // [TODO] overwrite hashCode for to prevent host address resolution
-            // when offline the BundleEntriesTestCase is slow because of this
-        };
-
+    URL getBundleURL(VirtualFile child) throws IOException {
         String rootPath = virtualFile.getPathName();
         String pathName = child.getPathName().substring(rootPath.length());
 
@@ -191,6 +207,26 @@ final class RevisionContent implements EntriesProvider {
         return new URL(BundleProtocolHandler.PROTOCOL_NAME, identity, -1, path.toString(), streamHandler);
     }
 
+    /**
+     * The handler that is shared by all bundle URLs of this content
+     */
+    private class RevisionContentStreamHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            VirtualFile child = virtualFile.getChild(url.getPath());
+            if (child == null)
+                throw MESSAGES.cannotObtainContent(url);
+            return child.getStreamURL().openConnection();
+        }
+
+        // The host is the content identity, which must not be resolved as a network address
+        @Override
+        protected InetAddress getHostAddress(URL url) {
+            return null;
+        }
+    }
+
     @Override
     public int hashCode() {
         return toString().hashCode();
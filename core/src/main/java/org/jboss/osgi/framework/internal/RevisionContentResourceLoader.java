@@ -40,11 +40,12 @@ import org.jboss.osgi.framework.util.VirtualFileResourceLoader;
 final class RevisionContentResourceLoader implements ResourceLoader {
 
     private final RevisionContent revContent;
-    private final VirtualFileResourceLoader delegate;
+    private final ResourceLoader delegate;
 
     RevisionContentResourceLoader(RevisionContent revContent) {
         assert revContent != null : "Null revContent";
-        this.delegate = new VirtualFileResourceLoader(revContent.getVirtualFile());
+        ResourceLoader jarLoader = revContent.getJarFileLoader();
+        this.delegate = jarLoader != null ? jarLoader : new VirtualFileResourceLoader(revContent.getVirtualFile());
         this.revContent = revContent;
     }
 
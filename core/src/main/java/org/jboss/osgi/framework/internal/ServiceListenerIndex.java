@@ -0,0 +1,157 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsPlugin.ServiceListenerRegistration;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+
+/**
+ * An index of service listeners by the objectClass values that their filters require.
+ *
+ * Listeners with filters that do not constrain the objectClass are kept in a residual list,
+ * which is always part of the candidates. All lists are immutable arrays that are replaced on modification.
+ *
+ * @since 18-Oct-2026
+ */
+final class ServiceListenerIndex {
+
+    private static final String OBJECTCLASS_KEY = Constants.OBJECTCLASS.toLowerCase(Locale.ENGLISH);
+    private static final ServiceListenerRegistration[] NO_LISTENERS = new ServiceListenerRegistration[0];
+
+    private final ConcurrentMap<String, ServiceListenerRegistration[]> byClass = new ConcurrentHashMap<String, ServiceListenerRegistration[]>();
+    private final Map<ServiceListenerRegistration, Set<String>> indexedValues = new IdentityHashMap<ServiceListenerRegistration, Set<String>>();
+    private volatile ServiceListenerRegistration[] residual = NO_LISTENERS;
+
+    synchronized void addListener(ServiceListenerRegistration slreg) {
+        Set<String> values = getRequiredClasses(slreg.getFilter());
+        indexedValues.put(slreg, values);
+        if (values == null) {
+            residual = append(residual, slreg);
+        } else {
+            for (String value : values) {
+                ServiceListenerRegistration[] listeners = byClass.get(value);
+                byClass.put(value, append(listeners != null ? listeners : NO_LISTENERS, slreg));
+            }
+        }
+    }
+
+    synchronized void removeListener(ServiceListenerRegistration slreg) {
+        if (indexedValues.containsKey(slreg) == false)
+            return;
+
+        Set<String> values = indexedValues.remove(slreg);
+        if (values == null) {
+            residual = remove(residual, slreg);
+        } else {
+            for (String value : values) {
+                ServiceListenerRegistration[] listeners = byClass.get(value);
+                if (listeners != null) {
+                    listeners = remove(listeners, slreg);
+                    if (listeners.length > 0) {
+                        byClass.put(value, listeners);
+                    } else {
+                        byClass.remove(value);
+                    }
+                }
+            }
+        }
+    }
+
+    synchronized void clear() {
+        byClass.clear();
+        indexedValues.clear();
+        residual = NO_LISTENERS;
+    }
+
+    /**
+     * Get the listeners whose filters may match a service registered under the given class names
+     */
+    List<ServiceListenerRegistration> getCandidates(List<String> classNames) {
+        ServiceListenerRegistration[] others = residual;
+        List<ServiceListenerRegistration> result = new ArrayList<ServiceListenerRegistration>();
+        Collections.addAll(result, others);
+
+        // A listener that is indexed under more than one value may be found more than once
+        Map<ServiceListenerRegistration, Boolean> found = null;
+        for (String className : classNames) {
+            ServiceListenerRegistration[] listeners = byClass.get(className);
+            if (listeners == null)
+                continue;
+            if (classNames.size() == 1) {
+                Collections.addAll(result, listeners);
+                continue;
+            }
+            if (found == null)
+                found = new IdentityHashMap<ServiceListenerRegistration, Boolean>();
+            for (ServiceListenerRegistration slreg : listeners) {
+                if (found.put(slreg, Boolean.TRUE) == null)
+                    result.add(slreg);
+            }
+        }
+        return result;
+    }
+
+    int getIndexedClassCount() {
+        return byClass.size();
+    }
+
+    int getResidualCount() {
+        return residual.length;
+    }
+
+    private static Set<String> getRequiredClasses(Filter filter) {
+        if (filter instanceof CompiledFilter)
+            return ((CompiledFilter) filter).getRequiredValues(OBJECTCLASS_KEY);
+        return null;
+    }
+
+    private static ServiceListenerRegistration[] append(ServiceListenerRegistration[] listeners, ServiceListenerRegistration slreg) {
+        ServiceListenerRegistration[] result = new ServiceListenerRegistration[listeners.length + 1];
+        System.arraycopy(listeners, 0, result, 0, listeners.length);
+        result[listeners.length] = slreg;
+        return result;
+    }
+
+    private static ServiceListenerRegistration[] remove(ServiceListenerRegistration[] listeners, ServiceListenerRegistration slreg) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == slreg) {
+                ServiceListenerRegistration[] result = new ServiceListenerRegistration[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
+                return result;
+            }
+        }
+        return listeners;
+    }
+}
@@ -25,29 +25,29 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceTarget;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StartException;
+import org.jboss.msc.service.StopContext;
 import org.jboss.msc.value.InjectedValue;
+import org.jboss.osgi.framework.Constants;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.util.NoFilter;
 import org.jboss.osgi.framework.util.RemoveOnlyCollection;
+import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
 import org.jboss.osgi.resolver.XBundle;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
-import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceFactory;
@@ -68,8 +68,9 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
     private final InjectedValue<FrameworkEventsPlugin> injectedFrameworkEvents = new InjectedValue<FrameworkEventsPlugin>();
     private final InjectedValue<ModuleManagerPlugin> injectedModuleManager = new InjectedValue<ModuleManagerPlugin>();
 
-    private final Map<String, List<ServiceState>> serviceContainer = new HashMap<String, List<ServiceState>>();
     private final AtomicLong identityGenerator = new AtomicLong();
+    private final AssignabilityCache assignabilityCache = new AssignabilityCache();
+    private ServiceRegistryIndex serviceIndex;
 
     static void addService(ServiceTarget serviceTarget) {
         ServiceManagerPlugin service = new ServiceManagerPlugin();
@@ -84,11 +85,32 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
     private ServiceManagerPlugin() {
     }
 
+    @Override
+    public void start(StartContext context) throws StartException {
+        super.start(context);
+        BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
+        String keySpec = (String) bundleManager.getProperty(Constants.PROPERTY_SERVICE_INDEX_KEYS);
+        List<String> indexedKeys = keySpec != null ? Arrays.asList(keySpec.split(",")) : null;
+        serviceIndex = new ServiceRegistryIndex(indexedKeys);
+        LOGGER.debugf("Indexed service properties: %s", serviceIndex.getIndexedKeys());
+    }
+
     @Override
     public ServiceManagerPlugin getValue() {
         return this;
     }
 
+    @Override
+    public void stop(StopContext context) {
+        super.stop(context);
+        LOGGER.debugf("Hit rate %.2f for %s", assignabilityCache.getHitRate(), assignabilityCache);
+        assignabilityCache.clear();
+    }
+
+    AssignabilityCache getAssignabilityCache() {
+        return assignabilityCache;
+    }
+
     FrameworkEventsPlugin getFrameworkEventsPlugin() {
         return injectedFrameworkEvents.getValue();
     }
@@ -137,18 +159,7 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
         ServiceState serviceState = new ServiceState(this, bundleState, serviceId, classNames, valueProvider, properties);
         LOGGER.debugf("Register service: %s", serviceState);
 
-        synchronized (serviceContainer) {
-            for (String className : classNames) {
-                List<ServiceState> serviceStates = serviceContainer.get(className);
-                if (serviceStates != null) {
-                    serviceStates.add(serviceState);
-                } else {
-                    serviceStates = new CopyOnWriteArrayList<ServiceState>();
-                    serviceStates.add(serviceState);
-                    serviceContainer.put(className, serviceStates);
-                }
-            }
-        }
+        serviceIndex.addService(serviceState);
         bundleState.addRegisteredService(serviceState);
 
         // Call the newly added ListenerHook.added() method
@@ -198,7 +209,7 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
     List<ServiceState> getServiceReferences(AbstractBundleState bundleState, String clazz, String filterStr, boolean checkAssignable) throws InvalidSyntaxException {
         Filter filter = NoFilter.INSTANCE;
         if (filterStr != null)
-            filter = FrameworkUtil.createFilter(filterStr);
+            filter = injectedBundleManager.getValue().getFilterCache().getFilter(filterStr);
 
         List<ServiceState> result = getServiceReferencesInternal(bundleState, clazz, filter, checkAssignable);
         result = processFindHooks(bundleState, clazz, filterStr, checkAssignable, result);
@@ -209,39 +220,26 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
         assert bundleState != null : "Null bundleState";
         assert filter != null : "Null filter";
 
-        Set<ServiceState> initialSet = new HashSet<ServiceState>();
-        if (className != null) {
-            List<ServiceState> list = serviceContainer.get(className);
-            if (list != null) {
-                initialSet.addAll(list);
-            }
-        } else {
-            for (List<ServiceState> list : serviceContainer.values()) {
-                initialSet.addAll(list);
-            }
-        }
-
-        if (initialSet.isEmpty())
+        // The candidates are a sorted superset of the matching services
+        List<ServiceState> candidates = serviceIndex.getCandidates(className, filter);
+        if (candidates.isEmpty())
             return Collections.emptyList();
 
-        Set<ServiceState> resultset = new HashSet<ServiceState>();
-        for (ServiceState serviceState : initialSet) {
+        List<ServiceState> resultList = new ArrayList<ServiceState>(candidates.size());
+        for (ServiceState serviceState : candidates) {
             if (isMatchingService(bundleState, serviceState, className, filter, checkAssignable)) {
-                resultset.add(serviceState);
+                resultList.add(serviceState);
             }
         }
 
-        // Sort the result
-        List<ServiceState> resultList = new ArrayList<ServiceState>(resultset);
-        if (resultList.size() > 1)
-            Collections.sort(resultList, ServiceReferenceComparator.getInstance());
-
         return Collections.unmodifiableList(resultList);
     }
 
     private boolean isMatchingService(AbstractBundleState bundleState, ServiceState serviceState, String clazzName, Filter filter, boolean checkAssignable) {
         if (serviceState.isUnregistered() || filter.match(serviceState) == false)
             return false;
+        if (clazzName != null && serviceState.getClassNames().contains(clazzName) == false)
+            return false;
         if (checkAssignable == false || clazzName == null)
             return true;
 
@@ -283,18 +281,12 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
             if (serviceState.isUnregistered())
                 return;
 
-            synchronized (serviceContainer) {
-                for (String className : serviceState.getClassNames()) {
-                    LOGGER.debugf("Unregister service: %s", className);
-                    try {
-                        List<ServiceState> serviceStates = serviceContainer.get(className);
-                        if (serviceStates != null) {
-                            serviceStates.remove(serviceState);
-                        }
-                    } catch (RuntimeException ex) {
-                        LOGGER.errorCannotRemoveService(ex, className);
-                    }
-                }
+            List<String> classNames = serviceState.getClassNames();
+            LOGGER.debugf("Unregister service: %s", classNames);
+            try {
+                serviceIndex.removeService(serviceState);
+            } catch (RuntimeException ex) {
+                LOGGER.errorCannotRemoveService(ex, classNames.toString());
             }
 
             XBundle serviceOwner = serviceState.getServiceOwner();
@@ -317,6 +309,13 @@ final class ServiceManagerPlugin extends AbstractPluginService<ServiceManagerPlu
         }
     }
 
+    /**
+     * Replace the properties of the given service and update the registry index.
+     */
+    void updateServiceProperties(ServiceState serviceState, CaseInsensitiveDictionary properties) {
+        serviceIndex.updateService(serviceState, properties);
+    }
+
     /**
      * Releases the service object referenced by the specified <code>ServiceReference</code> object. If the context bundle's use
      * count for the service is zero, this method returns <code>false</code>. Otherwise, the context bundle's use count for the
@@ -0,0 +1,555 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.osgi.framework.util.NoFilter;
+import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * An index of the registered services.
+ *
+ * For every indexed property key it maintains an inverted index from property value to the services that carry that
+ * value. Equality and presence terms of a lookup filter are answered from the index, the complete filter is then
+ * only evaluated on the candidate set.
+ *
+ * The set of services for a single property value is an immutable array in {@link ServiceReferenceComparator} order,
+ * which is replaced atomically on modification. The sets that grow with the size of the registry (all services and the
+ * services that have a given key) are concurrent sets instead, from which a sorted snapshot is built on demand. A
+ * modification therefore only copies the sets of the values it touches. Modifications are serialized, lookups never block.
+ *
+ * @since 18-Oct-2026
+ */
+final class ServiceRegistryIndex {
+
+    private static final ServiceState[] NO_SERVICES = new ServiceState[0];
+    private static final Comparator<ServiceReference> COMPARATOR = ServiceReferenceComparator.getInstance();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SnapshotBucket allServices = new SnapshotBucket();
+    private final Map<String, PropertyIndex> propertyIndexes = new HashMap<String, PropertyIndex>();
+    private final PropertyIndex objectClassIndex;
+
+    ServiceRegistryIndex(Collection<String> indexedKeys) {
+        Set<String> keys = new HashSet<String>();
+        keys.add(Constants.OBJECTCLASS.toLowerCase(Locale.ENGLISH));
+        keys.add(Constants.SERVICE_PID.toLowerCase(Locale.ENGLISH));
+        if (indexedKeys != null) {
+            for (String key : indexedKeys) {
+                if (key != null && key.trim().length() > 0)
+                    keys.add(key.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        for (String key : keys) {
+            propertyIndexes.put(key, new PropertyIndex(key));
+        }
+        objectClassIndex = propertyIndexes.get(Constants.OBJECTCLASS.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Get the set of indexed property keys in lower case
+     */
+    Set<String> getIndexedKeys() {
+        return Collections.unmodifiableSet(propertyIndexes.keySet());
+    }
+
+    void addService(ServiceState serviceState) {
+        writeLock.lock();
+        try {
+            if (allServices.contains(serviceState) == false) {
+                for (Bucket bucket : getBuckets(serviceState, true)) {
+                    bucket.replace(serviceState, true);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void removeService(ServiceState serviceState) {
+        writeLock.lock();
+        try {
+            if (allServices.contains(serviceState)) {
+                for (Bucket bucket : getBuckets(serviceState, false)) {
+                    bucket.replace(serviceState, false);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replace the properties of the given service and update the index accordingly.
+     *
+     * Every set that contains the service before or after the modification is republished once,
+     * so that sets which keep the service never appear without it.
+     */
+    void updateService(ServiceState serviceState, CaseInsensitiveDictionary properties) {
+        writeLock.lock();
+        try {
+            if (allServices.contains(serviceState) == false) {
+                serviceState.applyProperties(properties);
+                return;
+            }
+            Set<Bucket> oldBuckets = getBuckets(serviceState, false);
+            serviceState.applyProperties(properties);
+            Set<Bucket> newBuckets = getBuckets(serviceState, true);
+
+            Set<Bucket> allBuckets = new LinkedHashSet<Bucket>(newBuckets);
+            allBuckets.addAll(oldBuckets);
+            for (Bucket bucket : allBuckets) {
+                bucket.replace(serviceState, newBuckets.contains(bucket));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the candidate services for the given class name and filter.
+     *
+     * The result is a sorted superset of the matching services. The caller must still match the filter
+     * against every candidate.
+     *
+     * @param className The class name or null for all services
+     * @param filter The filter, which must not be null
+     */
+    List<ServiceState> getCandidates(String className, Filter filter) {
+        List<IndexTerm> terms = Collections.emptyList();
+        if (filter instanceof CompiledFilter)
+            terms = ((CompiledFilter) filter).getIndexTerms();
+        else if (filter != NoFilter.INSTANCE)
+            terms = parseTerms(filter.toString());
+
+        ServiceState[] candidates = null;
+        if (className != null)
+            candidates = objectClassIndex.getCandidates(new IndexTerm(objectClassIndex.key, className));
+
+        // Prefer the value terms, the presence sets are only sorted when they are actually used
+        for (IndexTerm term : terms) {
+            if (candidates != null && candidates.length == 0)
+                break;
+            PropertyIndex propIndex = propertyIndexes.get(term.key);
+            if (propIndex != null && term.isPresence() == false) {
+                ServiceState[] aux = propIndex.getCandidates(term);
+                if (candidates == null || aux.length < candidates.length)
+                    candidates = aux;
+            }
+        }
+        if (candidates == null) {
+            for (IndexTerm term : terms) {
+                PropertyIndex propIndex = propertyIndexes.get(term.key);
+                if (propIndex != null && term.isPresence()) {
+                    candidates = propIndex.getCandidates(term);
+                    break;
+                }
+            }
+        }
+        if (candidates == null)
+            candidates = allServices.getServices();
+
+        if (candidates.length == 0)
+            return Collections.emptyList();
+
+        return Collections.unmodifiableList(Arrays.asList(candidates));
+    }
+
+    /**
+     * Get the sets that contain (or must contain) the given service according to its current properties
+     */
+    private Set<Bucket> getBuckets(ServiceState serviceState, boolean create) {
+        Set<Bucket> result = new LinkedHashSet<Bucket>();
+        result.add(allServices);
+        for (PropertyIndex propIndex : propertyIndexes.values()) {
+            propIndex.addBuckets(serviceState, create, result);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the equality and presence terms that a service must satisfy in order to match the given filter.
+     *
+     * Only terms of a top level conjunction (or the filter itself) are considered. Substring terms imply presence.
+     * Disjunctions, negations and ordering terms are not indexed.
+     */
+    static List<IndexTerm> parseTerms(String filterStr) {
+        List<IndexTerm> result = new ArrayList<IndexTerm>();
+        if (filterStr != null) {
+            parseTerms(filterStr.trim(), result);
+        }
+        return result;
+    }
+
+    private static void parseTerms(String filterStr, List<IndexTerm> result) {
+        int length = filterStr.length();
+        if (length < 3 || filterStr.charAt(0) != '(' || filterStr.charAt(length - 1) != ')')
+            return;
+
+        if (filterStr.charAt(1) == '&') {
+            int pos = 2;
+            while (pos < length - 1) {
+                char ch = filterStr.charAt(pos);
+                if (Character.isWhitespace(ch)) {
+                    pos++;
+                    continue;
+                }
+                if (ch != '(')
+                    return;
+                int end = findClosingParen(filterStr, pos);
+                if (end < 0)
+                    return;
+                parseTerms(filterStr.substring(pos, end + 1), result);
+                pos = end + 1;
+            }
+        } else {
+            IndexTerm term = parseSimpleTerm(filterStr.substring(1, length - 1));
+            if (term != null) {
+                result.add(term);
+            }
+        }
+    }
+
+    private static int findClosingParen(String filterStr, int start) {
+        int depth = 0;
+        for (int i = start; i < filterStr.length(); i++) {
+            char ch = filterStr.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '(') {
+                depth++;
+            } else if (ch == ')') {
+                if (--depth == 0)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    private static IndexTerm parseSimpleTerm(String item) {
+        if (item.length() == 0)
+            return null;
+
+        char first = item.charAt(0);
+        if (first == '&' || first == '|' || first == '!')
+            return null;
+
+        int index = item.indexOf('=');
+        if (index < 1)
+            return null;
+
+        char op = item.charAt(index - 1);
+        if (op == '~' || op == '<' || op == '>')
+            return null;
+
+        String key = item.substring(0, index).trim().toLowerCase(Locale.ENGLISH);
+        if (key.length() == 0)
+            return null;
+
+        // Unescape the value and detect wildcards
+        String rawValue = item.substring(index + 1);
+        StringBuilder value = new StringBuilder(rawValue.length());
+        boolean wildcard = false;
+        for (int i = 0; i < rawValue.length(); i++) {
+            char ch = rawValue.charAt(i);
+            if (ch == '\\' && i + 1 < rawValue.length()) {
+                value.append(rawValue.charAt(++i));
+            } else if (ch == '*') {
+                wildcard = true;
+            } else {
+                value.append(ch);
+            }
+        }
+
+        // Presence and substring terms both require the key to be present
+        if (wildcard)
+            return new IndexTerm(key, null);
+
+        return new IndexTerm(key, value.toString().trim());
+    }
+
+    /**
+     * An equality or (if the value is null) presence term of a filter
+     */
+    static final class IndexTerm {
+
+        final String key;
+        final String value;
+
+        IndexTerm(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean isPresence() {
+            return value == null;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + key + "=" + (value != null ? value : "*") + ")";
+        }
+    }
+
+    /**
+     * A set of services that is modified under the write lock and read without locking
+     */
+    private abstract static class Bucket {
+
+        abstract ServiceState[] getServices();
+
+        /**
+         * Remove the service and, if requested, add it again according to its current ranking
+         */
+        abstract void replace(ServiceState serviceState, boolean include);
+    }
+
+    /**
+     * An immutable sorted array of services that is replaced atomically
+     */
+    private static final class ArrayBucket extends Bucket {
+
+        private final ConcurrentMap<String, ArrayBucket> owner;
+        private final String value;
+        private volatile ServiceState[] services = NO_SERVICES;
+
+        ArrayBucket(ConcurrentMap<String, ArrayBucket> owner, String value) {
+            this.owner = owner;
+            this.value = value;
+        }
+
+        @Override
+        ServiceState[] getServices() {
+            return services;
+        }
+
+        /**
+         * Publish a new array that does not contain the service at its previous position and,
+         * if requested, contains it at the position given by its current ranking.
+         */
+        @Override
+        void replace(ServiceState serviceState, boolean include) {
+            ServiceState[] current = services;
+            int oldIndex = indexOf(current, serviceState);
+            int length = current.length - (oldIndex >= 0 ? 1 : 0);
+
+            ServiceState[] aux = current;
+            if (oldIndex >= 0) {
+                aux = new ServiceState[length];
+                System.arraycopy(current, 0, aux, 0, oldIndex);
+                System.arraycopy(current, oldIndex + 1, aux, oldIndex, length - oldIndex);
+            }
+
+            ServiceState[] result = aux;
+            if (include) {
+                int insertIndex = -(Arrays.binarySearch(aux, serviceState, COMPARATOR) + 1);
+                result = new ServiceState[length + 1];
+                System.arraycopy(aux, 0, result, 0, insertIndex);
+                result[insertIndex] = serviceState;
+                System.arraycopy(aux, insertIndex, result, insertIndex + 1, length - insertIndex);
+            }
+
+            services = result;
+
+            // Drop empty value sets from the index
+            if (result.length == 0 && owner != null) {
+                owner.remove(value, this);
+            }
+        }
+
+        // The ranking of the service may have changed since insertion, hence the identity scan
+        private static int indexOf(ServiceState[] services, ServiceState serviceState) {
+            for (int i = 0; i < services.length; i++) {
+                if (services[i] == serviceState)
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A concurrent set of services with a sorted snapshot that is built on the first lookup after a modification.
+     *
+     * Every modification publishes a new (empty) snapshot holder, so that a snapshot which was built concurrently
+     * with the modification can never replace it.
+     */
+    private static final class SnapshotBucket extends Bucket {
+
+        private final Set<ServiceState> members = Collections.newSetFromMap(new ConcurrentHashMap<ServiceState, Boolean>());
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(new Snapshot(NO_SERVICES));
+
+        boolean contains(ServiceState serviceState) {
+            return members.contains(serviceState);
+        }
+
+        @Override
+        ServiceState[] getServices() {
+            while (true) {
+                Snapshot current = snapshot.get();
+                if (current.services != null)
+                    return current.services;
+
+                ServiceState[] result = members.toArray(NO_SERVICES);
+                try {
+                    Arrays.sort(result, COMPARATOR);
+                } catch (IllegalArgumentException ex) {
+                    // A ranking was modified while sorting
+                    continue;
+                }
+                snapshot.compareAndSet(current, new Snapshot(result));
+                return result;
+            }
+        }
+
+        @Override
+        void replace(ServiceState serviceState, boolean include) {
+            if (include) {
+                members.add(serviceState);
+            } else {
+                members.remove(serviceState);
+            }
+            snapshot.set(new Snapshot(null));
+        }
+
+        private static final class Snapshot {
+
+            private final ServiceState[] services;
+
+            Snapshot(ServiceState[] services) {
+                this.services = services;
+            }
+        }
+    }
+
+    /**
+     * The inverted index for a single property key
+     */
+    private static final class PropertyIndex {
+
+        private final String key;
+        private final ConcurrentMap<String, ArrayBucket> byValue = new ConcurrentHashMap<String, ArrayBucket>();
+        // Services that have the key
+        private final SnapshotBucket present = new SnapshotBucket();
+        // Services that have values for the key which are not strings
+        private final ArrayBucket unindexed = new ArrayBucket(null, null);
+
+        PropertyIndex(String key) {
+            this.key = key;
+        }
+
+        void addBuckets(ServiceState serviceState, boolean create, Set<Bucket> result) {
+            Object propValue = serviceState.getPropertyLowerCase(key);
+            if (propValue == null)
+                return;
+
+            result.add(present);
+            for (Object value : getValues(propValue)) {
+                if (value instanceof String) {
+                    String strValue = ((String) value).trim();
+                    ArrayBucket bucket = byValue.get(strValue);
+                    if (bucket == null && create) {
+                        bucket = new ArrayBucket(byValue, strValue);
+                        byValue.put(strValue, bucket);
+                    }
+                    if (bucket != null) {
+                        result.add(bucket);
+                    }
+                } else {
+                    result.add(unindexed);
+                }
+            }
+        }
+
+        ServiceState[] getCandidates(IndexTerm term) {
+            if (term.isPresence())
+                return present.getServices();
+
+            ArrayBucket bucket = byValue.get(term.value);
+            ServiceState[] services = bucket != null ? bucket.getServices() : NO_SERVICES;
+            ServiceState[] others = unindexed.getServices();
+            if (others.length == 0)
+                return services;
+
+            // Services with non-string values must always be considered
+            return merge(services, others);
+        }
+
+        private static ServiceState[] merge(ServiceState[] first, ServiceState[] second) {
+            List<ServiceState> result = new ArrayList<ServiceState>(first.length + second.length);
+            int i = 0, j = 0;
+            while (i < first.length || j < second.length) {
+                if (j == second.length) {
+                    result.add(first[i++]);
+                } else if (i == first.length) {
+                    result.add(second[j++]);
+                } else {
+                    int comp = COMPARATOR.compare(first[i], second[j]);
+                    if (comp == 0) {
+                        result.add(first[i++]);
+                        j++;
+                    } else if (comp < 0) {
+                        result.add(first[i++]);
+                    } else {
+                        result.add(second[j++]);
+                    }
+                }
+            }
+            return result.toArray(new ServiceState[result.size()]);
+        }
+
+        private static List<Object> getValues(Object propValue) {
+            if (propValue instanceof Collection) {
+                return new ArrayList<Object>((Collection<?>) propValue);
+            }
+            if (propValue.getClass().isArray()) {
+                int length = Array.getLength(propValue);
+                List<Object> result = new ArrayList<Object>(length);
+                for (int i = 0; i < length; i++) {
+                    result.add(Array.get(propValue, i));
+                }
+                return result;
+            }
+            return Collections.singletonList(propValue);
+        }
+    }
+}
@@ -35,9 +35,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jboss.msc.service.ServiceName;
 import org.jboss.osgi.metadata.CaseInsensitiveDictionary;
@@ -71,11 +73,16 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
     private final ServiceReference reference;
     private ServiceRegistration registration;
     private Set<AbstractBundleState> usingBundles;
-    private Map<Long, ServiceFactoryHolder> factoryValues;
+    // The ServiceFactory values per using bundle id
+    private final ConcurrentMap<Long, ServiceFactoryHolder> factoryValues;
+    // The last value class that passed the check against the objectClass names
+    private volatile Class<?> validFactoryValueClass;
 
     // The properties
-    private CaseInsensitiveDictionary prevProperties;
-    private CaseInsensitiveDictionary currProperties;
+    private volatile CaseInsensitiveDictionary prevProperties;
+    private volatile CaseInsensitiveDictionary currProperties;
+    private volatile Map<String, Object> lowerCaseProperties;
+    private volatile int serviceRanking;
 
     @SuppressWarnings("unchecked")
     ServiceState(ServiceManagerPlugin serviceManager, XBundle owner, long serviceId, String[] classNames, ValueProvider valueProvider, Dictionary properties) {
@@ -89,6 +96,7 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         this.serviceId = serviceId;
         this.valueProvider = valueProvider;
         this.classNames = classNames;
+        this.factoryValues = valueProvider.isFactoryValue() ? new ConcurrentHashMap<Long, ServiceFactoryHolder>() : null;
 
         if (!valueProvider.isFactoryValue() && !checkValidClassNames(owner, classNames, valueProvider.getValue()))
             throw MESSAGES.illegalArgumentInvalidObjectClass(Arrays.toString(classNames));
@@ -98,7 +106,7 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
 
         properties.put(Constants.SERVICE_ID, serviceId);
         properties.put(Constants.OBJECTCLASS, classNames);
-        this.currProperties = new CaseInsensitiveDictionary(properties);
+        applyProperties(new CaseInsensitiveDictionary(properties));
 
         // Create the {@link ServiceRegistration} and {@link ServiceReference}
         this.registration = new ServiceRegistrationWrapper(this);
@@ -137,14 +145,13 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         // Get the ServiceFactory value
         Object result = null;
         try {
-            if (factoryValues == null)
-                factoryValues = new HashMap<Long, ServiceFactoryHolder>();
-
             ServiceFactoryHolder factoryHolder = getFactoryHolder(bundleState);
             if (factoryHolder == null) {
                 ServiceFactory factory = (ServiceFactory) valueProvider.getValue();
                 factoryHolder = new ServiceFactoryHolder(bundleState, factory);
-                factoryValues.put(bundleState.getBundleId(), factoryHolder);
+                ServiceFactoryHolder existing = factoryValues.putIfAbsent(bundleState.getBundleId(), factoryHolder);
+                if (existing != null)
+                    factoryHolder = existing;
             }
 
             result = factoryHolder.getService();
@@ -189,6 +196,20 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         return registration;
     }
 
+    /**
+     * Check the value returned by a ServiceFactory. The result of a successful check is cached per value class,
+     * the objectClass names of a service cannot change.
+     */
+    private boolean checkValidFactoryValue(Object value) {
+        Class<?> valueClass = value.getClass();
+        if (valueClass == validFactoryValueClass)
+            return true;
+        if (checkValidClassNames(ownerBundle, classNames, value) == false)
+            return false;
+        validFactoryValueClass = valueClass;
+        return true;
+    }
+
     List<String> getClassNames() {
         return Arrays.asList(classNames);
     }
@@ -218,6 +239,13 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         return currProperties.get(key);
     }
 
+    /**
+     * Get a property by its lower case key
+     */
+    Object getPropertyLowerCase(String lowerCaseKey) {
+        return lowerCaseProperties.get(lowerCaseKey);
+    }
+
     @Override
     public String[] getPropertyKeys() {
         List<String> result = new ArrayList<String>();
@@ -234,22 +262,46 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
     public void setProperties(Dictionary properties) {
         assertNotUnregistered();
 
-        // Remember the previous properties for a potential
-        // delivery of the MODIFIED_ENDMATCH event
-        prevProperties = currProperties;
-
         if (properties == null)
             properties = new Hashtable();
 
         properties.put(Constants.SERVICE_ID, currProperties.get(Constants.SERVICE_ID));
         properties.put(Constants.OBJECTCLASS, currProperties.get(Constants.OBJECTCLASS));
-        currProperties = new CaseInsensitiveDictionary(properties);
+
+        // Replace the properties and the ranking in the registry index
+        serviceManager.updateServiceProperties(this, new CaseInsensitiveDictionary(properties));
 
         // This event is synchronously delivered after the service properties have been modified.
         FrameworkEventsPlugin eventsPlugin = serviceManager.getFrameworkEventsPlugin();
         eventsPlugin.fireServiceEvent(ownerBundle, ServiceEvent.MODIFIED, this);
     }
 
+    /**
+     * Replace the current properties. Apart from the constructor, this must only be called by
+     * {@link ServiceRegistryIndex#updateService} while it holds the index write lock.
+     * The ranking determines the order of the indexed services, so the index republishes every
+     * set that contains this service after the properties have been applied. Until then, readers
+     * of such a set may see the new ranking in the old order.
+     */
+    void applyProperties(CaseInsensitiveDictionary properties) {
+        // Remember the previous properties for a potential
+        // delivery of the MODIFIED_ENDMATCH event
+        prevProperties = currProperties;
+        currProperties = properties;
+
+        // The property map used by {@link CompiledFilter}
+        Map<String, Object> lowerCaseMap = new HashMap<String, Object>();
+        Enumeration<String> keys = properties.keys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            lowerCaseMap.put(key.toLowerCase(Locale.ENGLISH), properties.get(key));
+        }
+        lowerCaseProperties = lowerCaseMap;
+
+        Object prop = properties.get(Constants.SERVICE_RANKING);
+        serviceRanking = prop instanceof Integer ? ((Integer) prop).intValue() : 0;
+    }
+
     Dictionary getPreviousProperties() {
         return prevProperties;
     }
@@ -327,6 +379,13 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
             return false;
         }
 
+        XBundleRevision ownerRev = ownerBundle.getBundleRevision();
+        AssignabilityCache assignabilityCache = serviceManager.getAssignabilityCache();
+        Boolean cached = assignabilityCache.get(bundleRev, ownerRev, className);
+        if (cached != null)
+            return cached.booleanValue();
+
+        long generation = assignabilityCache.getGeneration();
         FallbackLoader fallbackLoader = null;
         if (bundleRev instanceof HostBundleRevision) {
             fallbackLoader = ((HostBundleRevision) bundleRev).getFallbackLoader();
@@ -335,13 +394,12 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         Class<?> targetClass;
         try {
             if (fallbackLoader != null) {
+                // Dynamic loads are disabled for the current thread only
+                boolean wasEnabled = fallbackLoader.setEnabled(false);
                 try {
-                    fallbackLoader.lock();
-                    fallbackLoader.setEnabled(false);
                     targetClass = bundleClassLoader.loadClass(className);
                 } finally {
-                    fallbackLoader.setEnabled(true);
-                    fallbackLoader.unlock();
+                    fallbackLoader.setEnabled(wasEnabled);
                 }
             } else {
                 targetClass = bundleClassLoader.loadClass(className);
@@ -350,10 +408,13 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
             // If the requesting bundle does not have a wire to the
             // service package it cannot be constraint on that package.
             LOGGER.tracef("Requesting bundle [%s] cannot load class: %s", bundle, className);
+            // A dynamic import may still wire the requesting bundle to the package
+            if (hasDynamicRequirements(bundleRev) == false) {
+                assignabilityCache.put(bundleRev, ownerRev, className, true, generation);
+            }
             return true;
         }
 
-        XBundleRevision ownerRev = ownerBundle.getBundleRevision();
         ClassLoader ownerClassLoader = ownerRev.getModuleClassLoader();
         if (ownerClassLoader == null) {
             LOGGER.tracef("Registrant bundle [%s] has no class loader for: %s", ownerBundle, className);
@@ -368,17 +429,28 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
             serviceClass = ownerClassLoader.loadClass(className);
         } catch (ClassNotFoundException e) {
             LOGGER.tracef("Registrant bundle [%s] cannot load class: %s", ownerBundle, className);
+            if (hasDynamicRequirements(ownerRev) == false) {
+                assignabilityCache.put(bundleRev, ownerRev, className, true, generation);
+            }
             return true;
         }
 
         // If the package source of the registrant bundle is equal to the package source of the specified bundle
         // then return true; otherwise return false.
-        if (targetClass != serviceClass) {
+        boolean assignable = targetClass == serviceClass;
+        assignabilityCache.put(bundleRev, ownerRev, className, assignable, generation);
+        if (assignable == false) {
             LOGGER.tracef("Not assignable: %s", className);
-            return false;
         }
+        return assignable;
+    }
 
-        return true;
+    private static boolean hasDynamicRequirements(XBundleRevision brev) {
+        if (brev instanceof HostBundleRevision) {
+            FallbackLoader fallbackLoader = ((HostBundleRevision) brev).getFallbackLoader();
+            return fallbackLoader != null && fallbackLoader.hasDynamicRequirements();
+        }
+        return false;
     }
 
     @Override
@@ -391,11 +463,7 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
     }
 
     int getServiceRanking() {
-        Object prop = getProperty(Constants.SERVICE_RANKING);
-        if (prop instanceof Integer == false)
-            return 0;
-
-        return ((Integer) prop).intValue();
+        return serviceRanking;
     }
 
     boolean isUnregistered() {
@@ -455,51 +523,52 @@ final class ServiceState implements ServiceRegistration, ServiceReference {
         Object getValue();
     }
 
+    /**
+     * The ServiceFactory value for one using bundle.
+     *
+     * The holder is its own lock, so that the factory is never called concurrently for the same service and bundle,
+     * while calls for other services or other bundles proceed in parallel.
+     */
     class ServiceFactoryHolder {
 
-        ServiceFactory factory;
-        AbstractBundleState bundleState;
-        AtomicInteger useCount;
-        Object value;
+        final ServiceFactory factory;
+        final AbstractBundleState bundleState;
+        private int useCount;
+        private Object value;
 
         ServiceFactoryHolder(AbstractBundleState bundleState, ServiceFactory factory) {
             this.bundleState = bundleState;
             this.factory = factory;
-            this.useCount = new AtomicInteger();
         }
 
-        Object getService() {
+        synchronized Object getService() {
             // Multiple calls to getService() return the same value
-            if (useCount.get() == 0) {
-                // The Framework must not allow this method to be concurrently called for the same bundle
-                synchronized (bundleState) {
-                    Object retValue = factory.getService(bundleState, getRegistration());
-                    if (retValue == null)
-                        return null;
-
-                    // The Framework will check if the returned service object is an instance of all the
-                    // classes named when the service was registered. If not, then null is returned to the bundle.
-                    if (checkValidClassNames(ownerBundle, (String[]) getProperty(Constants.OBJECTCLASS), retValue) == false)
-                        return null;
-
-                    value = retValue;
-                }
+            if (useCount == 0) {
+                Object retValue = factory.getService(bundleState, getRegistration());
+                if (retValue == null)
+                    return null;
+
+                // The Framework will check if the returned service object is an instance of all the
+                // classes named when the service was registered. If not, then null is returned to the bundle.
+                if (checkValidFactoryValue(retValue) == false)
+                    return null;
+
+                value = retValue;
             }
 
-            useCount.incrementAndGet();
+            useCount++;
             return value;
         }
 
-        void ungetService() {
-            if (useCount.get() == 0)
+        synchronized void ungetService() {
+            if (useCount == 0)
                 return;
 
             // Call unget on the factory when done
-            if (useCount.decrementAndGet() == 0) {
-                synchronized (bundleState) {
-                    factory.ungetService(bundleState, getRegistration(), value);
-                    value = null;
-                }
+            if (--useCount == 0) {
+                Object retValue = value;
+                value = null;
+                factory.ungetService(bundleState, getRegistration(), retValue);
             }
         }
     }
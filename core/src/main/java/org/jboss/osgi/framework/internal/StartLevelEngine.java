@@ -0,0 +1,219 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the bundles of a start level.
+ *
+ * Without an executor the bundles are started one after the other in ascending bundle id order. With an
+ * executor bundles are started concurrently and the call returns when all bundles of the level have been
+ * started. If wiring order is enabled, a bundle is only started after the bundles of the same level it is
+ * wired to. Resolved bundles that form a cycle are started in bundle id order.
+ *
+ * The number of started bundles, the time it took and the slowest activation of every level are logged.
+ *
+ * @since 18-Oct-2026
+ */
+final class StartLevelEngine {
+
+    interface BundleStarter {
+
+        /**
+         * Start the given bundle, reporting failures as framework events
+         */
+        void startBundle(HostBundleState hostBundle);
+    }
+
+    private static final Comparator<HostBundleState> BUNDLE_ID_ORDER = new Comparator<HostBundleState>() {
+        @Override
+        public int compare(HostBundleState b1, HostBundleState b2) {
+            long id1 = b1.getBundleId();
+            long id2 = b2.getBundleId();
+            return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+        }
+    };
+
+    private final ExecutorService executor;
+    private final boolean wiringOrder;
+
+    StartLevelEngine(ExecutorService executor, boolean wiringOrder) {
+        this.executor = executor;
+        this.wiringOrder = wiringOrder;
+    }
+
+    boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Start the given bundles and wait until all of them have been started
+     */
+    void startBundles(int level, List<HostBundleState> bundles, BundleStarter starter) {
+        List<HostBundleState> sorted = new ArrayList<HostBundleState>(bundles);
+        Collections.sort(sorted, BUNDLE_ID_ORDER);
+
+        ConcurrentMap<HostBundleState, Long> activationTimes = new ConcurrentHashMap<HostBundleState, Long>();
+        long start = System.nanoTime();
+        if (executor == null || sorted.size() < 2) {
+            for (HostBundleState hostBundle : sorted) {
+                timedStart(hostBundle, starter, activationTimes);
+            }
+        } else {
+            parallelStart(sorted, starter, activationTimes);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        HostBundleState slowest = null;
+        long slowestMillis = -1;
+        for (HostBundleState hostBundle : sorted) {
+            Long time = activationTimes.get(hostBundle);
+            if (time != null && time > slowestMillis) {
+                slowest = hostBundle;
+                slowestMillis = time;
+            }
+        }
+        if (slowest != null) {
+            LOGGER.debugf("Started %d bundles for start level %d in %d ms, slowest: %s (%d ms)", sorted.size(), level, millis, slowest, slowestMillis);
+        }
+    }
+
+    private void parallelStart(List<HostBundleState> sorted, final BundleStarter starter, final ConcurrentMap<HostBundleState, Long> activationTimes) {
+
+        // Build the dependencies between the bundles of this level
+        Set<HostBundleState> batch = new HashSet<HostBundleState>(sorted);
+        Map<HostBundleState, Set<HostBundleState>> dependencies = new HashMap<HostBundleState, Set<HostBundleState>>();
+        Map<HostBundleState, List<HostBundleState>> dependents = new HashMap<HostBundleState, List<HostBundleState>>();
+        for (HostBundleState hostBundle : sorted) {
+            Set<HostBundleState> required = new HashSet<HostBundleState>();
+            if (wiringOrder) {
+                for (UserBundleState provider : hostBundle.getDependentBundles()) {
+                    if (provider != hostBundle && batch.contains(provider)) {
+                        HostBundleState providerHost = (HostBundleState) provider;
+                        required.add(providerHost);
+                        List<HostBundleState> list = dependents.get(providerHost);
+                        if (list == null) {
+                            list = new ArrayList<HostBundleState>();
+                            dependents.put(providerHost, list);
+                        }
+                        list.add(hostBundle);
+                    }
+                }
+            }
+            dependencies.put(hostBundle, required);
+        }
+
+        final BlockingQueue<HostBundleState> completed = new LinkedBlockingQueue<HostBundleState>();
+        List<HostBundleState> pending = new ArrayList<HostBundleState>(sorted);
+        boolean interrupted = false;
+        int running = 0;
+        while (pending.isEmpty() == false || running > 0) {
+
+            // Submit every bundle that does not wait for another one
+            List<HostBundleState> ready = new ArrayList<HostBundleState>();
+            Iterator<HostBundleState> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                HostBundleState hostBundle = iterator.next();
+                if (dependencies.get(hostBundle).isEmpty()) {
+                    ready.add(hostBundle);
+                    iterator.remove();
+                }
+            }
+
+            // Break a dependency cycle with the lowest bundle id
+            if (ready.isEmpty() && running == 0) {
+                ready.add(pending.remove(0));
+            }
+
+            for (final HostBundleState hostBundle : ready) {
+                Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            timedStart(hostBundle, starter, activationTimes);
+                        } finally {
+                            completed.add(hostBundle);
+                        }
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException ex) {
+                    task.run();
+                }
+                running++;
+            }
+
+            // Wait for the next bundle to complete
+            if (running > 0) {
+                HostBundleState done = null;
+                while (done == null) {
+                    try {
+                        done = completed.take();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                running--;
+                List<HostBundleState> waiting = dependents.get(done);
+                if (waiting != null) {
+                    for (HostBundleState hostBundle : waiting) {
+                        dependencies.get(hostBundle).remove(done);
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void timedStart(HostBundleState hostBundle, BundleStarter starter, ConcurrentMap<HostBundleState, Long> activationTimes) {
+        long start = System.nanoTime();
+        try {
+            starter.startBundle(hostBundle);
+        } finally {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            activationTimes.put(hostBundle, millis);
+            LOGGER.debugf("Activated %s in %d ms", hostBundle, millis);
+        }
+    }
+}
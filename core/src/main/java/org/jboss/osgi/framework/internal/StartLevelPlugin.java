@@ -24,7 +24,10 @@ package org.jboss.osgi.framework.internal;
 import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
 import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -39,12 +42,14 @@ import org.jboss.msc.value.InjectedValue;
 import org.jboss.osgi.framework.Services;
 import org.jboss.osgi.framework.StorageState;
 import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.launch.Framework;
+import org.osgi.service.resolver.ResolutionException;
 import org.osgi.service.startlevel.StartLevel;
 
 /**
@@ -60,9 +65,12 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
     private final InjectedValue<SystemBundleState> injectedSystemBundle = new InjectedValue<SystemBundleState>();
     private final InjectedValue<FrameworkEventsPlugin> injectedFrameworkEvents = new InjectedValue<FrameworkEventsPlugin>();
 
-    private int initialBundleStartLevel = 1; // Synchronized on this
+    // Bundle activators may call back into this service while a start level change is in progress
+    private volatile int initialBundleStartLevel = 1;
     private ServiceRegistration registration;
-    private int startLevel = 0; // Synchronized on this
+    private volatile int startLevel = 0; // Modified while synchronized on this
+    private ExecutorService workerService;
+    private StartLevelEngine startLevelEngine;
 
     static void addService(ServiceTarget serviceTarget) {
         StartLevelPlugin service = new StartLevelPlugin();
@@ -81,6 +89,24 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
     @Override
     public void start(StartContext context) throws StartException {
         super.start(context);
+        BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
+        Object value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STARTLEVEL_PARALLELISM);
+        int parallelism = value != null ? new Integer("" + value) : 1;
+        value = bundleManager.getProperty(org.jboss.osgi.framework.Constants.PROPERTY_STARTLEVEL_WIRING_ORDER);
+        boolean wiringOrder = value != null ? Boolean.parseBoolean("" + value) : true;
+        if (parallelism > 1) {
+            workerService = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private int count;
+                @Override
+                public synchronized Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run);
+                    thread.setName("OSGi StartLevel Worker Thread-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        startLevelEngine = new StartLevelEngine(workerService, wiringOrder);
         BundleContext systemContext = injectedSystemBundle.getValue().getBundleContext();
         registration = systemContext.registerService(StartLevel.class.getName(), this, null);
     }
@@ -90,6 +116,10 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
         super.stop(context);
         registration.unregister();
         registration = null;
+        if (workerService != null) {
+            workerService.shutdown();
+            workerService = null;
+        }
     }
 
     @Override
@@ -111,12 +141,12 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
     }
 
     @Override
-    public synchronized int getStartLevel() {
+    public int getStartLevel() {
         return startLevel;
     }
 
     @Override
-    public synchronized void setStartLevel(final int level) {
+    public void setStartLevel(final int level) {
         final FrameworkEventsPlugin eventsPlugin = injectedFrameworkEvents.getValue();
         final AbstractBundleState bundleState = injectedSystemBundle.getValue();
         if (level > getStartLevel()) {
@@ -202,12 +232,12 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
     }
 
     @Override
-    public synchronized int getInitialBundleStartLevel() {
+    public int getInitialBundleStartLevel() {
         return initialBundleStartLevel;
     }
 
     @Override
-    public synchronized void setInitialBundleStartLevel(int startlevel) {
+    public void setInitialBundleStartLevel(int startlevel) {
         initialBundleStartLevel = startlevel;
     }
 
@@ -236,32 +266,66 @@ public final class StartLevelPlugin extends AbstractExecutorService<StartLevel>
     /**
      * Increases the Start Level of the Framework in the current thread.
      *
+     * The bundles of a start level may be started concurrently, see {@link StartLevelEngine}
+     *
      * @param level the target Start Level to which the Framework should move.
      */
     synchronized void increaseStartLevel(int level) {
         BundleManagerPlugin bundleManager = injectedBundleManager.getValue();
         Collection<XBundle> bundles = bundleManager.getBundles();
+        StartLevelEngine.BundleStarter starter = new StartLevelEngine.BundleStarter() {
+            @Override
+            public void startBundle(HostBundleState hostBundle) {
+                try {
+                    int opts = Bundle.START_TRANSIENT;
+                    if (isBundleActivationPolicyUsed(hostBundle)) {
+                        opts |= Bundle.START_ACTIVATION_POLICY;
+                    }
+                    hostBundle.start(opts);
+                } catch (Throwable e) {
+                    FrameworkEventsPlugin eventsPlugin = injectedFrameworkEvents.getValue();
+                    eventsPlugin.fireFrameworkEvent(hostBundle, FrameworkEvent.ERROR, e);
+                }
+            }
+        };
         while (startLevel < level) {
             startLevel++;
             LOGGER.infoStartingBundlesForStartLevel(startLevel);
+            List<HostBundleState> levelBundles = new ArrayList<HostBundleState>();
             for (Bundle bundle : bundles) {
                 if (!(bundle instanceof HostBundleState))
                     continue;
 
                 HostBundleState hostBundle = (HostBundleState) bundle;
                 if (hostBundle.getStartLevel() == startLevel && hostBundle.isPersistentlyStarted()) {
-                    try {
-                        int opts = Bundle.START_TRANSIENT;
-                        if (isBundleActivationPolicyUsed(bundle)) {
-                            opts |= Bundle.START_ACTIVATION_POLICY;
-                        }
-                        bundle.start(opts);
-                    } catch (Throwable e) {
-                        FrameworkEventsPlugin eventsPlugin = injectedFrameworkEvents.getValue();
-                        eventsPlugin.fireFrameworkEvent(bundle, FrameworkEvent.ERROR, e);
-                    }
+                    levelBundles.add(hostBundle);
                 }
             }
+            if (startLevelEngine.isParallel() && levelBundles.size() > 1) {
+                resolveBundles(levelBundles);
+            }
+            startLevelEngine.startBundles(startLevel, levelBundles, starter);
+        }
+    }
+
+    /**
+     * Resolve the unresolved bundles of a start level in one go, so that their wiring is known
+     * before they are started concurrently. Bundles that cannot be resolved fail when started.
+     */
+    private void resolveBundles(List<HostBundleState> levelBundles) {
+        List<XBundleRevision> unresolved = new ArrayList<XBundleRevision>();
+        for (HostBundleState hostBundle : levelBundles) {
+            if (hostBundle.isResolved() == false) {
+                unresolved.add(hostBundle.getBundleRevision());
+            }
+        }
+        if (unresolved.isEmpty() == false) {
+            try {
+                ResolverPlugin resolverPlugin = levelBundles.get(0).getFrameworkState().getResolverPlugin();
+                resolverPlugin.resolveAndApply(Collections.<XBundleRevision> emptyList(), unresolved);
+            } catch (ResolutionException ex) {
+                LOGGER.debugf(ex, "Cannot resolve bundles for start level: %d", startLevel);
+            }
         }
     }
 
@@ -0,0 +1,337 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.jboss.osgi.framework.internal.StorageStateWriter.FsyncPolicy;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * An append-only journal that holds the persistent properties of all bundle storage states in a single file.
+ *
+ * The file starts with a magic number and version, followed by records of the form
+ * <pre>
+ * type(byte) bundleId(long) length(int) payload(byte[length]) crc32(long)
+ * </pre>
+ * A PUT record carries the complete properties of a bundle, a DELETE record has an empty payload. On load the records
+ * are read sequentially, later records replace earlier ones. A truncated or corrupt record ends the journal, it is
+ * discarded together with everything after it.
+ *
+ * When the journal holds many more records than live bundles it is compacted into a new file that is renamed over
+ * the journal.
+ *
+ * @since 18-Oct-2026
+ */
+final class StorageJournal {
+
+    static final String JOURNAL_FILE_NAME = "storage.journal";
+
+    static final int MAGIC = 0x4F534A4C;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+
+    static final byte TYPE_PUT = 1;
+    static final byte TYPE_DELETE = 2;
+
+    static final int DEFAULT_COMPACT_THRESHOLD = 1024;
+
+    private final File journalFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final int compactThreshold;
+    // The serialized properties of the live bundles
+    private final Map<Long, byte[]> liveRecords = new LinkedHashMap<Long, byte[]>();
+    private RandomAccessFile journal;
+    private int recordCount;
+    private int compactionCount;
+
+    StorageJournal(File journalFile, FsyncPolicy fsyncPolicy, int compactThreshold) {
+        this.journalFile = journalFile;
+        this.fsyncPolicy = fsyncPolicy;
+        this.compactThreshold = compactThreshold;
+    }
+
+    File getJournalFile() {
+        return journalFile;
+    }
+
+    boolean exists() {
+        File tempFile = new File(journalFile.getPath() + StorageStateWriter.TEMP_FILE_SUFFIX);
+        return journalFile.isFile() || tempFile.isFile();
+    }
+
+    /**
+     * Read the journal and open it for appending.
+     *
+     * @return the properties of the live bundles by bundle id
+     */
+    synchronized Map<Long, Properties> open() throws IOException {
+        liveRecords.clear();
+        recordCount = 0;
+
+        // A compaction was interrupted between deleting and renaming
+        File tempFile = new File(journalFile.getPath() + StorageStateWriter.TEMP_FILE_SUFFIX);
+        if (journalFile.exists() == false && tempFile.isFile()) {
+            tempFile.renameTo(journalFile);
+        }
+
+        long validLength = HEADER_LENGTH;
+        if (journalFile.isFile()) {
+            byte[] bytes = readFully(journalFile);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < HEADER_LENGTH) {
+                // A journal that was created but never got its header cannot hold any records
+                validLength = 0;
+            } else if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                // Never truncate a file that may hold bundle state in an unknown format
+                throw MESSAGES.cannotReadStorageJournal(journalFile);
+            } else {
+                while (true) {
+                    int offset = bytes.length - input.available();
+                    try {
+                        byte type = input.readByte();
+                        long bundleId = input.readLong();
+                        int length = input.readInt();
+                        if (length < 0 || length > input.available()) {
+                            break;
+                        }
+                        byte[] payload = new byte[length];
+                        input.readFully(payload);
+                        long checksum = input.readLong();
+                        if (checksum != checksum(bytes, offset, 1 + 8 + 4 + length)) {
+                            break;
+                        }
+                        if (type == TYPE_PUT) {
+                            liveRecords.put(bundleId, payload);
+                        } else if (type == TYPE_DELETE) {
+                            liveRecords.remove(bundleId);
+                        } else {
+                            break;
+                        }
+                        recordCount++;
+                        validLength = bytes.length - input.available();
+                    } catch (EOFException ex) {
+                        break;
+                    }
+                }
+                if (validLength < bytes.length) {
+                    LOGGER.warnDiscardingStorageJournalRecords(bytes.length - validLength, journalFile);
+                }
+            }
+        } else {
+            validLength = 0;
+        }
+
+        journalFile.getParentFile().mkdirs();
+        journal = new RandomAccessFile(journalFile, "rw");
+        if (validLength == 0) {
+            journal.setLength(0);
+            journal.writeInt(MAGIC);
+            journal.writeInt(VERSION);
+        } else {
+            journal.setLength(validLength);
+            journal.seek(validLength);
+        }
+
+        Map<Long, Properties> result = new LinkedHashMap<Long, Properties>();
+        for (Map.Entry<Long, byte[]> entry : liveRecords.entrySet()) {
+            result.put(entry.getKey(), readProperties(entry.getValue()));
+        }
+        LOGGER.debugf("Opened storage journal %s with %d records for %d bundles", journalFile, recordCount, result.size());
+        return result;
+    }
+
+    /**
+     * Get the properties of the given bundle, or an empty properties object.
+     */
+    synchronized Properties getProperties(long bundleId) throws IOException {
+        byte[] payload = liveRecords.get(bundleId);
+        return payload != null ? readProperties(payload) : new Properties();
+    }
+
+    synchronized void put(long bundleId, Properties props) throws IOException {
+        byte[] payload = writeProperties(props);
+        append(TYPE_PUT, bundleId, payload);
+        liveRecords.put(bundleId, payload);
+    }
+
+    synchronized void delete(long bundleId) throws IOException {
+        if (liveRecords.remove(bundleId) != null) {
+            append(TYPE_DELETE, bundleId, new byte[0]);
+        }
+    }
+
+    private void append(byte type, long bundleId, byte[] payload) throws IOException {
+        if (journal == null)
+            throw new IOException("Storage journal not open: " + journalFile);
+
+        journal.write(createRecord(type, bundleId, payload));
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            journal.getFD().sync();
+        }
+        recordCount++;
+        if (recordCount > compactThreshold && recordCount > 2 * liveRecords.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the journal with a single record per live bundle.
+     */
+    synchronized void compact() throws IOException {
+        File tempFile = new File(journalFile.getPath() + StorageStateWriter.TEMP_FILE_SUFFIX);
+        FileOutputStream output = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream dos = new DataOutputStream(output);
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            for (Map.Entry<Long, byte[]> entry : liveRecords.entrySet()) {
+                dos.write(createRecord(TYPE_PUT, entry.getKey(), entry.getValue()));
+            }
+            dos.flush();
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                output.getFD().sync();
+            }
+        } finally {
+            VFSUtils.safeClose(output);
+        }
+
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        try {
+            // Some platforms cannot rename onto an existing file
+            if (tempFile.renameTo(journalFile) == false) {
+                journalFile.delete();
+                if (tempFile.renameTo(journalFile) == false) {
+                    throw new IOException("Cannot rename " + tempFile + " to " + journalFile);
+                }
+            }
+        } finally {
+            // Otherwise the temporary file is the valid journal, see {@link #open()}
+            if (journalFile.isFile()) {
+                journal = new RandomAccessFile(journalFile, "rw");
+                journal.seek(journal.length());
+            }
+        }
+        recordCount = liveRecords.size();
+        compactionCount++;
+        LOGGER.debugf("Compacted storage journal %s to %d records", journalFile, recordCount);
+    }
+
+    synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            journal = null;
+        }
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    synchronized int getCompactionCount() {
+        return compactionCount;
+    }
+
+    private static byte[] createRecord(byte type, long bundleId, byte[] payload) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1 + 8 + 4 + payload.length + 8);
+        DataOutputStream output = new DataOutputStream(baos);
+        output.writeByte(type);
+        output.writeLong(bundleId);
+        output.writeInt(payload.length);
+        output.write(payload);
+        output.flush();
+        byte[] bytes = baos.toByteArray();
+        output.writeLong(checksum(bytes, 0, bytes.length));
+        output.close();
+        return baos.toByteArray();
+    }
+
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    static byte[] writeProperties(Properties props) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        DataOutputStream output = new DataOutputStream(baos);
+        Set<String> names = props.stringPropertyNames();
+        output.writeInt(names.size());
+        for (String key : names) {
+            output.writeUTF(key);
+            output.writeUTF(props.getProperty(key));
+        }
+        output.close();
+        return baos.toByteArray();
+    }
+
+    static Properties readProperties(byte[] payload) throws IOException {
+        Properties props = new Properties();
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = input.readUTF();
+            props.setProperty(key, input.readUTF());
+        }
+        return props;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StorageJournal[" + journalFile + ",records=" + recordCount + ",compactions=" + compactionCount + "]";
+    }
+}
@@ -0,0 +1,282 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkLogger.LOGGER;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.framework.internal.BundleStoragePlugin.InternalStorageState;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * Writes the persistent properties of bundle storage states.
+ *
+ * Every write goes to a temporary file that replaces the properties file by rename. With the {@link FsyncPolicy#ALWAYS}
+ * policy the temporary file is forced to disk before the rename, so that a crash leaves either the previous or the
+ * new properties behind. With {@link FsyncPolicy#NEVER} the rename may reach the disk before the file content,
+ * so that a power loss can leave an empty properties file behind.
+ *
+ * With a {@link StorageJournal} the properties are appended to the journal instead.
+ *
+ * In write-behind mode modified storage states are only marked dirty. A background thread flushes them
+ * periodically, so that repeated modifications of the same storage state result in a single write.
+ *
+ * @since 18-Oct-2026
+ */
+final class StorageStateWriter {
+
+    static final long DEFAULT_FLUSH_INTERVAL = 200;
+
+    // Writes are forced to disk by default, because a rename without fsync is not crash consistent
+    static final FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.ALWAYS;
+
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    enum FsyncPolicy {
+        ALWAYS, NEVER
+    }
+
+    private final boolean writeBehind;
+    private final long flushInterval;
+    private final FsyncPolicy fsyncPolicy;
+    private final StorageJournal journal;
+    private final Set<InternalStorageState> dirtyStates = new LinkedHashSet<InternalStorageState>();
+    private ScheduledExecutorService executor;
+    private boolean flushScheduled;
+
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushTime = new AtomicLong();
+    private final AtomicLong maxFlushTime = new AtomicLong();
+
+    StorageStateWriter(boolean writeBehind, long flushInterval, FsyncPolicy fsyncPolicy) {
+        this(writeBehind, flushInterval, fsyncPolicy, null);
+    }
+
+    StorageStateWriter(boolean writeBehind, long flushInterval, FsyncPolicy fsyncPolicy, StorageJournal journal) {
+        this.writeBehind = writeBehind;
+        this.flushInterval = flushInterval;
+        this.fsyncPolicy = fsyncPolicy;
+        this.journal = journal;
+        if (writeBehind) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable run) {
+                    Thread thread = new Thread(run);
+                    thread.setName("OSGi Storage Writer Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    StorageJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Persist the properties of the given storage state, either now or with the next flush
+     */
+    void markDirty(InternalStorageState storageState) {
+        synchronized (dirtyStates) {
+            // Without a background writer the properties are written immediately
+            if (executor == null) {
+                dirtyStates.remove(storageState);
+            } else {
+                if (dirtyStates.add(storageState) == false) {
+                    coalescedCount.incrementAndGet();
+                }
+                if (flushScheduled == false) {
+                    flushScheduled = true;
+                    executor.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, flushInterval, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        write(storageState);
+    }
+
+    /**
+     * Discard a pending write for the given storage state
+     */
+    void cancel(InternalStorageState storageState) {
+        synchronized (dirtyStates) {
+            dirtyStates.remove(storageState);
+        }
+    }
+
+    /**
+     * Write all dirty storage states
+     */
+    void flush() {
+        List<InternalStorageState> states;
+        synchronized (dirtyStates) {
+            flushScheduled = false;
+            if (dirtyStates.isEmpty())
+                return;
+            states = new ArrayList<InternalStorageState>(dirtyStates);
+            dirtyStates.clear();
+        }
+        long start = System.nanoTime();
+        for (InternalStorageState storageState : states) {
+            write(storageState);
+        }
+        long flushTime = System.nanoTime() - start;
+        flushCount.incrementAndGet();
+        totalFlushTime.addAndGet(flushTime);
+        long max = maxFlushTime.get();
+        while (flushTime > max && !maxFlushTime.compareAndSet(max, flushTime)) {
+            max = maxFlushTime.get();
+        }
+        LOGGER.debugf("Flushed %d storage states in %dms", states.size(), TimeUnit.NANOSECONDS.toMillis(flushTime));
+    }
+
+    /**
+     * Flush all dirty storage states and stop the background thread
+     */
+    void shutdown() {
+        synchronized (dirtyStates) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Write the properties of the given storage state now
+     */
+    void write(InternalStorageState storageState) {
+        // Synchronize with the deletion of the storage state
+        synchronized (storageState) {
+            if (storageState.isDeleted())
+                return;
+            try {
+                if (journal != null) {
+                    journal.put(storageState.getBundleId(), storageState.getProperties());
+                } else {
+                    writeProperties(storageState.getStorageDir(), storageState.getProperties(), fsyncPolicy);
+                }
+                writeCount.incrementAndGet();
+            } catch (IOException ex) {
+                LOGGER.errorCannotWritePersistentStorage(ex, storageState.getStorageDir());
+            }
+        }
+    }
+
+    static void writeProperties(File storageDir, Properties props, FsyncPolicy fsyncPolicy) throws IOException {
+        File propsFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES);
+        File tempFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES + TEMP_FILE_SUFFIX);
+        FileOutputStream output = new FileOutputStream(tempFile);
+        try {
+            props.store(output, "Persistent Bundle Properties");
+            output.flush();
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                output.getFD().sync();
+            }
+        } finally {
+            VFSUtils.safeClose(output);
+        }
+
+        // Some platforms cannot rename onto an existing file. In that case the temporary
+        // file is the valid one until the rename completes, see {@link #getPropertiesFile(File)}
+        if (tempFile.renameTo(propsFile) == false) {
+            propsFile.delete();
+            if (tempFile.renameTo(propsFile) == false) {
+                throw new IOException("Cannot rename " + tempFile + " to " + propsFile);
+            }
+        }
+    }
+
+    /**
+     * Get the properties file to read for the given storage dir, which is the temporary file
+     * if a previous write was interrupted between deleting and renaming
+     */
+    static File getPropertiesFile(File storageDir) {
+        File propsFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES);
+        File tempFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES + TEMP_FILE_SUFFIX);
+        return propsFile.exists() == false && tempFile.exists() ? tempFile : propsFile;
+    }
+
+    int getDirtyCount() {
+        synchronized (dirtyStates) {
+            return dirtyStates.size();
+        }
+    }
+
+    long getWriteCount() {
+        return writeCount.get();
+    }
+
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    long getTotalFlushTime(TimeUnit unit) {
+        return unit.convert(totalFlushTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    long getMaxFlushTime(TimeUnit unit) {
+        return unit.convert(maxFlushTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "StorageStateWriter[writeBehind=" + writeBehind + ",fsync=" + fsyncPolicy + ",journal=" + (journal != null) + ",writes=" + writeCount + ",coalesced=" + coalescedCount
+                + ",flushes=" + flushCount + ",maxFlush=" + getMaxFlushTime(TimeUnit.MILLISECONDS) + "ms]";
+    }
+}
@@ -40,7 +40,6 @@ import java.security.PrivilegedAction;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Hashtable;
-import java.util.List;
 
 import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceController.Mode;
@@ -167,20 +166,15 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
             @Override
             public Object addingService(ServiceReference reference) {
                 Object service = super.addingService(reference);
-                String[] mimeTypes = parseServiceProperty(reference.getProperty(URLConstants.URL_CONTENT_MIMETYPE));
-                if (mimeTypes != null && service instanceof ContentHandler) {
-                    LOGGER.debugf("Adding content handler '%s' for: %s", service, Arrays.asList(mimeTypes));
-                    for (String mimeType : mimeTypes) {
-                        contentHandlerDelegate.addHandler(mimeType, reference);
-                    }
-                }
+                addContentHandler(reference, service);
                 return service;
             }
 
             @Override
             public void modifiedService(ServiceReference reference, Object service) {
-                removedService(reference, service);
-                addingService(reference);
+                // The mime types may have changed, the service object stays the same
+                contentHandlerDelegate.removeHandler(reference);
+                addContentHandler(reference, service);
             }
 
             @Override
@@ -192,6 +186,16 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
         contentServiceTracker.open();
     }
 
+    private void addContentHandler(ServiceReference reference, Object service) {
+        String[] mimeTypes = parseServiceProperty(reference.getProperty(URLConstants.URL_CONTENT_MIMETYPE));
+        if (mimeTypes != null && service instanceof ContentHandler) {
+            LOGGER.debugf("Adding content handler '%s' for: %s", service, Arrays.asList(mimeTypes));
+            for (String mimeType : mimeTypes) {
+                contentHandlerDelegate.addHandler(mimeType, reference, (ContentHandler) service);
+            }
+        }
+    }
+
     private void setupStreamHandlerTracker() {
         BundleContext systemContext = injectedSystemContext.getValue();
         streamServiceTracker = new ServiceTracker(systemContext, URLStreamHandlerService.class.getName(), null) {
@@ -199,20 +203,15 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
             @Override
             public Object addingService(ServiceReference reference) {
                 Object service = super.addingService(reference);
-                String[] protocols = parseServiceProperty(reference.getProperty(URLConstants.URL_HANDLER_PROTOCOL));
-                if (protocols != null && service instanceof URLStreamHandlerService) {
-                    LOGGER.tracef("Adding stream handler '%s' for: %s", service, Arrays.asList(protocols));
-                    for (String protocol : protocols) {
-                        streamHandlerDelegate.addHandler(protocol, reference);
-                    }
-                }
+                addStreamHandler(reference, service);
                 return service;
             }
 
             @Override
             public void modifiedService(ServiceReference reference, Object service) {
-                removedService(reference, service);
-                addingService(reference);
+                // The protocols may have changed, the service object stays the same
+                streamHandlerDelegate.removeHandler(reference);
+                addStreamHandler(reference, service);
             }
 
             @Override
@@ -224,17 +223,27 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
         streamServiceTracker.open();
     }
 
+    private void addStreamHandler(ServiceReference reference, Object service) {
+        String[] protocols = parseServiceProperty(reference.getProperty(URLConstants.URL_HANDLER_PROTOCOL));
+        if (protocols != null && service instanceof URLStreamHandlerService) {
+            LOGGER.tracef("Adding stream handler '%s' for: %s", service, Arrays.asList(protocols));
+            for (String protocol : protocols) {
+                streamHandlerDelegate.addHandler(protocol, reference, (URLStreamHandlerService) service);
+            }
+        }
+    }
+
     /**
      * Creates a new <code>URLStreamHandler</code> instance with the specified protocol.
      *
      * @see java.net.URLStreamHandler
      */
     public URLStreamHandler createURLStreamHandler(String protocol) {
-        List<ServiceReference> refList = streamHandlerDelegate.getStreamHandlers(protocol);
-        if (refList == null || refList.isEmpty())
+        URLHandlerRegistry<URLStreamHandlerService> registry = streamHandlerDelegate.getStreamHandlers();
+        if (registry.getHandlers(protocol).isEmpty())
             return null;
 
-        return new URLStreamHandlerProxy(protocol, refList);
+        return new URLStreamHandlerProxy(protocol, registry);
     }
 
     /**
@@ -244,16 +253,7 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
      * @see java.net.URLStreamHandler
      */
     public ContentHandler createContentHandler(String mimetype) {
-        List<ServiceReference> refList = contentHandlerDelegate.getContentHandlers(mimetype);
-        if (refList == null || refList.isEmpty())
-            return null;
-
-        ServiceReference ref = refList.get(0);
-        Object service = ref.getBundle().getBundleContext().getService(ref);
-        if (service instanceof ContentHandler)
-            return (ContentHandler) service;
-
-        return null;
+        return contentHandlerDelegate.getContentHandlers().getHandlerService(mimetype);
     }
 
     /**
@@ -277,14 +277,15 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
 
     private static final class URLStreamHandlerProxy extends URLStreamHandler implements URLStreamHandlerSetter {
 
-        // This list is maintained in the ServiceTracker that tracks the URLStreamHandlerService
-        // This proxy should always use to top element (if it contains any elements).
-        private final List<ServiceReference> serviceReferences;
+        // The java.net.URL class caches this proxy for the lifetime of the VM. It always uses the
+        // highest ranked handler service that is currently in the registry.
+        private final URLHandlerRegistry<URLStreamHandlerService> registry;
         private final String protocol;
+        private volatile OpenConnectionHandle openConnectionHandle;
 
-        public URLStreamHandlerProxy(String protocol, List<ServiceReference> refList) {
+        public URLStreamHandlerProxy(String protocol, URLHandlerRegistry<URLStreamHandlerService> registry) {
             this.protocol = protocol;
-            this.serviceReferences = refList;
+            this.registry = registry;
         }
 
         @Override
@@ -318,9 +319,15 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
         @Override
         protected URLConnection openConnection(URL u, Proxy p) throws IOException {
             URLStreamHandlerService handler = getHandlerService();
+            OpenConnectionHandle handle = openConnectionHandle;
+            if (handle == null || handle.handlerClass != handler.getClass()) {
+                handle = new OpenConnectionHandle(handler.getClass());
+                openConnectionHandle = handle;
+            }
             try {
-                Method method = handler.getClass().getDeclaredMethod("openConnection", URL.class, Proxy.class);
-                return (URLConnection) method.invoke(handler, u, p);
+                if (handle.method == null)
+                    throw handle.failure;
+                return (URLConnection) handle.method.invoke(handler, u, p);
             } catch (Throwable th) {
                 if (th instanceof InvocationTargetException)
                     th = ((InvocationTargetException)th).getTargetException();
@@ -359,11 +366,33 @@ final class URLHandlerPlugin extends AbstractPluginService<URLHandlerPlugin> imp
         }
 
         private URLStreamHandlerService getHandlerService() {
-            if (serviceReferences.isEmpty())
+            URLStreamHandlerService service = registry.getHandlerService(protocol);
+            if (service == null)
                 throw MESSAGES.illegalStateNoStreamHandlersForProtocol(protocol);
-            ServiceReference ref = serviceReferences.get(0);
-            Object service = ref.getBundle().getBundleContext().getService(ref);
-            return (URLStreamHandlerService) service;
+            return service;
+        }
+    }
+
+    /**
+     * The reflective openConnection(URL, Proxy) method of a handler class, looked up once
+     */
+    private static final class OpenConnectionHandle {
+
+        private final Class<?> handlerClass;
+        private final Method method;
+        private final NoSuchMethodException failure;
+
+        OpenConnectionHandle(Class<?> handlerClass) {
+            Method method = null;
+            NoSuchMethodException failure = null;
+            try {
+                method = handlerClass.getDeclaredMethod("openConnection", URL.class, Proxy.class);
+            } catch (NoSuchMethodException ex) {
+                failure = ex;
+            }
+            this.handlerClass = handlerClass;
+            this.method = method;
+            this.failure = failure;
         }
     }
 }
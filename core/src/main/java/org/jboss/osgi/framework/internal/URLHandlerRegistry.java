@@ -0,0 +1,119 @@
+package org.jboss.osgi.framework.internal;
+
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.ServiceReference;
+
+/**
+ * The URL handler services by protocol or mime type.
+ *
+ * Each key maps to an immutable list of handlers, ordered by service ranking, that is replaced on every
+ * modification. Lookups do not lock and return the service object that was obtained by the tracker, so that
+ * using a handler does not get the service again.
+ *
+ * @since 18-Oct-2026
+ */
+final class URLHandlerRegistry<T> {
+
+    private static final Comparator<ServiceReference> RANKING_ORDER = Collections.reverseOrder(ServiceReferenceComparator.getInstance());
+
+    private final ConcurrentMap<String, List<Handler<T>>> handlers = new ConcurrentHashMap<String, List<Handler<T>>>();
+
+    static final class Handler<T> implements Comparable<Handler<T>> {
+        private final ServiceReference reference;
+        private final T service;
+
+        Handler(ServiceReference reference, T service) {
+            this.reference = reference;
+            this.service = service;
+        }
+
+        ServiceReference getReference() {
+            return reference;
+        }
+
+        T getService() {
+            return service;
+        }
+
+        @Override
+        public int compareTo(Handler<T> other) {
+            return RANKING_ORDER.compare(reference, other.reference);
+        }
+    }
+
+    synchronized void addHandler(String key, ServiceReference reference, T service) {
+        List<Handler<T>> list = handlers.get(key);
+        List<Handler<T>> copy = list != null ? new ArrayList<Handler<T>>(list) : new ArrayList<Handler<T>>(1);
+        copy.add(new Handler<T>(reference, service));
+        Collections.sort(copy);
+        handlers.put(key, Collections.unmodifiableList(copy));
+    }
+
+    synchronized void removeHandler(ServiceReference reference) {
+        for (Map.Entry<String, List<Handler<T>>> entry : handlers.entrySet()) {
+            List<Handler<T>> list = entry.getValue();
+            List<Handler<T>> copy = null;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getReference().equals(reference)) {
+                    copy = new ArrayList<Handler<T>>(list);
+                    copy.remove(i);
+                    break;
+                }
+            }
+            if (copy != null) {
+                handlers.put(entry.getKey(), Collections.unmodifiableList(copy));
+            }
+        }
+    }
+
+    synchronized void clearHandlers() {
+        handlers.clear();
+    }
+
+    /**
+     * Get the handlers for the given key in ranking order.
+     */
+    List<Handler<T>> getHandlers(String key) {
+        List<Handler<T>> list = handlers.get(key);
+        return list != null ? list : Collections.<Handler<T>> emptyList();
+    }
+
+    /**
+     * Get the highest ranked handler service for the given key.
+     *
+     * @return the service or null
+     */
+    T getHandlerService(String key) {
+        List<Handler<T>> list = handlers.get(key);
+        return list != null && list.isEmpty() == false ? list.get(0).getService() : null;
+    }
+}
@@ -78,7 +78,11 @@ abstract class UserBundleInstalledService<B extends UserBundleState,R extends Us
             createResolvedService(context.getChildTarget(), brev);
             addToEnvironment(brev);
             bundleState.changeState(Bundle.INSTALLED, 0);
-            bundleState.fireBundleEvent(BundleEvent.INSTALLED);
+            // The batch install fires the events in deployment order
+            BundleManagerPlugin.BatchInstall batch = dep.getAttachment(BundleManagerPlugin.BatchInstall.class);
+            if (batch == null || batch.deferInstalledEvent() == false) {
+                bundleState.fireBundleEvent(BundleEvent.INSTALLED);
+            }
             LOGGER.infoBundleInstalled(bundleState);
         } catch (BundleException ex) {
             if (storageState != null) {
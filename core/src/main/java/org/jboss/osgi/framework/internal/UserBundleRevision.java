@@ -61,6 +61,7 @@ abstract class UserBundleRevision extends BundleStateRevision {
         if (dep.getRoot() != null) {
             contentList = getBundleClassPath(dep.getRoot(), metadata, storageState);
             entriesProvider = getRootContent();
+            frameworkState.getBundleManager().registerRevisionContents(contentList);
         } else {
             Module module = dep.getAttachment(Module.class);
             entriesProvider = new ModuleEntriesProvider(module);
@@ -122,6 +123,7 @@ abstract class UserBundleRevision extends BundleStateRevision {
     @Override
     void close() {
         super.close();
+        getFrameworkState().getBundleManager().unregisterRevisionContents(contentList);
         for (RevisionContent aux : contentList) {
             aux.close();
         }
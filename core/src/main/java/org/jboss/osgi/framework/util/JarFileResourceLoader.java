@@ -0,0 +1,254 @@
+package org.jboss.osgi.framework.util;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.jboss.osgi.framework.internal.FrameworkMessages.MESSAGES;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.modules.PackageSpec;
+import org.jboss.modules.Resource;
+import org.jboss.modules.ResourceLoader;
+import org.jboss.osgi.vfs.VFSUtils;
+
+/**
+ * An {@link ResourceLoader} that is backed by a JAR file on disk.
+ *
+ * The entries of the JAR are indexed once when the loader is created. Class bytes are read into arrays of the
+ * entry size and the manifest is parsed once.
+ *
+ * @since 18-Oct-2026
+ */
+public final class JarFileResourceLoader implements ResourceLoader, Closeable {
+
+    private final File file;
+    private final JarFile jarFile;
+    private final Map<String, JarEntry> entries;
+    private final Set<String> localPaths;
+    private final URL rootURL;
+    private volatile Manifest manifest;
+    private volatile boolean manifestRead;
+
+    public JarFileResourceLoader(File file) throws IOException {
+        if (file == null)
+            throw MESSAGES.illegalArgumentNull("file");
+        this.file = file;
+        this.jarFile = new JarFile(file);
+        this.rootURL = file.toURI().toURL();
+
+        Map<String, JarEntry> entryMap = new HashMap<String, JarEntry>();
+        Set<String> paths = new HashSet<String>();
+        Enumeration<JarEntry> jarEntries = jarFile.entries();
+        while (jarEntries.hasMoreElements()) {
+            JarEntry entry = jarEntries.nextElement();
+            if (entry.isDirectory() == false) {
+                String name = entry.getName();
+                entryMap.put(name, entry);
+                int inx = name.lastIndexOf("/");
+                paths.add(inx > 0 ? name.substring(0, inx) : "");
+            }
+        }
+        if (paths.isEmpty()) {
+            safeClose(jarFile);
+            throw new IOException("Cannot obtain paths from: " + file);
+        }
+        this.entries = entryMap;
+        this.localPaths = Collections.unmodifiableSet(paths);
+    }
+
+    @Override
+    public String getRootName() {
+        return file.getName();
+    }
+
+    @Override
+    public ClassSpec getClassSpec(String fileName) throws IOException {
+        JarEntry entry = getEntry(fileName);
+        if (entry == null)
+            return null;
+
+        ClassSpec classSpec = new ClassSpec();
+        classSpec.setBytes(readEntry(entry));
+
+        // The code signers are only available after the entry was read
+        CodeSigner[] codeSigners = entry.getCodeSigners();
+        classSpec.setCodeSource(new CodeSource(new URL("jar", null, -1, fileName), codeSigners));
+        return classSpec;
+    }
+
+    @Override
+    public PackageSpec getPackageSpec(String name) throws IOException {
+        PackageSpec spec = new PackageSpec();
+        Manifest manifest = getManifest();
+        if (manifest == null) {
+            return spec;
+        }
+        Attributes mainAttribute = manifest.getMainAttributes();
+        Attributes entryAttribute = manifest.getAttributes(name.replace('.', '/') + "/");
+        spec.setSpecTitle(getDefinedAttribute(Attributes.Name.SPECIFICATION_TITLE, entryAttribute, mainAttribute));
+        spec.setSpecVersion(getDefinedAttribute(Attributes.Name.SPECIFICATION_VERSION, entryAttribute, mainAttribute));
+        spec.setSpecVendor(getDefinedAttribute(Attributes.Name.SPECIFICATION_VENDOR, entryAttribute, mainAttribute));
+        spec.setImplTitle(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_TITLE, entryAttribute, mainAttribute));
+        spec.setImplVersion(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VERSION, entryAttribute, mainAttribute));
+        spec.setImplVendor(getDefinedAttribute(Attributes.Name.IMPLEMENTATION_VENDOR, entryAttribute, mainAttribute));
+        if (Boolean.parseBoolean(getDefinedAttribute(Attributes.Name.SEALED, entryAttribute, mainAttribute))) {
+            spec.setSealBase(rootURL);
+        }
+        return spec;
+    }
+
+    private static String getDefinedAttribute(Attributes.Name name, Attributes entryAttribute, Attributes mainAttribute) {
+        final String value = entryAttribute == null ? null : entryAttribute.getValue(name);
+        return value == null ? mainAttribute == null ? null : mainAttribute.getValue(name) : value;
+    }
+
+    @Override
+    public Resource getResource(String name) {
+        JarEntry entry = getEntry(name);
+        return entry != null ? new JarEntryResource(entry) : null;
+    }
+
+    @Override
+    public String getLibrary(String name) {
+        return null;
+    }
+
+    @Override
+    public Collection<String> getPaths() {
+        return localPaths;
+    }
+
+    /**
+     * Get the manifest, which is read once
+     */
+    public Manifest getManifest() throws IOException {
+        if (manifestRead == false) {
+            synchronized (this) {
+                if (manifestRead == false) {
+                    manifest = jarFile.getManifest();
+                    manifestRead = true;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    @Override
+    public void close() {
+        safeClose(jarFile);
+    }
+
+    private static void safeClose(JarFile jarFile) {
+        try {
+            jarFile.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private JarEntry getEntry(String name) {
+        if (name.startsWith("/"))
+            name = name.substring(1);
+        return entries.get(name);
+    }
+
+    private byte[] readEntry(JarEntry entry) throws IOException {
+        long size = entry.getSize();
+        InputStream input = jarFile.getInputStream(entry);
+        try {
+            if (size < 0) {
+                // The size is unknown for some entries
+                ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+                VFSUtils.copyStream(input, output);
+                return output.toByteArray();
+            }
+            byte[] bytes = new byte[(int) size];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = input.read(bytes, offset, bytes.length - offset);
+                if (count < 0)
+                    throw new EOFException("Unexpected end of " + entry.getName() + " in: " + file);
+                offset += count;
+            }
+            // Read to the end, so that the code signers get verified
+            input.read();
+            return bytes;
+        } finally {
+            VFSUtils.safeClose(input);
+        }
+    }
+
+    class JarEntryResource implements Resource {
+
+        private final JarEntry entry;
+
+        JarEntryResource(JarEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getName() {
+            return entry.getName();
+        }
+
+        @Override
+        public URL getURL() {
+            try {
+                return new URL("jar:" + rootURL + "!/" + entry.getName());
+            } catch (MalformedURLException ex) {
+                throw MESSAGES.illegalStateCannotObtainEntryURL(ex, entry.getName(), file);
+            }
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return jarFile.getInputStream(entry);
+        }
+
+        @Override
+        public long getSize() {
+            long size = entry.getSize();
+            return size >= 0 ? size : 0;
+        }
+    }
+}
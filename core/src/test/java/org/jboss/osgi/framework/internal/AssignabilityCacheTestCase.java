@@ -0,0 +1,97 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.junit.Test;
+
+/**
+ * Test the {@link AssignabilityCache}
+ *
+ * @since 18-Oct-2026
+ */
+public class AssignabilityCacheTestCase {
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        AssignabilityCache cache = new AssignabilityCache();
+        XBundleRevision revA = mockRevision(mock(XBundle.class));
+        XBundleRevision revB = mockRevision(mock(XBundle.class));
+
+        assertNull(cache.get(revA, revB, "org.acme.Foo"));
+        cache.put(revA, revB, "org.acme.Foo", false, cache.getGeneration());
+        assertEquals(Boolean.FALSE, cache.get(revA, revB, "org.acme.Foo"));
+        assertNull(cache.get(revB, revA, "org.acme.Foo"));
+        assertNull(cache.get(revA, revB, "org.acme.Bar"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0.25, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        AssignabilityCache cache = new AssignabilityCache();
+        XBundle bundleA = mock(XBundle.class);
+        XBundleRevision revA = mockRevision(bundleA);
+        XBundleRevision revB = mockRevision(mock(XBundle.class));
+        XBundleRevision revC = mockRevision(mock(XBundle.class));
+
+        cache.put(revA, revB, "org.acme.Foo", true, cache.getGeneration());
+        cache.put(revB, revA, "org.acme.Foo", true, cache.getGeneration());
+        cache.put(revB, revC, "org.acme.Foo", true, cache.getGeneration());
+        assertEquals(3, cache.getSize());
+
+        cache.invalidate(bundleA);
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getInvalidationCount());
+        assertNull(cache.get(revA, revB, "org.acme.Foo"));
+        assertTrue(cache.get(revB, revC, "org.acme.Foo"));
+    }
+
+    @Test
+    public void testStaleResult() throws Exception {
+        AssignabilityCache cache = new AssignabilityCache();
+        XBundle bundleA = mock(XBundle.class);
+        XBundleRevision revA = mockRevision(bundleA);
+        XBundleRevision revB = mockRevision(mock(XBundle.class));
+
+        // A result computed before an invalidation is not cached
+        long generation = cache.getGeneration();
+        cache.invalidate(bundleA);
+        cache.put(revA, revB, "org.acme.Foo", true, generation);
+        assertEquals(0, cache.getSize());
+    }
+
+    private XBundleRevision mockRevision(XBundle bundle) {
+        XBundleRevision brev = mock(XBundleRevision.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        return brev;
+    }
+}
@@ -0,0 +1,151 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.osgi.deployment.deployer.Deployment;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.osgi.vfs.AbstractVFS;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.SynchronousBundleListener;
+
+/**
+ * Test {@link BundleManagerPlugin#installBundles(List)}
+ *
+ * @since 18-Oct-2026
+ */
+public class BatchInstallTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testBatchInstall() throws Exception {
+        BundleManagerPlugin bundleManager = getBundleManager();
+        BundleContext context = getSystemContext();
+
+        // A bundle with the same symbolic name and version cannot be installed again
+        Bundle existing = installBundle(getBundleArchive("batchDup", null, null));
+
+        final List<String> installed = Collections.synchronizedList(new ArrayList<String>());
+        SynchronousBundleListener bundleListener = new SynchronousBundleListener() {
+            @Override
+            public void bundleChanged(BundleEvent event) {
+                if (event.getType() == BundleEvent.INSTALLED) {
+                    installed.add(event.getBundle().getSymbolicName());
+                }
+            }
+        };
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+        FrameworkListener frameworkListener = new FrameworkListener() {
+            @Override
+            public void frameworkEvent(FrameworkEvent event) {
+                if (event.getType() == FrameworkEvent.ERROR) {
+                    errorLatch.countDown();
+                }
+            }
+        };
+        context.addBundleListener(bundleListener);
+        context.addFrameworkListener(frameworkListener);
+
+        List<XBundle> result = Collections.emptyList();
+        try {
+            // The consumer comes before its provider
+            DeploymentFactoryPlugin deploymentFactory = getFrameworkState().getDeploymentFactoryPlugin();
+            List<Deployment> deployments = new ArrayList<Deployment>();
+            deployments.add(createDeployment(deploymentFactory, getBundleArchive("batchB", null, "org.acme.batch.a")));
+            deployments.add(createDeployment(deploymentFactory, getBundleArchive("batchDup", null, null)));
+            deployments.add(createDeployment(deploymentFactory, getBundleArchive("batchA", "org.acme.batch.a", null)));
+
+            ResolutionCache resolutionCache = getFrameworkState().getResolverPlugin().getResolutionCache();
+            long resolveCount = getResolveCount(resolutionCache);
+            result = bundleManager.installBundles(deployments);
+
+            // The failing deployment is reported, the others are installed in deployment order
+            assertEquals(2, result.size());
+            assertEquals("batchB", result.get(0).getSymbolicName());
+            assertEquals("batchA", result.get(1).getSymbolicName());
+            assertEquals(Arrays.asList("batchB", "batchA"), installed);
+            assertTrue("ERROR event expected", errorLatch.await(10, TimeUnit.SECONDS));
+
+            // The new bundles are resolved together
+            assertEquals(1, getResolveCount(resolutionCache) - resolveCount);
+            assertBundleState(Bundle.RESOLVED, result.get(0).getState());
+            assertBundleState(Bundle.RESOLVED, result.get(1).getState());
+        } finally {
+            context.removeBundleListener(bundleListener);
+            context.removeFrameworkListener(frameworkListener);
+            for (XBundle bundle : result) {
+                bundle.uninstall();
+            }
+            existing.uninstall();
+        }
+    }
+
+    private long getResolveCount(ResolutionCache resolutionCache) {
+        return resolutionCache.getHitCount() + resolutionCache.getFailureHitCount() + resolutionCache.getMissCount();
+    }
+
+    private Deployment createDeployment(DeploymentFactoryPlugin deploymentFactory, JavaArchive archive) throws Exception {
+        File file = File.createTempFile(archive.getName(), ".jar");
+        file.deleteOnExit();
+        archive.as(ZipExporter.class).exportTo(file, true);
+        return deploymentFactory.createDeployment(file.toURI().toString(), AbstractVFS.toVirtualFile(file.toURI()));
+    }
+
+    private JavaArchive getBundleArchive(final String name, final String exportPackage, final String importPackage) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(name);
+                if (exportPackage != null) {
+                    builder.addExportPackages(exportPackage);
+                }
+                if (importPackage != null) {
+                    builder.addImportPackages(importPackage);
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
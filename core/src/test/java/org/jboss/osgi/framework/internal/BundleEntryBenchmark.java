@@ -0,0 +1,132 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+/**
+ * Measures Bundle.getEntry and openStream throughput on bundle entry URLs from many threads at once.
+ *
+ * This is not part of the regular test run. Use
+ *
+ * mvn test -Dtest=BundleEntryBenchmark [-Dbenchmark.seconds=10] [-Dbenchmark.threads=16]
+ *
+ * @since 18-Oct-2026
+ */
+public class BundleEntryBenchmark extends AbstractFrameworkTest {
+
+    private static final int ENTRIES = 200;
+
+    @Test
+    public void testGetEntryOpenStream() throws Exception {
+        final int seconds = Integer.getInteger("benchmark.seconds", 5);
+        final int threadCount = Integer.getInteger("benchmark.threads", Runtime.getRuntime().availableProcessors() * 2);
+
+        // Templates and XML resources as loaded by a web or Spring bundle
+        final Bundle bundle = installBundle(getTestArchive("entry-bundle"));
+        final String[] paths = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            paths[i] = "templates/page-" + i + ".html";
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong calls = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for (int i = 0; i < threadCount; i++) {
+            final int offset = i;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        long count = 0;
+                        byte[] buffer = new byte[256];
+                        int next = offset;
+                        while (running.get()) {
+                            URL url = bundle.getEntry(paths[next++ % paths.length]);
+                            assertNotNull(url);
+                            InputStream input = url.openStream();
+                            try {
+                                while (input.read(buffer) != -1) {
+                                }
+                            } finally {
+                                input.close();
+                            }
+                            count++;
+                        }
+                        calls.addAndGet(count);
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "reader-" + i).start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        done.await(30, TimeUnit.SECONDS);
+
+        bundle.uninstall();
+
+        if (errors.isEmpty() == false)
+            throw new IllegalStateException("Benchmark failed", errors.get(0));
+
+        System.out.println(String.format("[BundleEntryBenchmark] entries=%d threads=%d", ENTRIES, threadCount));
+        System.out.println(String.format("[BundleEntryBenchmark] getEntry+openStream/s=%d", calls.get() / seconds));
+    }
+
+    private JavaArchive getTestArchive(String name) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        for (int i = 0; i < ENTRIES; i++) {
+            archive.add(new StringAsset("<html><body>page " + i + "</body></html>"), "templates/page-" + i + ".html");
+        }
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
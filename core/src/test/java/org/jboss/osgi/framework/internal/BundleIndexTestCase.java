@@ -0,0 +1,215 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.metadata.VersionRange;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.resolver.XPackageCapability;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+
+/**
+ * Test the {@link BundleIndex}
+ *
+ * @since 18-Oct-2026
+ */
+public class BundleIndexTestCase {
+
+    @Test
+    public void testLookup() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundle bundleA = mockBundle(1, "locA", "foo", "1.0.0", Bundle.INSTALLED);
+        XBundle bundleB = mockBundle(2, "locB", "foo", "2.0.0", Bundle.ACTIVE);
+        XBundle bundleC = mockBundle(3, "locC", "bar", "1.0.0", Bundle.RESOLVED);
+        XBundleRevision revA = mockRevision(bundleA);
+        index.addRevision(revA);
+        index.addRevision(mockRevision(bundleB));
+        index.addRevision(mockRevision(bundleC));
+
+        assertEquals(3, index.getSize());
+        assertSame(bundleB, index.getBundleById(2));
+        assertNull(index.getBundleById(4));
+        assertSame(bundleC, index.getBundleByLocation("locC"));
+        assertNull(index.getBundleByLocation("locX"));
+
+        // Highest version first
+        List<XBundle> bundles = index.getBundles("foo", null);
+        assertEquals(2, bundles.size());
+        assertSame(bundleB, bundles.get(0));
+        assertSame(bundleA, bundles.get(1));
+        bundles = index.getBundles("foo", VersionRange.parse("[1.0,2.0)"));
+        assertEquals(1, bundles.size());
+        assertSame(bundleA, bundles.get(0));
+        assertTrue(index.getBundles("baz", null).isEmpty());
+
+        assertEquals(3, index.getBundles(null).size());
+        assertEquals(1, index.getBundles(Bundle.ACTIVE).size());
+        assertEquals(2, index.getBundles(Bundle.INSTALLED | Bundle.RESOLVED).size());
+
+        // State changes move the bundle to another state set
+        when(bundleA.getState()).thenReturn(Bundle.RESOLVED);
+        index.updateState(bundleA);
+        assertEquals(0, index.getBundles(Bundle.INSTALLED).size());
+        assertEquals(2, index.getBundles(Bundle.RESOLVED).size());
+
+        // An uninstalled bundle is not found by location
+        when(bundleC.getState()).thenReturn(Bundle.UNINSTALLED);
+        index.updateState(bundleC);
+        assertNull(index.getBundleByLocation("locC"));
+        assertSame(bundleC, index.getBundleById(3));
+
+        index.removeRevision(revA);
+        assertNull(index.getBundleById(1));
+        assertEquals(1, index.getBundles("foo", null).size());
+        assertEquals(1, index.getBundles(Bundle.RESOLVED).size());
+    }
+
+    @Test
+    public void testUpdateRevision() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundle bundle = mockBundle(1, "loc", "foo", "1.0.0", Bundle.RESOLVED);
+        XBundleRevision rev1 = mockRevision(bundle);
+        index.addRevision(rev1);
+
+        // An update installs a second revision with a new version
+        when(bundle.getVersion()).thenReturn(Version.parseVersion("1.1.0"));
+        XBundleRevision rev2 = mockRevision(bundle);
+        index.addRevision(rev2);
+        assertEquals(1, index.getBundles("foo", VersionRange.parse("1.1")).size());
+        assertEquals(1, index.getBundles("foo", null).size());
+
+        // The bundle stays indexed until the last revision is removed
+        index.removeRevision(rev1);
+        assertSame(bundle, index.getBundleById(1));
+        index.removeRevision(rev2);
+        assertNull(index.getBundleById(1));
+        assertTrue(index.getBundles("foo", null).isEmpty());
+        assertTrue(index.getBundles(null).isEmpty());
+    }
+
+    @Test
+    public void testExportedPackages() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundle bundle = mockBundle(1, "loc", "foo", "1.0.0", Bundle.INSTALLED);
+        XBundleRevision brev = mockRevision(bundle, "org.acme.a", "org.acme.b");
+        long count = index.getModificationCount();
+        index.addRevision(brev);
+        assertTrue(index.getModificationCount() > count);
+
+        assertEquals(Collections.singletonList(brev), index.getExporters("org.acme.a"));
+        assertEquals(Collections.singletonList(brev), index.getExporters("org.acme.b"));
+        assertTrue(index.getExporters("org.acme.c").isEmpty());
+
+        // State changes are modifications
+        count = index.getModificationCount();
+        when(bundle.getState()).thenReturn(Bundle.RESOLVED);
+        index.updateState(bundle);
+        assertTrue(index.getModificationCount() > count);
+
+        count = index.getModificationCount();
+        index.removeRevision(brev);
+        assertTrue(index.getModificationCount() > count);
+        assertTrue(index.getExporters("org.acme.a").isEmpty());
+    }
+
+    @Test
+    public void testExportModificationCount() throws Exception {
+        BundleIndex index = new BundleIndex();
+        XBundle exporter = mockBundle(1, "locA", "foo", "1.0.0", Bundle.INSTALLED);
+        XBundleRevision exporterRev = mockRevision(exporter, "org.acme.a");
+        when(exporter.getBundleRevision()).thenReturn(exporterRev);
+        XBundle plain = mockBundle(2, "locB", "bar", "1.0.0", Bundle.INSTALLED);
+        XBundleRevision plainRev = mockRevision(plain);
+        when(plain.getBundleRevision()).thenReturn(plainRev);
+
+        // Only revisions that export packages change the exports
+        long count = index.getExportModificationCount();
+        index.addRevision(plainRev);
+        assertEquals(count, index.getExportModificationCount());
+        index.addRevision(exporterRev);
+        assertTrue(index.getExportModificationCount() > count);
+
+        // Wiring an exporter changes the exports, starting it does not
+        count = index.getExportModificationCount();
+        when(exporter.getState()).thenReturn(Bundle.RESOLVED);
+        index.updateState(exporter);
+        assertTrue(index.getExportModificationCount() > count);
+
+        count = index.getExportModificationCount();
+        when(exporter.getState()).thenReturn(Bundle.STARTING);
+        index.updateState(exporter);
+        when(exporter.getState()).thenReturn(Bundle.ACTIVE);
+        index.updateState(exporter);
+        when(plain.getState()).thenReturn(Bundle.RESOLVED);
+        index.updateState(plain);
+        assertEquals(count, index.getExportModificationCount());
+
+        // Refreshing an exporter unwires it
+        when(exporter.getState()).thenReturn(Bundle.INSTALLED);
+        index.updateState(exporter);
+        assertTrue(index.getExportModificationCount() > count);
+
+        count = index.getExportModificationCount();
+        index.removeRevision(exporterRev);
+        assertTrue(index.getExportModificationCount() > count);
+    }
+
+    private XBundle mockBundle(long bundleId, String location, String symbolicName, String version, int state) {
+        XBundle bundle = mock(XBundle.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        when(bundle.getLocation()).thenReturn(location);
+        when(bundle.getSymbolicName()).thenReturn(symbolicName);
+        when(bundle.getVersion()).thenReturn(Version.parseVersion(version));
+        when(bundle.getState()).thenReturn(state);
+        return bundle;
+    }
+
+    private XBundleRevision mockRevision(XBundle bundle, String... exportedPackages) {
+        XBundleRevision brev = mock(XBundleRevision.class);
+        when(brev.getBundle()).thenReturn(bundle);
+        List<Capability> caps = new ArrayList<Capability>();
+        for (String packageName : exportedPackages) {
+            XPackageCapability packageCap = mock(XPackageCapability.class);
+            when(packageCap.getPackageName()).thenReturn(packageName);
+            when(packageCap.adapt(XPackageCapability.class)).thenReturn(packageCap);
+            caps.add(packageCap);
+        }
+        when(brev.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)).thenReturn(caps);
+        return brev;
+    }
+}
@@ -0,0 +1,121 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+/**
+ * Test that a refresh affects the transitive closure of dependent bundles, see {@link BundleRefreshGraph}
+ *
+ * @since 18-Oct-2026
+ */
+public class BundleRefreshTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testTransitiveRefresh() throws Exception {
+        // A <- B <- C, where C is not wired to A
+        Bundle bundleA = installBundle(getBundleArchive("refreshA", "org.acme.refresh.a", null));
+        Bundle bundleB = installBundle(getBundleArchive("refreshB", "org.acme.refresh.b", "org.acme.refresh.a"));
+        Bundle bundleC = installBundle(getBundleArchive("refreshC", null, "org.acme.refresh.b"));
+        Bundle bundleD = installBundle(getBundleArchive("refreshD", null, null));
+        BundleContext context = getSystemContext();
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        SynchronousBundleListener listener = new SynchronousBundleListener() {
+            @Override
+            public void bundleChanged(BundleEvent event) {
+                events.add(event.getBundle().getSymbolicName() + ":" + event.getType());
+            }
+        };
+        try {
+            bundleA.start();
+            bundleB.start();
+            bundleC.start();
+            bundleD.start();
+            assertBundleState(Bundle.ACTIVE, bundleC.getState());
+
+            context.addBundleListener(listener);
+            ServiceReference sref = context.getServiceReference(PackageAdmin.class.getName());
+            PackageAdmin packageAdmin = (PackageAdmin) context.getService(sref);
+            packageAdmin.refreshPackages(new Bundle[] { bundleA });
+
+            // The refresh reaches C through B and restarts it
+            assertTrue(events.toString(), events.contains("refreshC:" + BundleEvent.STOPPED));
+            assertTrue(events.toString(), events.contains("refreshC:" + BundleEvent.UNRESOLVED));
+            assertTrue(events.toString(), events.contains("refreshC:" + BundleEvent.RESOLVED));
+            assertTrue(events.toString(), events.contains("refreshC:" + BundleEvent.STARTED));
+            assertTrue(events.toString(), events.indexOf("refreshC:" + BundleEvent.STOPPED) < events.indexOf("refreshC:" + BundleEvent.STARTED));
+            assertTrue(events.toString(), events.contains("refreshB:" + BundleEvent.STARTED));
+            assertBundleState(Bundle.ACTIVE, bundleA.getState());
+            assertBundleState(Bundle.ACTIVE, bundleB.getState());
+            assertBundleState(Bundle.ACTIVE, bundleC.getState());
+
+            // Bundles that are not wired to A are not affected
+            for (String event : events) {
+                assertTrue(events.toString(), event.startsWith("refreshD:") == false);
+            }
+            assertEquals(Bundle.ACTIVE, bundleD.getState());
+        } finally {
+            context.removeBundleListener(listener);
+            bundleD.uninstall();
+            bundleC.uninstall();
+            bundleB.uninstall();
+            bundleA.uninstall();
+        }
+    }
+
+    private JavaArchive getBundleArchive(final String name, final String exportPackage, final String importPackage) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(name);
+                if (exportPackage != null) {
+                    builder.addExportPackages(exportPackage);
+                }
+                if (importPackage != null) {
+                    builder.addImportPackages(importPackage);
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
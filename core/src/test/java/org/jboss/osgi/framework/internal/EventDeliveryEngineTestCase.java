@@ -0,0 +1,143 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.osgi.framework.internal.EventDeliveryEngine.OverflowPolicy;
+import org.junit.Test;
+
+/**
+ * Test the {@link EventDeliveryEngine}
+ *
+ * @since 18-Oct-2026
+ */
+public class EventDeliveryEngineTestCase {
+
+    @Test
+    public void testPerListenerOrdering() throws Exception {
+        EventDeliveryEngine engine = new EventDeliveryEngine("Test", 4, 1000, OverflowPolicy.BLOCK);
+        try {
+            int listenerCount = 8;
+            int eventCount = 100;
+            final CountDownLatch latch = new CountDownLatch(listenerCount * eventCount);
+            List<List<Integer>> received = new ArrayList<List<Integer>>();
+            for (int i = 0; i < listenerCount; i++) {
+                received.add(Collections.synchronizedList(new ArrayList<Integer>()));
+            }
+            for (int event = 0; event < eventCount; event++) {
+                for (int i = 0; i < listenerCount; i++) {
+                    final List<Integer> listener = received.get(i);
+                    final Integer value = event;
+                    engine.deliver(listener, new Runnable() {
+                        public void run() {
+                            listener.add(value);
+                            latch.countDown();
+                        }
+                    }, value);
+                }
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            for (List<Integer> listener : received) {
+                for (int event = 0; event < eventCount; event++) {
+                    assertEquals(Integer.valueOf(event), listener.get(event));
+                }
+            }
+            assertEquals(listenerCount * eventCount, engine.getDeliveredCount());
+            assertEquals(listenerCount, engine.getListenerStatistics().size());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetiredListenerOrdering() throws Exception {
+        EventDeliveryEngine engine = new EventDeliveryEngine("Test", 4, 100000, OverflowPolicy.BLOCK);
+        try {
+            int eventCount = 10000;
+            final Object listener = new Object();
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicBoolean overlap = new AtomicBoolean();
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch latch = new CountDownLatch(eventCount);
+            for (int event = 0; event < eventCount; event++) {
+                // Retire the queue while it drains, a new delivery must still go to a single queue
+                engine.removeListener(listener);
+                if (event % 2 == 0)
+                    engine.addListener(listener);
+                final Integer value = event;
+                engine.deliver(listener, new Runnable() {
+                    public void run() {
+                        if (active.incrementAndGet() > 1)
+                            overlap.set(true);
+                        received.add(value);
+                        active.decrementAndGet();
+                        latch.countDown();
+                    }
+                }, value);
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertFalse(overlap.get());
+            for (int event = 0; event < eventCount; event++) {
+                assertEquals(Integer.valueOf(event), received.get(event));
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiscardOnOverflow() throws Exception {
+        EventDeliveryEngine engine = new EventDeliveryEngine("Test", 1, 1, OverflowPolicy.DISCARD);
+        try {
+            final CountDownLatch blocker = new CountDownLatch(1);
+            Object listener = new Object();
+            assertTrue(engine.deliver(listener, new Runnable() {
+                public void run() {
+                    try {
+                        blocker.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        // ignore
+                    }
+                }
+            }, "first"));
+            assertFalse(engine.deliver(listener, new Runnable() {
+                public void run() {
+                }
+            }, "second"));
+            assertEquals(1, engine.getDiscardedCount());
+            blocker.countDown();
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import org.junit.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Test the {@link FilterCache} and {@link CompiledFilter}
+ *
+ * @since 18-Oct-2026
+ */
+public class FilterCacheTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testCacheEviction() throws Exception {
+        FilterCache cache = new FilterCache(2);
+        CompiledFilter filterA = cache.getFilter("(a=1)");
+        assertSame(filterA, cache.getFilter("(a=1)"));
+        cache.getFilter("(b=1)");
+        cache.getFilter("(a=1)");
+        cache.getFilter("(c=1)");
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        // (b=1) was the least recently used
+        assertSame(filterA, cache.getFilter("(a=1)"));
+        cache.getFilter("(b=1)");
+        assertEquals(4, cache.getMissCount());
+
+        try {
+            cache.getFilter("(a=1");
+            fail("InvalidSyntaxException expected");
+        } catch (InvalidSyntaxException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompiledMatch() throws Exception {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("Name", "Foo Bar");
+        props.put("count", Integer.valueOf(5));
+        props.put("ratio", Double.valueOf(0.5));
+        props.put("enabled", Boolean.TRUE);
+        props.put("tags", new String[] { "alpha", "beta" });
+        props.put("numbers", Arrays.asList(Long.valueOf(1), Long.valueOf(2)));
+        props.put("ints", new int[] { 7, 8 });
+        ServiceRegistration reg = getSystemContext().registerService(Runnable.class.getName(), new ServiceRegistryIndexTestCase.NoopRunnable(), props);
+        try {
+            ServiceReference sref = reg.getReference();
+            String[] filters = new String[] { "(name=Foo Bar)", "(NAME=foo bar)", "(name~=foobar)", "(name=Foo*)", "(name=*Bar)", "(name=F*o*r)",
+                    "(name=*)", "(missing=*)", "(count=5)", "(count= 5 )", "(count>=4)", "(count<=4)", "(count=x)", "(count=5*)",
+                    "(ratio=0.5)", "(ratio>=1.0)", "(enabled=true)", "(enabled=false)", "(tags=beta)", "(tags=gam*)", "(numbers=2)",
+                    "(numbers<=0)", "(ints=8)", "(&(name=Foo Bar)(count=5))", "(|(name=x)(count=5))", "(!(tags=alpha))",
+                    "(&(objectClass=" + Runnable.class.getName() + ")(tags=a*))", "(name=Foo\\*)" };
+            for (String filterStr : filters) {
+                Filter expected = FrameworkUtil.createFilter(filterStr);
+                Filter compiled = CompiledFilter.compile(filterStr);
+                assertEquals(filterStr, expected.match(sref), compiled.match(sref));
+                assertEquals(filterStr, expected.toString(), compiled.toString());
+                assertEquals(filterStr, expected, compiled);
+            }
+        } finally {
+            reg.unregister();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.osgi.framework.internal.JDKPathsCache.Entry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link JDKPathsCache}
+ *
+ * @since 18-Oct-2026
+ */
+public class JDKPathsCacheTestCase {
+
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheFile = File.createTempFile("jdk-paths", ".cache");
+        cacheFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cacheFile.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Entry> key = Collections.singletonList(new Entry("/lib/rt.jar", 100, 200));
+        Set<String> paths = new HashSet<String>(Arrays.asList("java/lang", "javax/net/ssl", "org/xml/sax"));
+        JDKPathsCache.writeCacheFile(cacheFile, key, paths);
+
+        List<Entry> sameKey = Collections.singletonList(new Entry("/lib/rt.jar", 100, 200));
+        assertEquals(paths, JDKPathsCache.readCacheFile(cacheFile, sameKey));
+    }
+
+    @Test
+    public void testKeyMismatch() throws Exception {
+        List<Entry> key = Collections.singletonList(new Entry("/lib/rt.jar", 100, 200));
+        JDKPathsCache.writeCacheFile(cacheFile, key, Collections.singleton("java/lang"));
+
+        assertNull(JDKPathsCache.readCacheFile(cacheFile, Collections.singletonList(new Entry("/lib/rt.jar", 100, 201))));
+        assertNull(JDKPathsCache.readCacheFile(cacheFile, Collections.singletonList(new Entry("/lib/rt.jar", 101, 200))));
+        assertNull(JDKPathsCache.readCacheFile(cacheFile, Collections.<Entry> emptyList()));
+    }
+
+    @Test
+    public void testCorruptFile() throws Exception {
+        List<Entry> key = Collections.singletonList(new Entry("/lib/rt.jar", 100, 200));
+        JDKPathsCache.writeCacheFile(cacheFile, key, Collections.singleton("java/lang"));
+
+        // Flip a byte in the path set
+        RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+        try {
+            long pos = raf.length() - 10;
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        assertNull(JDKPathsCache.readCacheFile(cacheFile, key));
+    }
+}
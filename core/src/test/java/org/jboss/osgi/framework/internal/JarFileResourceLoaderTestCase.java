@@ -0,0 +1,141 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collection;
+
+import org.jboss.modules.ClassSpec;
+import org.jboss.modules.PackageSpec;
+import org.jboss.modules.Resource;
+import org.jboss.osgi.framework.util.JarFileResourceLoader;
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.osgi.testing.OSGiTestHelper;
+import org.jboss.osgi.vfs.VFSUtils;
+import org.jboss.osgi.vfs.VirtualFile;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.test.osgi.framework.subA.SimpleActivator;
+import org.jboss.test.osgi.framework.subA.SimpleService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the {@link JarFileResourceLoader}
+ *
+ * @since 18-Oct-2026
+ */
+public class JarFileResourceLoaderTestCase {
+
+    private static File jarFile;
+    private static JarFileResourceLoader loader;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, "simple-bundle");
+        archive.addClasses(SimpleService.class, SimpleActivator.class);
+        archive.addAsResource("logging.properties");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addBundleActivator(SimpleActivator.class);
+                builder.addExportPackages(SimpleService.class);
+                return builder.openStream();
+            }
+        });
+        VirtualFile rootFile = OSGiTestHelper.toVirtualFile(archive);
+        try {
+            jarFile = File.createTempFile("simple-bundle", ".jar");
+            InputStream input = rootFile.openStream();
+            FileOutputStream output = new FileOutputStream(jarFile);
+            try {
+                VFSUtils.copyStream(input, output);
+            } finally {
+                input.close();
+                output.close();
+            }
+        } finally {
+            rootFile.close();
+        }
+        loader = new JarFileResourceLoader(jarFile);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        loader.close();
+        jarFile.delete();
+    }
+
+    @Test
+    public void testClassSpec() throws Exception {
+        String fileName = SimpleActivator.class.getName().replace('.', '/') + ".class";
+        ClassSpec result = loader.getClassSpec(fileName);
+        assertNotNull("ClassSpec not null", result);
+        Resource resource = loader.getResource(fileName);
+        assertEquals(resource.getSize(), result.getBytes().length);
+        assertNull(loader.getClassSpec("org/acme/Missing.class"));
+    }
+
+    @Test
+    public void testPackageSpec() throws Exception {
+        PackageSpec result = loader.getPackageSpec(SimpleActivator.class.getPackage().getName());
+        assertNotNull("PackageSpec not null", result);
+        assertNotNull(loader.getManifest());
+        assertEquals(SimpleActivator.class.getName(), loader.getManifest().getMainAttributes().getValue("Bundle-Activator"));
+    }
+
+    @Test
+    public void testResource() throws Exception {
+        Resource result = loader.getResource("META-INF/MANIFEST.MF");
+        assertNotNull("Resource not null", result);
+        assertTrue("Real size", result.getSize() > 0);
+
+        result = loader.getResource("/logging.properties");
+        assertNotNull("Resource not null", result);
+        InputStream input = result.openStream();
+        try {
+            assertTrue(input.read() >= 0);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    public void testPaths() throws Exception {
+        Collection<String> paths = loader.getPaths();
+        assertEquals(3, paths.size());
+        assertTrue(paths.contains("org/jboss/test/osgi/framework/subA"));
+        assertTrue(paths.contains("META-INF"));
+        assertTrue(paths.contains(""));
+    }
+}
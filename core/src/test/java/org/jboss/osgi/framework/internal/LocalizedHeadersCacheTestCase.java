@@ -0,0 +1,136 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Locale;
+
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+/**
+ * Test the {@link LocalizedHeadersCache}
+ *
+ * @since 18-Oct-2026
+ */
+public class LocalizedHeadersCacheTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testCacheEviction() throws Exception {
+        LocalizedHeadersCache cache = new LocalizedHeadersCache(2);
+        Dictionary<String, String> headersA = new Hashtable<String, String>();
+        cache.putHeaders("a", headersA, cache.getGeneration());
+        cache.putHeaders("b", new Hashtable<String, String>(), cache.getGeneration());
+        assertSame(headersA, cache.getHeaders("a"));
+        cache.putHeaders("c", new Hashtable<String, String>(), cache.getGeneration());
+        assertEquals(2, cache.getSize());
+
+        // b was the least recently used
+        assertSame(headersA, cache.getHeaders("a"));
+        assertNull(cache.getHeaders("b"));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        LocalizedHeadersCache cache = new LocalizedHeadersCache(4);
+        int generation = cache.getGeneration();
+        cache.putEntry("missing.properties", null, generation);
+        assertNotNull(cache.getEntry("missing.properties"));
+        assertNull(cache.getEntry("missing.properties").getEntryURL());
+        assertNull(cache.getEntry("other.properties"));
+
+        // Values that were computed before the invalidation are not added
+        cache.invalidate();
+        assertNull(cache.getEntry("missing.properties"));
+        cache.putEntry("bundle.properties", new URL("file:/bundle.properties"), generation);
+        cache.putHeaders("en", new Hashtable<String, String>(), generation);
+        assertNull(cache.getEntry("bundle.properties"));
+        assertNull(cache.getHeaders("en"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        LocalizedHeadersCache cache = new LocalizedHeadersCache(0);
+        cache.putHeaders("en", new Hashtable<String, String>(), cache.getGeneration());
+        assertNull(cache.getHeaders("en"));
+    }
+
+    @Test
+    public void testBundleHeaders() throws Exception {
+        Bundle bundle = installBundle(getTestArchive("localized-bundle"));
+        try {
+            Dictionary<String, String> headers = bundle.getHeaders("de");
+            assertEquals("Bundle Name DE", headers.get(Constants.BUNDLE_NAME));
+            assertSame(headers, bundle.getHeaders("de"));
+
+            // Falls back to the default locale entry
+            String expected = "de".equals(Locale.getDefault().getLanguage()) ? "Bundle Name DE" : "Bundle Name";
+            Dictionary<String, String> fallback = bundle.getHeaders("fr_FR");
+            assertEquals(expected, fallback.get(Constants.BUNDLE_NAME));
+            assertNotSame(headers, fallback);
+
+            // The raw headers are not localized
+            assertEquals("%bundleName", bundle.getHeaders("").get(Constants.BUNDLE_NAME));
+
+            // Resolving the bundle invalidates the cache
+            bundle.start();
+            Dictionary<String, String> resolved = bundle.getHeaders("de");
+            assertNotSame(headers, resolved);
+            assertEquals("Bundle Name DE", resolved.get(Constants.BUNDLE_NAME));
+        } finally {
+            bundle.uninstall();
+        }
+        assertNotNull(bundle.getHeaders().get(Constants.BUNDLE_NAME));
+    }
+
+    private JavaArchive getTestArchive(String name) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.add(new StringAsset("bundleName=Bundle Name"), "OSGI-INF/l10n/bundle.properties");
+        archive.add(new StringAsset("bundleName=Bundle Name DE"), "OSGI-INF/l10n/bundle_de.properties");
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addManifestHeader(Constants.BUNDLE_NAME, "%bundleName");
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
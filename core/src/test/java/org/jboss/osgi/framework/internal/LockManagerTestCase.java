@@ -0,0 +1,251 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.osgi.framework.LockManagerMBean;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockContext;
+import org.jboss.osgi.framework.internal.LockManagerPlugin.LockMethod;
+import org.jboss.osgi.resolver.XBundle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Test the {@link LockManagerPlugin}
+ *
+ * @since 18-Oct-2026
+ */
+public class LockManagerTestCase extends AbstractFrameworkTest {
+
+    private LockManagerPlugin lockManager;
+    private ExecutorService executor;
+    private XBundle bundleA;
+    private XBundle bundleB;
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = getBundleManager().injectedLockManager.getValue();
+        executor = Executors.newFixedThreadPool(2);
+        bundleA = mockBundle(1);
+        bundleB = mockBundle(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDisjointBundleLocks() throws Exception {
+        long timeouts = lockManager.getTimeoutCount();
+        LockContext context = lockManager.aquireBundleLock(LockMethod.INSTALL, Collections.singleton(bundleA));
+        try {
+            // A different bundle can be locked concurrently
+            assertTrue(aquireInOtherThread(bundleB, 5000));
+
+            // The same bundle cannot
+            assertFalse(aquireInOtherThread(bundleA, 100));
+            assertEquals(timeouts + 1, lockManager.getTimeoutCount());
+
+            // Neither can the exclusive lock
+            Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    try {
+                        lockManager.releaseLock(lockManager.aquireFrameworkLock(LockMethod.REFRESH, 100, TimeUnit.MILLISECONDS));
+                        return true;
+                    } catch (TimeoutException ex) {
+                        return false;
+                    }
+                }
+            });
+            assertFalse(future.get());
+        } finally {
+            lockManager.releaseLock(context);
+        }
+        assertTrue(aquireInOtherThread(bundleA, 5000));
+    }
+
+    @Test
+    public void testAcquireCountPerContext() throws Exception {
+        long acquired = lockManager.getAcquireCount(LockMethod.INSTALL.name());
+        LockContext context = lockManager.aquireBundleLock(LockMethod.INSTALL, Arrays.asList(bundleA, bundleB));
+        try {
+            // Extending the context is not another acquisition
+            assertTrue(lockManager.tryExtendBundleLock(context, Collections.singleton(mockBundle(3))));
+        } finally {
+            lockManager.releaseLock(context);
+        }
+        assertEquals(acquired + 1, lockManager.getAcquireCount(LockMethod.INSTALL.name()));
+
+        acquired = lockManager.getAcquireCount(LockMethod.REFRESH.name());
+        lockManager.releaseLock(lockManager.aquireFrameworkLock(LockMethod.REFRESH));
+        assertEquals(acquired + 1, lockManager.getAcquireCount(LockMethod.REFRESH.name()));
+    }
+
+    @Test
+    public void testLockUpgrade() throws Exception {
+        LockContext context = lockManager.aquireBundleLock(LockMethod.INSTALL, Collections.singleton(bundleA));
+        try {
+            lockManager.aquireFrameworkLock(LockMethod.REFRESH);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException ex) {
+            // expected
+        } finally {
+            lockManager.releaseLock(context);
+        }
+        lockManager.assertNotHeldByCurrentThread();
+    }
+
+    @Test
+    public void testDeadlockDetection() throws Exception {
+        long deadlocks = lockManager.getDeadlockCount();
+        final CountDownLatch latch = new CountDownLatch(2);
+        Future<Boolean> futureA = executor.submit(new CrossLock(bundleA, bundleB, latch));
+        Future<Boolean> futureB = executor.submit(new CrossLock(bundleB, bundleA, latch));
+
+        // At least one of the threads detects the deadlock long before the timeout
+        boolean successA = futureA.get(20, TimeUnit.SECONDS);
+        boolean successB = futureB.get(20, TimeUnit.SECONDS);
+        assertFalse(successA && successB);
+        assertTrue(lockManager.getDeadlockCount() > deadlocks);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        lockManager.resetStatistics();
+        LockContext context = lockManager.aquireBundleLock(LockMethod.RESOLVE, Collections.singleton(bundleA));
+        try {
+            String[] holders = lockManager.getCurrentHolders();
+            assertEquals(1, holders.length);
+            assertTrue(holders[0], holders[0].contains("RESOLVE"));
+            assertNull(lockManager.getExclusiveHolder());
+        } finally {
+            lockManager.releaseLock(context);
+        }
+        assertEquals(0, lockManager.getCurrentHolders().length);
+
+        // The shared global lock and one stripe
+        assertEquals(2, lockManager.getAcquireCount("resolve"));
+        assertEquals(0, lockManager.getAcquireCount("install"));
+        long[] histogram = lockManager.getHoldTimeHistogram("resolve");
+        assertEquals(lockManager.getHoldTimeBuckets().length + 1, histogram.length);
+        long holds = 0;
+        for (long count : histogram) {
+            holds += count;
+        }
+        assertEquals(1, holds);
+
+        context = lockManager.aquireFrameworkLock(LockMethod.REFRESH);
+        try {
+            assertTrue(lockManager.getExclusiveHolder().contains("REFRESH"));
+        } finally {
+            lockManager.releaseLock(context);
+        }
+    }
+
+    @Test
+    public void testManagement() throws Exception {
+        ObjectName oname = lockManager.getObjectName();
+        assertNotNull("MBean registered", oname);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(lockManager.getAcquireCount(), server.getAttribute(oname, "AcquireCount"));
+
+        ServiceReference sref = getSystemContext().getServiceReference(LockManagerMBean.class.getName());
+        assertNotNull("LockManagerMBean service registered", sref);
+        assertSame(lockManager, getSystemContext().getService(sref));
+    }
+
+    private boolean aquireInOtherThread(final XBundle bundle, final long timeout) throws Exception {
+        Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                try {
+                    LockContext context = lockManager.aquireBundleLock(LockMethod.INSTALL, Collections.singleton(bundle), timeout, TimeUnit.MILLISECONDS);
+                    lockManager.releaseLock(context);
+                    return true;
+                } catch (TimeoutException ex) {
+                    return false;
+                }
+            }
+        });
+        return future.get();
+    }
+
+    private XBundle mockBundle(long bundleId) {
+        XBundle bundle = mock(XBundle.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        return bundle;
+    }
+
+    class CrossLock implements Callable<Boolean> {
+
+        private final XBundle first;
+        private final XBundle second;
+        private final CountDownLatch latch;
+
+        CrossLock(XBundle first, XBundle second, CountDownLatch latch) {
+            this.first = first;
+            this.second = second;
+            this.latch = latch;
+        }
+
+        public Boolean call() throws Exception {
+            LockContext outer = lockManager.aquireBundleLock(LockMethod.INSTALL, Collections.singleton(first));
+            try {
+                latch.countDown();
+                latch.await();
+                LockContext inner = lockManager.aquireBundleLock(LockMethod.INSTALL, Collections.singleton(second), 15, TimeUnit.SECONDS);
+                lockManager.releaseLock(inner);
+                return true;
+            } catch (TimeoutException ex) {
+                return false;
+            } finally {
+                lockManager.releaseLock(outer);
+            }
+        }
+    }
+}
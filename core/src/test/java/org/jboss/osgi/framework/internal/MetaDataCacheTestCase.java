@@ -0,0 +1,94 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+/**
+ * Test the {@link MetaDataCache}
+ *
+ * @since 18-Oct-2026
+ */
+public class MetaDataCacheTestCase {
+
+    private File bundleFile;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        bundleFile = File.createTempFile("bundle", ".jar");
+        cacheFile = File.createTempFile("bundle", ".cache");
+        cacheFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bundleFile.delete();
+        cacheFile.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StringBuilder exports = new StringBuilder("org.acme.p0");
+        for (int i = 1; i < 5000; i++) {
+            exports.append(",org.acme.p" + i + ";version=1.0.0");
+        }
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, "org.acme.bundle");
+        attributes.putValue(Constants.EXPORT_PACKAGE, exports.toString());
+        MetaDataCache.writeManifest(cacheFile, bundleFile, manifest);
+
+        Manifest cached = MetaDataCache.readManifest(cacheFile, bundleFile);
+        assertNotNull(cached);
+        assertEquals(manifest.getMainAttributes(), cached.getMainAttributes());
+    }
+
+    @Test
+    public void testModifiedBundleFile() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "org.acme.bundle");
+        MetaDataCache.writeManifest(cacheFile, bundleFile, manifest);
+
+        FileOutputStream output = new FileOutputStream(bundleFile);
+        try {
+            output.write(new byte[] { 1, 2, 3 });
+        } finally {
+            output.close();
+        }
+        assertNull(MetaDataCache.readManifest(cacheFile, bundleFile));
+    }
+}
@@ -0,0 +1,80 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test the {@link ParallelRestore}
+ *
+ * @since 18-Oct-2026
+ */
+public class ParallelRestoreTestCase {
+
+    @Test
+    public void testResultOrder() throws Exception {
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 50; i++) {
+            items.add(i);
+        }
+        ParallelRestore.Task<Integer, Integer> task = new ParallelRestore.Task<Integer, Integer>() {
+            @Override
+            public Integer call(Integer item) throws Exception {
+                // Later items complete first
+                Thread.sleep(50 - item);
+                return item % 10 == 0 ? null : item;
+            }
+        };
+        List<Integer> result = ParallelRestore.process(items, task, 8);
+        assertEquals(45, result.size());
+        for (int i = 1; i < result.size(); i++) {
+            assertEquals(true, result.get(i - 1) < result.get(i));
+        }
+        assertEquals(result, ParallelRestore.process(items, task, 1));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ParallelRestore.Task<String, String> task = new ParallelRestore.Task<String, String>() {
+            @Override
+            public String call(String item) throws Exception {
+                if (item.equals("b"))
+                    throw new IOException(item);
+                return item;
+            }
+        };
+        try {
+            ParallelRestore.process(Arrays.asList("a", "b", "c"), task, 4);
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertEquals("b", ex.getMessage());
+        }
+    }
+}
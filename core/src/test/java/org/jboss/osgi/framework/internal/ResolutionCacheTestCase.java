@@ -0,0 +1,107 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Test the {@link ResolutionCache}
+ *
+ * @since 18-Oct-2026
+ */
+public class ResolutionCacheTestCase {
+
+    @Test
+    public void testCachedResult() throws Exception {
+        ResolutionCache cache = new ResolutionCache();
+        Resource resA = mock(Resource.class);
+        Resource resB = mock(Resource.class);
+
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        wirings.put(resA, mock(Wiring.class));
+        cache.putResult(mockContext(Arrays.asList(resA, resB)), 1, wirings);
+
+        // Same resources in a different order hit the cache
+        Map<Resource, Wiring> result = cache.get(mockContext(Arrays.asList(resB, resA)), 1);
+        assertEquals(wirings, result);
+
+        // A different generation misses
+        assertNull(cache.get(mockContext(Arrays.asList(resA, resB)), 2));
+        assertNull(cache.get(mockContext(Arrays.asList(resA)), 1));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testCachedFailure() throws Exception {
+        ResolutionCache cache = new ResolutionCache();
+        Resource resA = mock(Resource.class);
+        Requirement req = mock(Requirement.class);
+        ResolutionException failure = new ResolutionException("Unresolved requirement", null, Collections.singletonList(req));
+        cache.putFailure(mockContext(Collections.singletonList(resA)), 1, failure);
+
+        ResolutionException first = null;
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(mockContext(Collections.singletonList(resA)), 1);
+                fail("ResolutionException expected");
+            } catch (ResolutionException ex) {
+                assertNotSame(failure, ex);
+                assertNotSame(first, ex);
+                assertSame(failure, ex.getCause());
+                assertEquals(failure.getMessage(), ex.getMessage());
+                assertEquals(Collections.singletonList(req), new ArrayList<Requirement>(ex.getUnresolvedRequirements()));
+                first = ex;
+            }
+        }
+        assertEquals(2, cache.getFailureHitCount());
+        assertNull(cache.get(mockContext(Collections.singletonList(resA)), 2));
+    }
+
+    private ResolveContext mockContext(Collection<Resource> mandatory) {
+        ResolveContext context = mock(ResolveContext.class);
+        when(context.getMandatoryResources()).thenReturn(mandatory);
+        when(context.getOptionalResources()).thenReturn(Collections.<Resource> emptyList());
+        return context;
+    }
+}
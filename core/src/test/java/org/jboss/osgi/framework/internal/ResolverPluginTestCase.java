@@ -0,0 +1,199 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.osgi.framework.ResolverMBean;
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.resolver.XBundleRevision;
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+
+/**
+ * Test the {@link ResolverPlugin}
+ *
+ * @since 18-Oct-2026
+ */
+public class ResolverPluginTestCase extends AbstractFrameworkTest {
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void testConcurrentOverlappingResolve() throws Exception {
+        final ResolverPlugin resolver = getFrameworkState().getResolverPlugin();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String packageName = "org.acme.round" + round;
+                XBundle provider = (XBundle) installBundle(getProviderArchive("provider-" + round, packageName));
+                XBundle consumerA = (XBundle) installBundle(getConsumerArchive("consumerA-" + round, packageName));
+                XBundle consumerB = (XBundle) installBundle(getConsumerArchive("consumerB-" + round, packageName));
+                try {
+                    // Both subgraphs contain the unresolved provider
+                    final CyclicBarrier barrier = new CyclicBarrier(2);
+                    List<Future<Map<Resource, Wiring>>> futures = new ArrayList<Future<Map<Resource, Wiring>>>();
+                    for (final XBundle consumer : new XBundle[] { consumerA, consumerB }) {
+                        futures.add(executor.submit(new Callable<Map<Resource, Wiring>>() {
+                            public Map<Resource, Wiring> call() throws Exception {
+                                barrier.await(10, TimeUnit.SECONDS);
+                                List<Resource> mandatory = Collections.<Resource> singletonList(consumer.getBundleRevision());
+                                return resolver.resolveAndApply(mandatory, null);
+                            }
+                        }));
+                    }
+                    for (Future<Map<Resource, Wiring>> future : futures) {
+                        assertNotNull(future.get(30, TimeUnit.SECONDS));
+                    }
+
+                    // The provider is wired once and provides the package to both consumers
+                    XBundleRevision providerRev = provider.getBundleRevision();
+                    Wiring providerWiring = providerRev.getWiring();
+                    assertNotNull(providerWiring);
+                    assertEquals(2, providerWiring.getProvidedResourceWires(PackageNamespace.PACKAGE_NAMESPACE).size());
+                    for (XBundle consumer : new XBundle[] { consumerA, consumerB }) {
+                        Wiring wiring = consumer.getBundleRevision().getWiring();
+                        List<Wire> wires = wiring.getRequiredResourceWires(PackageNamespace.PACKAGE_NAMESPACE);
+                        assertEquals(1, wires.size());
+                        assertSame(providerRev, wires.get(0).getProvider());
+                        assertEquals(Bundle.RESOLVED, consumer.getState());
+                    }
+                    assertEquals(Bundle.RESOLVED, provider.getState());
+                } finally {
+                    consumerA.uninstall();
+                    consumerB.uninstall();
+                    provider.uninstall();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResolveDuringConcurrentInstall() throws Exception {
+        final ResolverPlugin resolver = getFrameworkState().getResolverPlugin();
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        final List<XBundle> unrelated = Collections.synchronizedList(new ArrayList<XBundle>());
+        try {
+            // Unrelated bundles are installed while the environment is read by the resolver
+            Future<Void> installer = executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (int i = 0; i < ROUNDS * 2; i++) {
+                        unrelated.add((XBundle) installBundle(getProviderArchive("unrelated-" + i, "org.acme.unrelated" + i)));
+                    }
+                    return null;
+                }
+            });
+            for (int round = 0; round < ROUNDS; round++) {
+                String packageName = "org.acme.concurrent" + round;
+                XBundle provider = (XBundle) installBundle(getProviderArchive("cprovider-" + round, packageName));
+                XBundle consumer = (XBundle) installBundle(getConsumerArchive("cconsumer-" + round, packageName));
+                try {
+                    List<Resource> mandatory = Collections.<Resource> singletonList(consumer.getBundleRevision());
+                    assertNotNull(resolver.resolveAndApply(mandatory, null));
+                    List<Wire> wires = consumer.getBundleRevision().getWiring().getRequiredResourceWires(PackageNamespace.PACKAGE_NAMESPACE);
+                    assertEquals(1, wires.size());
+                    assertSame(provider.getBundleRevision(), wires.get(0).getProvider());
+                } finally {
+                    consumer.uninstall();
+                    provider.uninstall();
+                }
+            }
+            installer.get(30, TimeUnit.SECONDS);
+            assertEquals(ROUNDS * 2, unrelated.size());
+        } finally {
+            executor.shutdownNow();
+            for (XBundle bundle : unrelated) {
+                bundle.uninstall();
+            }
+        }
+    }
+
+    @Test
+    public void testManagement() throws Exception {
+        ResolverPlugin resolver = getFrameworkState().getResolverPlugin();
+        ObjectName oname = resolver.getObjectName();
+        assertNotNull("MBean registered", oname);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(resolver.getResolutionCacheMissCount(), server.getAttribute(oname, "ResolutionCacheMissCount"));
+
+        ServiceReference sref = getSystemContext().getServiceReference(ResolverMBean.class.getName());
+        assertNotNull("ResolverMBean service registered", sref);
+        assertSame(resolver, getSystemContext().getService(sref));
+    }
+
+    private JavaArchive getProviderArchive(String name, final String packageName) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addExportPackages(packageName);
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+
+    private JavaArchive getConsumerArchive(String name, final String packageName) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                builder.addImportPackages(packageName);
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
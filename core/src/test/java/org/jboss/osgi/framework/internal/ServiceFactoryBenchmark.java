@@ -0,0 +1,154 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Measures getService/ungetService throughput on ServiceFactory services from many bundles at once.
+ *
+ * This is not part of the regular test run. Use
+ *
+ * mvn test -Dtest=ServiceFactoryBenchmark [-Dbenchmark.seconds=10] [-Dbenchmark.bundles=16]
+ *
+ * @since 18-Oct-2026
+ */
+public class ServiceFactoryBenchmark extends AbstractFrameworkTest {
+
+    private static final int SERVICES = 50;
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testFactoryGetService() throws Exception {
+        final int seconds = Integer.getInteger("benchmark.seconds", 5);
+        final int bundleCount = Integer.getInteger("benchmark.bundles", Runtime.getRuntime().availableProcessors() * 2);
+        BundleContext systemContext = getSystemContext();
+        String className = Runnable.class.getName();
+
+        // Factory services as registered by a DS runtime
+        List<ServiceRegistration> registrations = new ArrayList<ServiceRegistration>();
+        for (int i = 0; i < SERVICES; i++) {
+            registrations.add(systemContext.registerService(className, new RunnableFactory(), null));
+        }
+        final ServiceReference[] srefs = systemContext.getServiceReferences(className, null);
+
+        // One thread per using bundle
+        List<Bundle> bundles = new ArrayList<Bundle>();
+        for (int i = 0; i < bundleCount; i++) {
+            Bundle bundle = installBundle(getTestArchive("factory-client-" + i));
+            bundle.start();
+            bundles.add(bundle);
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong calls = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(bundleCount);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for (Bundle bundle : bundles) {
+            final BundleContext context = bundle.getBundleContext();
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        long count = 0;
+                        int next = 0;
+                        while (running.get()) {
+                            ServiceReference sref = srefs[next++ % srefs.length];
+                            // The first get of a cycle calls the factory, the second one is served from the holder
+                            assertNotNull(context.getService(sref));
+                            assertNotNull(context.getService(sref));
+                            context.ungetService(sref);
+                            context.ungetService(sref);
+                            count += 2;
+                        }
+                        calls.addAndGet(count);
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "client-" + bundle.getBundleId()).start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        done.await(30, TimeUnit.SECONDS);
+
+        for (ServiceRegistration reg : registrations)
+            reg.unregister();
+        for (Bundle bundle : bundles)
+            bundle.uninstall();
+
+        if (errors.isEmpty() == false)
+            throw new IllegalStateException("Benchmark failed", errors.get(0));
+
+        System.out.println(String.format("[ServiceFactoryBenchmark] services=%d bundles=%d", SERVICES, bundleCount));
+        System.out.println(String.format("[ServiceFactoryBenchmark] getService/s=%d", calls.get() / seconds));
+    }
+
+    private JavaArchive getTestArchive(String name) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(archive.getName());
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class RunnableFactory implements ServiceFactory {
+
+        @Override
+        public Object getService(Bundle bundle, ServiceRegistration registration) {
+            return new ServiceRegistryIndexTestCase.NoopRunnable();
+        }
+
+        @Override
+        public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+        }
+    }
+}
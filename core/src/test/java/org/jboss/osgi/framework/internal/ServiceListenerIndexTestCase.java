@@ -0,0 +1,164 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.jboss.osgi.framework.internal.FrameworkEventsPlugin.ServiceListenerRegistration;
+import org.junit.Test;
+import org.osgi.framework.AllServiceListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Test the {@link ServiceListenerIndex}
+ *
+ * @since 18-Oct-2026
+ */
+public class ServiceListenerIndexTestCase extends AbstractFrameworkTest {
+
+    private static final String RUNNABLE = Runnable.class.getName();
+    private static final String CALLABLE = Callable.class.getName();
+
+    @Test
+    public void testCandidates() throws Exception {
+        ServiceListenerIndex index = new ServiceListenerIndex();
+        ServiceListenerRegistration runnableReg = createRegistration("(objectClass=" + RUNNABLE + ")");
+        ServiceListenerRegistration eitherReg = createRegistration("(|(objectClass=" + RUNNABLE + ")(objectClass=" + CALLABLE + "))");
+        ServiceListenerRegistration residualReg = createRegistration("(service.pid=foo)");
+        index.addListener(runnableReg);
+        index.addListener(eitherReg);
+        index.addListener(residualReg);
+        assertEquals(2, index.getIndexedClassCount());
+        assertEquals(1, index.getResidualCount());
+
+        List<ServiceListenerRegistration> candidates = index.getCandidates(Collections.singletonList(RUNNABLE));
+        assertEquals(3, candidates.size());
+        assertTrue(candidates.containsAll(Arrays.asList(runnableReg, eitherReg, residualReg)));
+
+        candidates = index.getCandidates(Collections.singletonList(CALLABLE));
+        assertEquals(2, candidates.size());
+        assertFalse(candidates.contains(runnableReg));
+
+        // A listener that is indexed under both classes is a candidate only once
+        candidates = index.getCandidates(Arrays.asList(RUNNABLE, CALLABLE));
+        assertEquals(3, candidates.size());
+
+        candidates = index.getCandidates(Collections.singletonList(String.class.getName()));
+        assertEquals(Collections.singletonList(residualReg), candidates);
+
+        index.removeListener(runnableReg);
+        index.removeListener(eitherReg);
+        assertEquals(0, index.getIndexedClassCount());
+        index.removeListener(residualReg);
+        assertEquals(0, index.getResidualCount());
+    }
+
+    @Test
+    public void testIndexedAndResidualDispatch() throws Exception {
+        BundleContext context = getSystemContext();
+        FrameworkEventsPlugin eventsPlugin = getFrameworkState().getFrameworkEventsPlugin();
+        RecordingListener indexed = new RecordingListener();
+        RecordingListener residual = new RecordingListener();
+        context.addServiceListener(indexed, "(objectClass=" + RUNNABLE + ")");
+        context.addServiceListener(residual, "(foo=*)");
+        try {
+            int residualCount = eventsPlugin.getResidualListenerCount();
+            assertTrue(residualCount > 0);
+
+            // Only the residual listeners are evaluated for a service nobody is indexed for
+            long evaluated = eventsPlugin.getServiceListenersEvaluated();
+            ServiceRegistration reg = context.registerService(CALLABLE, new NoopCallable(), null);
+            long evaluatedDelta = eventsPlugin.getServiceListenersEvaluated() - evaluated;
+            assertTrue(evaluatedDelta > 0 && evaluatedDelta <= residualCount);
+            assertTrue(indexed.events.isEmpty());
+            assertTrue(residual.events.isEmpty());
+            reg.unregister();
+
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("foo", "bar");
+            reg = context.registerService(RUNNABLE, new ServiceRegistryIndexTestCase.NoopRunnable(), props);
+            reg.unregister();
+            assertEquals(Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.UNREGISTERING), indexed.events);
+            assertEquals(Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.UNREGISTERING), residual.events);
+        } finally {
+            context.removeServiceListener(indexed);
+            context.removeServiceListener(residual);
+        }
+    }
+
+    @Test
+    public void testModifiedEndMatch() throws Exception {
+        BundleContext context = getSystemContext();
+        RecordingListener listener = new RecordingAllListener();
+        context.addServiceListener(listener, "(&(objectClass=" + RUNNABLE + ")(mode=on))");
+        try {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("mode", "on");
+            ServiceRegistration reg = context.registerService(RUNNABLE, new ServiceRegistryIndexTestCase.NoopRunnable(), props);
+            props.put("mode", "off");
+            reg.setProperties(props);
+            props.put("mode", "on");
+            reg.setProperties(props);
+            reg.unregister();
+            List<Integer> expected = Arrays.asList(ServiceEvent.REGISTERED, ServiceEvent.MODIFIED_ENDMATCH, ServiceEvent.MODIFIED, ServiceEvent.UNREGISTERING);
+            assertEquals(expected, listener.events);
+        } finally {
+            context.removeServiceListener(listener);
+        }
+    }
+
+    private ServiceListenerRegistration createRegistration(String filter) throws Exception {
+        AbstractBundleState systemBundle = AbstractBundleState.assertBundleState(getSystemContext().getBundle());
+        return new ServiceListenerRegistration(systemBundle, new RecordingListener(), CompiledFilter.compile(filter));
+    }
+
+    static class RecordingListener implements ServiceListener {
+
+        final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public void serviceChanged(ServiceEvent event) {
+            events.add(event.getType());
+        }
+    }
+
+    static class RecordingAllListener extends RecordingListener implements AllServiceListener {
+    }
+
+    static class NoopCallable implements Callable<Object> {
+        public Object call() {
+            return null;
+        }
+    }
+}
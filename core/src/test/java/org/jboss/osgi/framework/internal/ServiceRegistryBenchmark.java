@@ -0,0 +1,184 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Measures service lookup throughput under concurrent register/unregister churn
+ * and the cost of a single registration depending on the size of the registry.
+ *
+ * This is not part of the regular test run. Use
+ *
+ * mvn test -Dtest=ServiceRegistryBenchmark [-Dbenchmark.seconds=10] [-Dbenchmark.readers=8] [-Dbenchmark.probes=5000]
+ *
+ * @since 18-Oct-2026
+ */
+public class ServiceRegistryBenchmark extends AbstractFrameworkTest {
+
+    private static final int PROVIDERS = 500;
+    private static final int WRITERS = 2;
+
+    @Test
+    public void testLookupUnderChurn() throws Exception {
+        final int seconds = Integer.getInteger("benchmark.seconds", 5);
+        final int readers = Integer.getInteger("benchmark.readers", Runtime.getRuntime().availableProcessors());
+        final BundleContext context = getSystemContext();
+        final String className = Runnable.class.getName();
+
+        // A popular interface with many providers
+        List<ServiceRegistration> registrations = new ArrayList<ServiceRegistration>();
+        for (int i = 0; i < PROVIDERS; i++) {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put(Constants.SERVICE_PID, "pid" + i);
+            props.put(Constants.SERVICE_RANKING, Integer.valueOf(i % 7));
+            registrations.add(context.registerService(className, new ServiceRegistryIndexTestCase.NoopRunnable(), props));
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong churns = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(readers + WRITERS);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        for (int i = 0; i < readers; i++) {
+            final int offset = i;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        long count = 0;
+                        int next = offset;
+                        while (running.get()) {
+                            String filter = "(service.pid=pid" + (next++ % PROVIDERS) + ")";
+                            assertNotNull(context.getServiceReferences(className, filter));
+                            assertNotNull(context.getServiceReference(className));
+                            count += 2;
+                        }
+                        lookups.addAndGet(count);
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "reader-" + i).start();
+        }
+
+        for (int i = 0; i < WRITERS; i++) {
+            final int writer = i;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        long count = 0;
+                        while (running.get()) {
+                            Hashtable<String, Object> props = new Hashtable<String, Object>();
+                            props.put(Constants.SERVICE_PID, "churn" + writer);
+                            ServiceRegistration reg = context.registerService(className, new ServiceRegistryIndexTestCase.NoopRunnable(), props);
+                            props.put(Constants.SERVICE_RANKING, Integer.valueOf((int) count % 11));
+                            reg.setProperties(props);
+                            reg.unregister();
+                            count += 3;
+                        }
+                        churns.addAndGet(count);
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "writer-" + i).start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        done.await(30, TimeUnit.SECONDS);
+
+        for (ServiceRegistration reg : registrations)
+            reg.unregister();
+
+        if (errors.isEmpty() == false)
+            throw new IllegalStateException("Benchmark failed", errors.get(0));
+
+        assertNull(context.getServiceReferences(className, "(service.pid=churn0)"));
+        System.out.println(String.format("[ServiceRegistryBenchmark] providers=%d readers=%d writers=%d", PROVIDERS, readers, WRITERS));
+        System.out.println(String.format("[ServiceRegistryBenchmark] lookups/s=%d, modifications/s=%d", lookups.get() / seconds, churns.get() / seconds));
+    }
+
+    @Test
+    public void testRegistrationCost() throws Exception {
+        final int probes = Integer.getInteger("benchmark.probes", 5000);
+        final BundleContext context = getSystemContext();
+        final String className = Runnable.class.getName();
+        int[] registrySizes = new int[] { 0, 1000, 10000, 50000 };
+
+        // Unrelated services that only share the presence of the objectClass and service.pid keys with the probes
+        List<ServiceRegistration> registrations = new ArrayList<ServiceRegistration>();
+        for (int registrySize : registrySizes) {
+            while (registrations.size() < registrySize) {
+                Hashtable<String, Object> props = new Hashtable<String, Object>();
+                props.put(Constants.SERVICE_PID, "background" + registrations.size());
+                registrations.add(context.registerService(Object.class.getName(), new Object(), props));
+            }
+
+            // Warm up, then measure register/setProperties/unregister of a service with its own class
+            runRegistrationProbes(context, className, probes);
+            long start = System.nanoTime();
+            runRegistrationProbes(context, className, probes);
+            long nanosPerProbe = (System.nanoTime() - start) / probes;
+            System.out.println(String.format("[ServiceRegistryBenchmark] registry=%d register/setProperties/unregister=%dns", registrySize, nanosPerProbe));
+        }
+
+        for (ServiceRegistration reg : registrations)
+            reg.unregister();
+
+        assertNull(context.getServiceReferences(className, null));
+    }
+
+    private void runRegistrationProbes(BundleContext context, String className, int probes) {
+        for (int i = 0; i < probes; i++) {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put(Constants.SERVICE_PID, "probe" + i);
+            ServiceRegistration reg = context.registerService(className, new ServiceRegistryIndexTestCase.NoopRunnable(), props);
+            props.put(Constants.SERVICE_RANKING, Integer.valueOf(i % 11));
+            reg.setProperties(props);
+            reg.unregister();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Hashtable;
+import java.util.List;
+
+import org.jboss.osgi.framework.internal.ServiceRegistryIndex.IndexTerm;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Test the {@link ServiceRegistryIndex}
+ *
+ * @since 18-Oct-2026
+ */
+public class ServiceRegistryIndexTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testParseTerms() throws Exception {
+        List<IndexTerm> terms = ServiceRegistryIndex.parseTerms("(&(objectClass=foo.Bar)(service.pid=foo)(name=ba*)(|(a=b)(c=d)))");
+        assertEquals(3, terms.size());
+        assertEquals("objectclass", terms.get(0).key);
+        assertEquals("foo.Bar", terms.get(0).value);
+        assertEquals("service.pid", terms.get(1).key);
+        assertEquals("foo", terms.get(1).value);
+        assertEquals("name", terms.get(2).key);
+        assertTrue(terms.get(2).isPresence());
+
+        terms = ServiceRegistryIndex.parseTerms("(a=x\\)y)");
+        assertEquals(1, terms.size());
+        assertEquals("x)y", terms.get(0).value);
+
+        assertTrue(ServiceRegistryIndex.parseTerms("(|(a=b)(c=d))").isEmpty());
+        assertTrue(ServiceRegistryIndex.parseTerms("(!(a=b))").isEmpty());
+        assertTrue(ServiceRegistryIndex.parseTerms("(a>=1)").isEmpty());
+        assertTrue(ServiceRegistryIndex.parseTerms(null).isEmpty());
+    }
+
+    @Test
+    public void testIndexedLookup() throws Exception {
+        BundleContext context = getSystemContext();
+        String className = Runnable.class.getName();
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, "pidA");
+        ServiceRegistration regA = context.registerService(className, new NoopRunnable(), props);
+
+        props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, "pidB");
+        props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+        ServiceRegistration regB = context.registerService(className, new NoopRunnable(), props);
+
+        props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, new String[] { "pidA", "pidC" });
+        ServiceRegistration regC = context.registerService(className, new NoopRunnable(), props);
+        try {
+            ServiceReference[] srefs = context.getServiceReferences(className, "(service.pid=pidA)");
+            assertEquals(2, srefs.length);
+
+            srefs = context.getServiceReferences(null, "(&(objectClass=" + className + ")(service.pid=pidB))");
+            assertEquals(1, srefs.length);
+            assertEquals(regB.getReference(), srefs[0]);
+
+            assertNull(context.getServiceReferences(className, "(service.pid=pidX)"));
+
+            // The highest ranking service is returned
+            assertEquals(regB.getReference(), context.getServiceReference(className));
+
+            // Changing the ranking must update the sorted order
+            props = new Hashtable<String, Object>();
+            props.put(Constants.SERVICE_PID, "pidA");
+            props.put(Constants.SERVICE_RANKING, Integer.valueOf(20));
+            regA.setProperties(props);
+            assertEquals(regA.getReference(), context.getServiceReference(className));
+
+            // Changing the pid must update the value index
+            props = new Hashtable<String, Object>();
+            props.put(Constants.SERVICE_PID, "pidD");
+            regB.setProperties(props);
+            assertNull(context.getServiceReferences(className, "(service.pid=pidB)"));
+            assertEquals(regB.getReference(), context.getServiceReferences(className, "(service.pid=pidD)")[0]);
+
+            regC.unregister();
+            srefs = context.getServiceReferences(className, "(service.pid=pidA)");
+            assertEquals(1, srefs.length);
+            assertEquals(regA.getReference(), srefs[0]);
+        } finally {
+            regA.unregister();
+            regB.unregister();
+        }
+    }
+
+    static class NoopRunnable implements Runnable {
+        public void run() {
+        }
+    }
+}
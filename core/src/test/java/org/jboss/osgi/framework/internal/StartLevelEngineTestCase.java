@@ -0,0 +1,157 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jboss.osgi.resolver.XBundle;
+import org.jboss.osgi.spi.OSGiManifestBuilder;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.osgi.resource.Resource;
+
+/**
+ * Test the {@link StartLevelEngine}
+ *
+ * @since 18-Oct-2026
+ */
+public class StartLevelEngineTestCase extends AbstractFrameworkTest {
+
+    @Test
+    public void testWiringOrder() throws Exception {
+        // The consumer has the lower bundle id, so id order alone would start it first
+        XBundle consumer = (XBundle) installBundle(getBundleArchive("consumer", null, "org.acme.engine"));
+        XBundle provider = (XBundle) installBundle(getBundleArchive("provider", "org.acme.engine", null));
+        XBundle other = (XBundle) installBundle(getBundleArchive("other", null, null));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            resolve(consumer, provider, other);
+            final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+            StartLevelEngine engine = new StartLevelEngine(executor, true);
+            engine.startBundles(1, getHostBundles(consumer, provider, other), new StartLevelEngine.BundleStarter() {
+                @Override
+                public void startBundle(HostBundleState hostBundle) {
+                    events.add("start:" + hostBundle.getSymbolicName());
+                    if (hostBundle.getSymbolicName().equals("provider")) {
+                        sleep(200);
+                    }
+                    events.add("end:" + hostBundle.getSymbolicName());
+                }
+            });
+
+            // The consumer waits for the provider, the unrelated bundle does not
+            assertEquals(6, events.size());
+            assertTrue(events.toString(), events.indexOf("end:provider") < events.indexOf("start:consumer"));
+            assertTrue(events.toString(), events.indexOf("start:other") < events.indexOf("end:provider"));
+        } finally {
+            executor.shutdownNow();
+            consumer.uninstall();
+            provider.uninstall();
+            other.uninstall();
+        }
+    }
+
+    @Test
+    public void testActivatorFailure() throws Exception {
+        XBundle consumer = (XBundle) installBundle(getBundleArchive("consumer", null, "org.acme.engine"));
+        XBundle provider = (XBundle) installBundle(getBundleArchive("provider", "org.acme.engine", null));
+        XBundle other = (XBundle) installBundle(getBundleArchive("other", null, null));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            resolve(consumer, provider, other);
+            final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+            StartLevelEngine engine = new StartLevelEngine(executor, true);
+            engine.startBundles(1, getHostBundles(consumer, provider, other), new StartLevelEngine.BundleStarter() {
+                @Override
+                public void startBundle(HostBundleState hostBundle) {
+                    if (hostBundle.getSymbolicName().equals("provider")) {
+                        throw new IllegalStateException("Activator failed");
+                    }
+                    started.add(hostBundle.getSymbolicName());
+                }
+            });
+
+            // A failing bundle neither blocks the level nor the bundles that wait for it
+            assertEquals(2, started.size());
+            assertTrue(started.contains("consumer"));
+            assertTrue(started.contains("other"));
+        } finally {
+            executor.shutdownNow();
+            consumer.uninstall();
+            provider.uninstall();
+            other.uninstall();
+        }
+    }
+
+    private void resolve(XBundle... bundles) throws Exception {
+        List<Resource> mandatory = new ArrayList<Resource>();
+        for (XBundle bundle : bundles) {
+            mandatory.add(bundle.getBundleRevision());
+        }
+        getFrameworkState().getResolverPlugin().resolveAndApply(mandatory, null);
+    }
+
+    private List<HostBundleState> getHostBundles(XBundle... bundles) {
+        List<HostBundleState> result = new ArrayList<HostBundleState>();
+        for (XBundle bundle : bundles) {
+            result.add(HostBundleState.assertBundleState(bundle));
+        }
+        return result;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JavaArchive getBundleArchive(final String name, final String exportPackage, final String importPackage) {
+        final JavaArchive archive = ShrinkWrap.create(JavaArchive.class, name);
+        archive.setManifest(new Asset() {
+            public InputStream openStream() {
+                OSGiManifestBuilder builder = OSGiManifestBuilder.newInstance();
+                builder.addBundleManifestVersion(2);
+                builder.addBundleSymbolicName(name);
+                if (exportPackage != null) {
+                    builder.addExportPackages(exportPackage);
+                }
+                if (importPackage != null) {
+                    builder.addImportPackages(importPackage);
+                }
+                return builder.openStream();
+            }
+        });
+        return archive;
+    }
+}
@@ -0,0 +1,150 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.framework.internal.StorageStateWriter.FsyncPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link StorageJournal}
+ *
+ * @since 18-Oct-2026
+ */
+public class StorageJournalTestCase {
+
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        journalFile = File.createTempFile("storage", ".journal");
+        journalFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journalFile.delete();
+    }
+
+    @Test
+    public void testPutAndDelete() throws Exception {
+        StorageJournal journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        assertTrue(journal.open().isEmpty());
+        journal.put(1, createProperties("a", 1));
+        journal.put(2, createProperties("b", 1));
+        journal.put(1, createProperties("a", 3));
+        journal.delete(2);
+        journal.close();
+
+        journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        Map<Long, Properties> states = journal.open();
+        assertEquals(1, states.size());
+        assertEquals("3", states.get(1L).getProperty(StorageState.PROPERTY_START_LEVEL));
+        assertEquals(4, journal.getRecordCount());
+        journal.close();
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        StorageJournal journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        journal.open();
+        journal.put(1, createProperties("a", 1));
+        journal.put(2, createProperties("b", 1));
+        journal.close();
+
+        // Cut the last record in half
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+
+        journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        Map<Long, Properties> states = journal.open();
+        assertEquals(1, states.size());
+        assertNull(states.get(2L));
+
+        // Appends continue after the last valid record
+        journal.put(3, createProperties("c", 1));
+        journal.close();
+        journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        assertEquals(2, journal.open().size());
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        StorageJournal journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, 10);
+        journal.open();
+        for (int i = 0; i < 20; i++) {
+            journal.put(1, createProperties("a", i));
+        }
+        assertTrue(journal.getCompactionCount() > 0);
+        assertTrue(journal.getRecordCount() <= 10);
+        journal.close();
+
+        journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, 10);
+        Map<Long, Properties> states = journal.open();
+        assertEquals("19", states.get(1L).getProperty(StorageState.PROPERTY_START_LEVEL));
+        journal.close();
+    }
+
+    @Test
+    public void testUnknownFormat() throws Exception {
+        // A file with an unknown header is neither read nor truncated
+        FileOutputStream fos = new FileOutputStream(journalFile);
+        fos.write("not a storage journal".getBytes());
+        fos.close();
+        long length = journalFile.length();
+
+        StorageJournal journal = new StorageJournal(journalFile, FsyncPolicy.NEVER, StorageJournal.DEFAULT_COMPACT_THRESHOLD);
+        try {
+            journal.open();
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals(length, journalFile.length());
+    }
+
+    private Properties createProperties(String location, int startLevel) {
+        Properties props = new Properties();
+        props.setProperty(StorageState.PROPERTY_BUNDLE_LOCATION, location);
+        props.setProperty(StorageState.PROPERTY_START_LEVEL, "" + startLevel);
+        return props;
+    }
+}
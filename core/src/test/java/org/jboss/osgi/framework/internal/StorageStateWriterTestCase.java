@@ -0,0 +1,106 @@
+package org.jboss.osgi.framework.internal;
+/*
+ * #%L
+ * JBossOSGi Framework
+ * %%
+ * Copyright (C) 2010 - 2012 JBoss by Red Hat
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import org.jboss.osgi.framework.StorageState;
+import org.jboss.osgi.framework.internal.StorageStateWriter.FsyncPolicy;
+import org.jboss.osgi.vfs.VFSUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link StorageStateWriter}
+ *
+ * @since 18-Oct-2026
+ */
+public class StorageStateWriterTestCase {
+
+    private File storageDir;
+
+    @Before
+    public void setUp() throws Exception {
+        storageDir = File.createTempFile("storage", "");
+        storageDir.delete();
+        storageDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : storageDir.listFiles()) {
+            file.delete();
+        }
+        storageDir.delete();
+    }
+
+    @Test
+    public void testAtomicWrite() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(StorageState.PROPERTY_START_LEVEL, "1");
+        StorageStateWriter.writeProperties(storageDir, props, FsyncPolicy.ALWAYS);
+
+        props.setProperty(StorageState.PROPERTY_START_LEVEL, "2");
+        StorageStateWriter.writeProperties(storageDir, props, FsyncPolicy.NEVER);
+
+        File tempFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES + StorageStateWriter.TEMP_FILE_SUFFIX);
+        assertFalse("Temp file removed", tempFile.exists());
+
+        File propsFile = StorageStateWriter.getPropertiesFile(storageDir);
+        assertEquals(StorageState.BUNDLE_PERSISTENT_PROPERTIES, propsFile.getName());
+        assertEquals("2", loadProperties(propsFile).getProperty(StorageState.PROPERTY_START_LEVEL));
+    }
+
+    @Test
+    public void testInterruptedRename() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(StorageState.PROPERTY_START_LEVEL, "3");
+        StorageStateWriter.writeProperties(storageDir, props, FsyncPolicy.NEVER);
+
+        // Simulate a crash between deleting the properties and renaming the temp file
+        File propsFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES);
+        File tempFile = new File(storageDir, StorageState.BUNDLE_PERSISTENT_PROPERTIES + StorageStateWriter.TEMP_FILE_SUFFIX);
+        assertTrue(propsFile.renameTo(tempFile));
+
+        File readFile = StorageStateWriter.getPropertiesFile(storageDir);
+        assertEquals(tempFile, readFile);
+        assertEquals("3", loadProperties(readFile).getProperty(StorageState.PROPERTY_START_LEVEL));
+    }
+
+    private Properties loadProperties(File file) throws Exception {
+        Properties props = new Properties();
+        FileInputStream input = new FileInputStream(file);
+        try {
+            props.load(input);
+        } finally {
+            VFSUtils.safeClose(input);
+        }
+        return props;
+    }
+}
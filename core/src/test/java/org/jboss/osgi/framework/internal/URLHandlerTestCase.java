@@ -156,6 +156,34 @@ public class URLHandlerTestCase extends OSGiFrameworkTest {
         reg5.unregister();
     }
 
+    @Test
+    public void testServiceRankingChange() throws Exception {
+        URLStreamHandlerService svc1 = new TestURLStreamHandlerService("tr1");
+        Dictionary<String, Object> props1 = new Hashtable<String, Object>();
+        props1.put(URLConstants.URL_HANDLER_PROTOCOL, "rankp");
+        props1.put(Constants.SERVICE_RANKING, 10);
+        ServiceRegistration reg1 = getSystemContext().registerService(URLStreamHandlerService.class.getName(), svc1, props1);
+
+        URLStreamHandlerService svc2 = new TestURLStreamHandlerService("tr2");
+        Dictionary<String, Object> props2 = new Hashtable<String, Object>();
+        props2.put(URLConstants.URL_HANDLER_PROTOCOL, "rankp");
+        props2.put(Constants.SERVICE_RANKING, 5);
+        ServiceRegistration reg2 = getSystemContext().registerService(URLStreamHandlerService.class.getName(), svc2, props2);
+
+        // The URL is created once, its handler follows the ranking of the services
+        URL url = new URL("rankp://testing");
+        assertEquals("tr1testing", new String(suckStream(url.openStream())));
+
+        props2.put(Constants.SERVICE_RANKING, 20);
+        reg2.setProperties(props2);
+        assertEquals("tr2testing", new String(suckStream(url.openStream())));
+
+        reg2.unregister();
+        assertEquals("tr1testing", new String(suckStream(url.openStream())));
+
+        reg1.unregister();
+    }
+
     @Test
     public void testContentHandler() throws Exception {
         URLStreamHandlerService svc1 = new TestURLStreamHandlerService("tp1", "foo/bar");